@@ -0,0 +1,33 @@
+package com.example.videoapp.DTO;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 游标分页结果DTO，翻页代价与页数无关
+ *
+ * @param <T> 列表元素类型
+ */
+@Data
+public class CursorPage<T> {
+    /**
+     * 当前页数据
+     */
+    private List<T> list;
+
+    /**
+     * 下一页的游标，没有更多数据时为null
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有更多数据
+     */
+    private boolean hasMore;
+
+    /**
+     * 总记录数，仅在请求时携带withTotal=true才返回
+     */
+    private Long total;
+}
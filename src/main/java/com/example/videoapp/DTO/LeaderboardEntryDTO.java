@@ -0,0 +1,26 @@
+package com.example.videoapp.DTO;
+
+import lombok.Data;
+
+/**
+ * 鱼币排行榜条目DTO
+ *
+ * @param <T> 上榜对象类型，视频榜为视频详情，创作者榜为创作者信息
+ */
+@Data
+public class LeaderboardEntryDTO<T> {
+    /**
+     * 名次，从1开始
+     */
+    private int rank;
+
+    /**
+     * 统计周期内收到的鱼币数
+     */
+    private long fishCount;
+
+    /**
+     * 上榜对象
+     */
+    private T item;
+}
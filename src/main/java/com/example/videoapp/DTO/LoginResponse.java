@@ -8,7 +8,17 @@ import lombok.Data;
 @Data
 public class LoginResponse {
     /**
-     * JWT令牌
+     * JWT访问令牌
      */
     private String token;
+
+    /**
+     * 刷新令牌，访问令牌过期后用它换取新的令牌对，每个刷新令牌只能使用一次
+     */
+    private String refreshToken;
+
+    /**
+     * 访问令牌的有效期（秒）
+     */
+    private Long expiresIn;
 }
@@ -0,0 +1,14 @@
+package com.example.videoapp.DTO;
+
+import lombok.Data;
+
+/**
+ * 刷新令牌请求DTO，用于换取新令牌和退出登录
+ */
+@Data
+public class RefreshTokenRequest {
+    /**
+     * 刷新令牌
+     */
+    private String refreshToken;
+}
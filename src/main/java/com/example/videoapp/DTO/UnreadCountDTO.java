@@ -0,0 +1,19 @@
+package com.example.videoapp.DTO;
+
+import lombok.Data;
+
+/**
+ * 用户未读通知数，对账时按用户分组统计使用
+ */
+@Data
+public class UnreadCountDTO {
+    /**
+     * 接收者用户ID
+     */
+    private Long recipientId;
+
+    /**
+     * 未读通知数
+     */
+    private Long unreadCount;
+}
@@ -0,0 +1,21 @@
+package com.example.videoapp.DTO;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量视频详情响应DTO
+ */
+@Data
+public class VideoBatchDTO {
+    /**
+     * 查询到的视频详情，按请求中的ID顺序排列
+     */
+    private List<VideoDetailDTO> videos;
+
+    /**
+     * 不存在或已被删除的视频ID
+     */
+    private List<Long> missingIds;
+}
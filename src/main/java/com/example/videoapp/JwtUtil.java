@@ -1,20 +1,41 @@
 package com.example.videoapp;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * JWT工具类，用于生成和解析JWT令牌
  */
 @Component
 public class JwtUtil {
+    /**
+     * 令牌中保存用户ID的声明名
+     */
+    private static final String USER_ID_CLAIM = "uid";
+
+    /**
+     * 令牌中保存毫秒精度签发时间的声明名，标准的iat只精确到秒
+     */
+    private static final String ISSUED_AT_MILLIS_CLAIM = "iat_ms";
+
     /**
      * JWT签名密钥
      */
@@ -26,20 +47,77 @@ public class JwtUtil {
      */
     @Value("${jwt.expiration}")
     private long expiration;
+
+    /**
+     * 已验证令牌缓存最多保存的令牌数量
+     */
+    @Value("${jwt.verified-cache-max-size:10000}")
+    private long verifiedCacheMaxSize;
+
+    /**
+     * 签名密钥，启动时构建一次
+     */
+    private Key key;
+
+    /**
+     * 令牌解析器，线程安全，启动时构建一次
+     */
+    private JwtParser parser;
+
+    /**
+     * 已验证令牌缓存，Key为令牌的SHA-256摘要，条目在令牌过期时随之过期
+     */
+    private Cache<String, VerifiedToken> verifiedTokens;
+
+    /**
+     * 构建签名密钥、解析器和已验证令牌缓存
+     */
+    @PostConstruct
+    public void init() {
+        key = Keys.hmacShaKeyFor(secretKey.getBytes());
+        parser = Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build();
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheMaxSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String tokenHash, VerifiedToken token, long currentTime) {
+                        long remainingMillis = token.expiresAt() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String tokenHash, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String tokenHash, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
     
     /**
-     * 生成JWT令牌
+     * 生成JWT访问令牌，令牌中同时携带用户ID，认证后无需再按用户名查询用户
+     * 每个令牌带有唯一的jti，用于单独吊销
      * 
      * @param username 用户名
+     * @param userId 用户ID
      * @return JWT令牌字符串
      */
-    public String generateToken(String username) {
-        Date currentTime = new Date(System.currentTimeMillis());
-        Date expirationTime = new Date(System.currentTimeMillis() + expiration);
-        Key key = Keys.hmacShaKeyFor(secretKey.getBytes());
+    public String generateToken(String username, Long userId) {
+        long now = System.currentTimeMillis();
+        Date currentTime = new Date(now);
+        Date expirationTime = new Date(now + expiration);
         
         return Jwts.builder()
+                .setId(UUID.randomUUID().toString())
                 .setSubject(username)
+                .claim(USER_ID_CLAIM, userId)
+                .claim(ISSUED_AT_MILLIS_CLAIM, now)
                 .setIssuedAt(currentTime)
                 .setExpiration(expirationTime)
                 .signWith(key, SignatureAlgorithm.HS256)
@@ -53,13 +131,74 @@ public class JwtUtil {
      * @return 用户名
      */
     public String getUsernameFromToken(String token) {
-        Key key = Keys.hmacShaKeyFor(secretKey.getBytes());
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-                
-        return claims.getSubject();
+        return parseToken(token).username();
+    }
+
+    /**
+     * 验证令牌并取出其中的用户身份
+     * 同一个令牌只在第一次出现时验证签名，之后直到过期都从缓存中返回
+     * 
+     * @param token JWT令牌
+     * @return 用户身份，旧令牌中没有用户ID时userId为null
+     */
+    public TokenIdentity parseToken(String token) {
+        String tokenHash = sha256(token);
+        VerifiedToken verified = verifiedTokens.getIfPresent(tokenHash);
+        if (verified != null && verified.expiresAt() > System.currentTimeMillis()) {
+            return verified.identity();
+        }
+
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        Number userId = claims.get(USER_ID_CLAIM, Number.class);
+        Number issuedAtMillis = claims.get(ISSUED_AT_MILLIS_CLAIM, Number.class);
+        long issuedAt = issuedAtMillis != null ? issuedAtMillis.longValue()
+                : claims.getIssuedAt() == null ? 0 : claims.getIssuedAt().getTime();
+        TokenIdentity identity = new TokenIdentity(claims.getSubject(), userId == null ? null : userId.longValue(),
+                claims.getId(),
+                issuedAt,
+                claims.getExpiration() == null ? 0 : claims.getExpiration().getTime());
+        if (claims.getExpiration() != null) {
+            verifiedTokens.put(tokenHash, new VerifiedToken(identity, identity.expiresAt()));
+        }
+        return identity;
+    }
+
+    /**
+     * 获取访问令牌的有效期
+     * 
+     * @return 有效期（毫秒）
+     */
+    public long getExpiration() {
+        return expiration;
+    }
+
+    private static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("当前JVM不支持SHA-256", e);
+        }
+    }
+
+    /**
+     * 令牌中的用户身份
+     *
+     * @param username 用户名
+     * @param userId 用户ID，旧令牌中没有时为null
+     * @param tokenId 令牌唯一标识（jti），旧令牌中没有时为null
+     * @param issuedAt 签发时间（毫秒时间戳，旧令牌中没有毫秒精度签发时间时精确到秒）
+     * @param expiresAt 过期时间（毫秒时间戳）
+     */
+    public record TokenIdentity(String username, Long userId, String tokenId, long issuedAt, long expiresAt) {
+    }
+
+    /**
+     * 已验证的令牌
+     *
+     * @param identity 令牌中的用户身份
+     * @param expiresAt 令牌过期时间（毫秒时间戳）
+     */
+    private record VerifiedToken(TokenIdentity identity, long expiresAt) {
     }
 }
@@ -0,0 +1,101 @@
+package com.example.videoapp.cache;
+
+import com.example.videoapp.mapper.CommentMapper;
+import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+
+/**
+ * 视频评论数缓存，每个视频在Redis中维护一个计数器
+ * 计数器不存在时用COUNT查询加载，发表和删除评论时只在计数器已存在时增减，
+ * 未加载的计数器不会被增减成一个错误的值
+ */
+@Component
+public class CommentCountCache {
+
+    /**
+     * 评论数在Redis中的Key前缀
+     */
+    private static final String KEY_PREFIX = "comment:count:";
+
+    /**
+     * 计数器存在时才增减，并顺带续期
+     */
+    private static final String INCREMENT_IF_EXISTS_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 1 then "
+                    + "redis.call('pexpire', KEYS[1], ARGV[2]); "
+                    + "return redis.call('incrby', KEYS[1], ARGV[1]); "
+                    + "end; "
+                    + "return nil;";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private CommentMapper commentMapper;
+
+    @Autowired
+    private SingleFlightLoader singleFlightLoader;
+
+    /**
+     * 计数器的有效期（小时），过期后下次读取时重新COUNT，顺带纠正可能出现的偏差
+     */
+    @Value("${comment.count-cache.ttl-hours:24}")
+    private long ttlHours;
+
+    /**
+     * 获取视频的评论数，计数器不存在时从数据库加载，同一视频的并发加载在节点内和节点之间合并为一次查询
+     *
+     * @param videoId 视频ID
+     * @return 评论数
+     */
+    public long get(Long videoId) {
+        Long count = bucket(videoId).get();
+        if (count != null) {
+            return count;
+        }
+        return singleFlightLoader.load(KEY_PREFIX + videoId, () -> bucket(videoId).get(), () -> {
+            Long loaded = commentMapper.countByVideoId(videoId);
+            // 加载期间其他节点可能已经写入了计数器，此时以已有的值为准
+            bucket(videoId).setIfAbsent(loaded, Duration.ofHours(ttlHours));
+            return loaded;
+        });
+    }
+
+    /**
+     * 增减视频的评论数，计数器未加载时不做处理
+     *
+     * @param videoId 视频ID
+     * @param delta 增量，删除评论时为负数
+     */
+    public void increment(Long videoId, long delta) {
+        redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE,
+                INCREMENT_IF_EXISTS_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Collections.singletonList(KEY_PREFIX + videoId),
+                String.valueOf(delta),
+                String.valueOf(Duration.ofHours(ttlHours).toMillis()));
+    }
+
+    /**
+     * 删除视频的评论数（视频被删除时调用）
+     *
+     * @param videoId 视频ID
+     */
+    public void evict(Long videoId) {
+        bucket(videoId).delete();
+    }
+
+    private RBucket<Long> bucket(Long videoId) {
+        return redissonClient.getBucket(KEY_PREFIX + videoId, LongCodec.INSTANCE);
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.videoapp.cache;
+
+import com.example.videoapp.common.TransactionUtils;
+import com.example.videoapp.mapper.FishTransactionMapper;
+import org.redisson.api.BatchResult;
+import org.redisson.api.RBatch;
+import org.redisson.api.RSet;
+import org.redisson.api.RSetAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 视频投喂关系缓存，每个视频在Redis中维护一个投喂过该视频的用户ID集合，
+ * 用来回答"某个用户是否投喂过某个视频"，与共享的视频详情缓存分离
+ */
+@Component
+public class FishFedCache {
+
+    /**
+     * 投喂用户集合在Redis中的Key前缀
+     */
+    private static final String KEY_PREFIX = "video:fed:";
+
+    /**
+     * 哨兵成员，集合中存在该成员表示已经从数据库完整加载过
+     * 用户ID从1开始自增，不会与之冲突
+     */
+    public static final Long LOADED_MARKER = 0L;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private FishTransactionMapper fishTransactionMapper;
+
+    /**
+     * 投喂用户集合的有效期（小时）
+     */
+    @Value("${video.fed-cache.ttl-hours:72}")
+    private long ttlHours;
+
+    /**
+     * 判断用户是否投喂过指定视频，集合未加载时从数据库加载
+     *
+     * @param userId 用户ID
+     * @param videoId 视频ID
+     * @return 已投喂返回true
+     */
+    public boolean isFed(Long userId, Long videoId) {
+        RBatch batch = redissonClient.createBatch();
+        RSetAsync<Long> set = batch.getSet(KEY_PREFIX + videoId, LongCodec.INSTANCE);
+        set.containsAsync(LOADED_MARKER);
+        set.containsAsync(userId);
+        List<?> responses = batch.execute().getResponses();
+
+        if (Boolean.TRUE.equals(responses.get(0))) {
+            return Boolean.TRUE.equals(responses.get(1));
+        }
+
+        List<Long> userIds = load(videoId);
+        return userIds.contains(userId);
+    }
+
+    /**
+     * 批量查询用户投喂过哪些视频，已加载的集合在一次Redis往返中判断，
+     * 未加载的视频合并为一条SQL查询
+     *
+     * @param userId 用户ID
+     * @param videoIds 候选视频ID
+     * @return 用户投喂过的视频ID集合
+     */
+    public Set<Long> findFedVideoIds(Long userId, Collection<Long> videoIds) {
+        Set<Long> fedVideoIds = new HashSet<>();
+        if (userId == null || videoIds.isEmpty()) {
+            return fedVideoIds;
+        }
+
+        List<Long> orderedIds = new ArrayList<>(new HashSet<>(videoIds));
+        RBatch batch = redissonClient.createBatch();
+        for (Long videoId : orderedIds) {
+            RSetAsync<Long> set = batch.getSet(KEY_PREFIX + videoId, LongCodec.INSTANCE);
+            set.containsAsync(LOADED_MARKER);
+            set.containsAsync(userId);
+        }
+        BatchResult<?> result = batch.execute();
+        List<?> responses = result.getResponses();
+
+        List<Long> unloadedIds = new ArrayList<>();
+        for (int i = 0; i < orderedIds.size(); i++) {
+            boolean loaded = Boolean.TRUE.equals(responses.get(i * 2));
+            if (!loaded) {
+                unloadedIds.add(orderedIds.get(i));
+            } else if (Boolean.TRUE.equals(responses.get(i * 2 + 1))) {
+                fedVideoIds.add(orderedIds.get(i));
+            }
+        }
+
+        if (!unloadedIds.isEmpty()) {
+            fedVideoIds.addAll(fishTransactionMapper.findFedVideoIds(userId, unloadedIds));
+        }
+        return fedVideoIds;
+    }
+
+    /**
+     * 事务提交后把用户加入视频的投喂集合
+     * 集合尚未加载时也可以直接添加，下次读取时会与数据库中的记录合并
+     *
+     * @param userId 用户ID
+     * @param videoId 视频ID
+     */
+    public void markFedAfterCommit(Long userId, Long videoId) {
+        TransactionUtils.afterCommit(() -> markFed(userId, videoId));
+    }
+
+    /**
+     * 把用户加入视频的投喂集合
+     *
+     * @param userId 用户ID
+     * @param videoId 视频ID
+     */
+    public void markFed(Long userId, Long videoId) {
+        redissonClient.<Long>getSet(KEY_PREFIX + videoId, LongCodec.INSTANCE).add(userId);
+    }
+
+    /**
+     * 把一批投喂关系加入各视频的投喂集合，所有视频在一次往返中完成
+     *
+     * @param userIdsByVideo 视频ID到投喂用户ID的映射
+     */
+    public void markFed(Map<Long, ? extends Collection<Long>> userIdsByVideo) {
+        if (userIdsByVideo.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        userIdsByVideo.forEach((videoId, userIds) ->
+                batch.<Long>getSet(KEY_PREFIX + videoId, LongCodec.INSTANCE).addAllAsync(userIds));
+        batch.execute();
+    }
+
+    /**
+     * 确保视频的投喂集合已从数据库完整加载，供Lua脚本直接在Redis中判断
+     *
+     * @param videoId 视频ID
+     */
+    public void ensureLoaded(Long videoId) {
+        RSet<Long> set = redissonClient.getSet(key(videoId), LongCodec.INSTANCE);
+        if (!set.contains(LOADED_MARKER)) {
+            load(videoId);
+        }
+    }
+
+    /**
+     * 投喂集合的有效期（毫秒），供Lua脚本投喂时续期
+     *
+     * @return 有效期
+     */
+    public long ttlMillis() {
+        return Duration.ofHours(ttlHours).toMillis();
+    }
+
+    /**
+     * 视频投喂集合在Redis中的Key
+     *
+     * @param videoId 视频ID
+     * @return Redis Key
+     */
+    public static String key(Long videoId) {
+        return KEY_PREFIX + videoId;
+    }
+
+    /**
+     * 删除视频的投喂集合（视频被删除时调用）
+     *
+     * @param videoId 视频ID
+     */
+    public void evict(Long videoId) {
+        redissonClient.getSet(KEY_PREFIX + videoId, LongCodec.INSTANCE).delete();
+    }
+
+    /**
+     * 从数据库加载视频的全部投喂用户并写入Redis
+     *
+     * @param videoId 视频ID
+     * @return 投喂过该视频的用户ID
+     */
+    private List<Long> load(Long videoId) {
+        List<Long> userIds = fishTransactionMapper.findUserIdsByVideoId(videoId);
+        List<Long> members = new ArrayList<>(userIds);
+        members.add(LOADED_MARKER);
+
+        RSet<Long> set = redissonClient.getSet(KEY_PREFIX + videoId, LongCodec.INSTANCE);
+        set.addAll(members);
+        set.expire(Duration.ofHours(ttlHours));
+        return userIds;
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.videoapp.cache;
+
+import com.example.videoapp.DTO.CommentDetailDTO;
+import com.example.videoapp.mapper.CommentMapper;
+import io.netty.buffer.ByteBuf;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.JsonJacksonCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 视频最新评论缓存，每个视频在Redis列表中保存最新的N条评论详情，按发表时间倒序
+ * 发表评论时按ID插入并截断到N条，删除评论时从列表中移除这一条，不会让整个列表失效；
+ * 列表不存在时用一次游标查询加载，写入前校验评论版本号，加载期间有新的评论写入时放弃本次写入
+ */
+@Component
+public class RecentCommentsCache {
+
+    /**
+     * 最新评论列表在Redis中的Key前缀
+     */
+    private static final String KEY_PREFIX = "comment:recent:";
+
+    /**
+     * 列表不存在且评论版本号未变化时写入加载结果
+     * KEYS[1]为评论列表，KEYS[2]为评论版本号；ARGV[1]为加载前读到的版本号，ARGV[2]为有效期，其余为评论
+     */
+    private static final String LOAD_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 1 or (redis.call('get', KEYS[2]) or '0') ~= ARGV[1] then "
+                    + "return 0; "
+                    + "end; "
+                    + "redis.call('rpush', KEYS[1], unpack(ARGV, 3)); "
+                    + "redis.call('pexpire', KEYS[1], ARGV[2]); "
+                    + "return 1;";
+
+    /**
+     * 列表存在时按评论ID倒序插入一条评论并截断
+     * 版本号更新之后、追加之前完成的加载可能已经包含这条评论，已在列表中时跳过；
+     * 比它更新的评论先写入列表时插入到对应位置，列表已满且它最旧时不插入
+     * ARGV[1]为评论，ARGV[2]为列表容量，ARGV[3]为有效期，ARGV[4]为评论ID
+     */
+    private static final String PUSH_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then "
+                    + "return 0; "
+                    + "end; "
+                    + "local id = tonumber(ARGV[4]); "
+                    + "local values = redis.call('lrange', KEYS[1], 0, -1); "
+                    + "local pivot = nil; "
+                    + "for _, value in ipairs(values) do "
+                    + "local comment = cjson.decode(value); "
+                    + "if comment[2] ~= nil then comment = comment[2]; end; "
+                    + "local current = tonumber(comment['id']); "
+                    + "if current == id then "
+                    + "return 0; "
+                    + "end; "
+                    + "if current < id then "
+                    + "pivot = value; "
+                    + "break; "
+                    + "end; "
+                    + "end; "
+                    + "if pivot then "
+                    + "redis.call('linsert', KEYS[1], 'BEFORE', pivot, ARGV[1]); "
+                    + "elseif #values < tonumber(ARGV[2]) then "
+                    + "redis.call('rpush', KEYS[1], ARGV[1]); "
+                    + "else "
+                    + "return 0; "
+                    + "end; "
+                    + "redis.call('ltrim', KEYS[1], 0, tonumber(ARGV[2]) - 1); "
+                    + "redis.call('pexpire', KEYS[1], ARGV[3]); "
+                    + "return 1;";
+
+    /**
+     * 按评论ID从列表中移除一条评论
+     * 元素带有类型信息时JSON为[类名, 对象]的形式
+     */
+    private static final String REMOVE_SCRIPT =
+            "local id = tonumber(ARGV[1]); "
+                    + "for _, value in ipairs(redis.call('lrange', KEYS[1], 0, -1)) do "
+                    + "local comment = cjson.decode(value); "
+                    + "if comment[2] ~= nil then comment = comment[2]; end; "
+                    + "if tonumber(comment['id']) == id then "
+                    + "return redis.call('lrem', KEYS[1], 1, value); "
+                    + "end; "
+                    + "end; "
+                    + "return 0;";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private JsonJacksonCodec jsonJacksonCodec;
+
+    @Autowired
+    private CommentMapper commentMapper;
+
+    @Autowired
+    private ResourceVersionStore resourceVersionStore;
+
+    @Autowired
+    private SingleFlightLoader singleFlightLoader;
+
+    /**
+     * 每个视频缓存的最新评论条数
+     */
+    @Value("${comment.recent-cache.size:50}")
+    private int capacity;
+
+    /**
+     * 最新评论列表的有效期（分钟），同时限制评论者昵称和头像变更后旧信息的展示时间
+     */
+    @Value("${comment.recent-cache.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    /**
+     * 每个视频缓存的最新评论条数
+     *
+     * @return 列表容量
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 读取视频最新的若干条评论，列表不存在时从数据库加载
+     *
+     * @param videoId 视频ID
+     * @param count 读取的条数，不超过列表容量
+     * @return 最新的评论，按发表时间倒序；视频没有评论时为空列表
+     */
+    public List<CommentDetailDTO> range(Long videoId, int count) {
+        List<CommentDetailDTO> cached = redissonClient.<CommentDetailDTO>getList(KEY_PREFIX + videoId, jsonJacksonCodec)
+                .range(0, count - 1);
+        if (!cached.isEmpty()) {
+            return cached;
+        }
+        List<CommentDetailDTO> loaded = singleFlightLoader.load(KEY_PREFIX + videoId, () -> load(videoId));
+        return loaded.size() > count ? new ArrayList<>(loaded.subList(0, count)) : loaded;
+    }
+
+    /**
+     * 把一条新发表的评论插入列表，列表未加载或已包含这条评论时不做处理
+     * 调用前必须已经更新评论版本号，保证与并发的加载不会互相覆盖
+     *
+     * @param comment 评论详情
+     */
+    public void push(CommentDetailDTO comment) {
+        redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE,
+                PUSH_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Collections.singletonList(KEY_PREFIX + comment.getVideoId()),
+                encode(comment),
+                String.valueOf(capacity),
+                String.valueOf(ttlMillis()),
+                String.valueOf(comment.getId()));
+    }
+
+    /**
+     * 从列表中移除一条评论，不在列表中时不做处理
+     *
+     * @param videoId 视频ID
+     * @param commentId 评论ID
+     */
+    public void remove(Long videoId, Long commentId) {
+        redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE,
+                REMOVE_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Collections.singletonList(KEY_PREFIX + videoId),
+                String.valueOf(commentId));
+    }
+
+    /**
+     * 删除视频的最新评论列表（视频被删除时调用）
+     *
+     * @param videoId 视频ID
+     */
+    public void evict(Long videoId) {
+        redissonClient.getList(KEY_PREFIX + videoId).delete();
+    }
+
+    /**
+     * 从数据库加载最新的N条评论，评论版本号未变化时写入Redis
+     *
+     * @param videoId 视频ID
+     * @return 最新的评论
+     */
+    private List<CommentDetailDTO> load(Long videoId) {
+        String version = String.valueOf(resourceVersionStore.commentsVersion(videoId));
+        List<CommentDetailDTO> comments = commentMapper.findByVideoIdByCursor(videoId, null, capacity);
+        if (comments.isEmpty()) {
+            return comments;
+        }
+
+        List<Object> args = new ArrayList<>(comments.size() + 2);
+        args.add(version);
+        args.add(String.valueOf(ttlMillis()));
+        for (CommentDetailDTO comment : comments) {
+            args.add(encode(comment));
+        }
+        redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE,
+                LOAD_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Arrays.asList(KEY_PREFIX + videoId, ResourceVersionStore.commentsKey(videoId)),
+                args.toArray());
+        return comments;
+    }
+
+    /**
+     * 用与读取列表相同的编码器把评论编码为JSON
+     */
+    private String encode(CommentDetailDTO comment) {
+        try {
+            ByteBuf buf = jsonJacksonCodec.getValueEncoder().encode(comment);
+            try {
+                return buf.toString(StandardCharsets.UTF_8);
+            } finally {
+                buf.release();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("评论序列化失败", e);
+        }
+    }
+
+    private long ttlMillis() {
+        return Duration.ofMinutes(ttlMinutes).toMillis();
+    }
+}
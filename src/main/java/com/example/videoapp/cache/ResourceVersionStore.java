@@ -0,0 +1,216 @@
+package com.example.videoapp.cache;
+
+import com.example.videoapp.common.TransactionUtils;
+import org.redisson.api.RBatch;
+import org.redisson.api.RScript;
+import org.redisson.api.RScriptAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 资源版本号，用于生成条件请求的ETag
+ * 每个资源在Redis中保存一个只增不减的版本号，所有写路径在修改数据后将其加一，
+ * 读接口只需读取这一个Key就能判断客户端手中的数据是否过期，不必执行任何数据库查询；
+ * 版本号只在写路径上创建，带有效期并在每次更新时续期；读取时不存在视为0，不会因匿名读取而创建Key。
+ * 不存在的版本号再次创建时以当前毫秒时间戳作为初值，不会与过期前签发的ETag重复；
+ * 版本号为0时ETag附带按有效期划分的时间段编号，版本号创建后又过期时时间段必然已经变化，
+ * 创建之前签发的ETag不会再被当作有效
+ */
+@Component
+public class ResourceVersionStore {
+
+    /**
+     * 视频详情版本号的Key前缀
+     */
+    private static final String VIDEO_KEY_PREFIX = "version:video:";
+
+    /**
+     * 视频评论列表版本号的Key前缀
+     */
+    private static final String COMMENTS_KEY_PREFIX = "version:comments:";
+
+    /**
+     * 用户资料版本号的Key前缀
+     */
+    private static final String PROFILE_KEY_PREFIX = "version:profile:";
+
+    /**
+     * 版本号加一并续期，不存在时先以ARGV[1]（当前毫秒时间戳）初始化，ARGV[2]为有效期毫秒数
+     */
+    private static final String BUMP_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then "
+                    + "redis.call('set', KEYS[1], ARGV[1]); "
+                    + "end; "
+                    + "local version = redis.call('incr', KEYS[1]); "
+                    + "redis.call('pexpire', KEYS[1], ARGV[2]); "
+                    + "return version;";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    /**
+     * 版本号有效期（小时）
+     */
+    @Value("${resource.version.ttl-hours:168}")
+    private long ttlHours;
+
+    /**
+     * 视频详情的ETag，详情中的isFishFed因用户而异，所以ETag也区分当前用户
+     *
+     * @param videoId 视频ID
+     * @param currentUserId 当前用户ID，未登录时为null
+     * @return ETag
+     */
+    public String videoEtag(Long videoId, Long currentUserId) {
+        String viewer = currentUserId == null ? "anon" : "u" + currentUserId;
+        return "v" + etagVersion(VIDEO_KEY_PREFIX + videoId) + "-" + viewer;
+    }
+
+    /**
+     * 视频评论列表的ETag
+     *
+     * @param videoId 视频ID
+     * @return ETag
+     */
+    public String commentsEtag(Long videoId) {
+        return "c" + etagVersion(COMMENTS_KEY_PREFIX + videoId);
+    }
+
+    /**
+     * 视频评论列表的版本号
+     *
+     * @param videoId 视频ID
+     * @return 版本号，Key不存在时返回0
+     */
+    public long commentsVersion(Long videoId) {
+        return version(commentsKey(videoId));
+    }
+
+    /**
+     * 视频评论列表版本号在Redis中的Key，供Lua脚本在写入缓存前校验版本
+     *
+     * @param videoId 视频ID
+     * @return Redis Key
+     */
+    public static String commentsKey(Long videoId) {
+        return COMMENTS_KEY_PREFIX + videoId;
+    }
+
+    /**
+     * 用户资料的ETag，资料中的canClaimDaily随日期变化，所以ETag也包含当天日期
+     *
+     * @param username 用户名
+     * @return ETag
+     */
+    public String profileEtag(String username) {
+        return "p" + etagVersion(PROFILE_KEY_PREFIX + username) + "-" + LocalDate.now();
+    }
+
+    /**
+     * 更新视频详情的版本号
+     *
+     * @param videoIds 视频ID集合
+     */
+    public void bumpVideos(Collection<Long> videoIds) {
+        bumpAll(VIDEO_KEY_PREFIX, videoIds);
+    }
+
+    /**
+     * 在事务提交后更新视频详情的版本号，避免客户端在提交前拿到新ETag和旧数据
+     *
+     * @param videoId 视频ID
+     */
+    public void bumpVideoAfterCommit(Long videoId) {
+        TransactionUtils.afterCommit(() -> bumpVideos(List.of(videoId)));
+    }
+
+    /**
+     * 更新视频评论列表的版本号
+     *
+     * @param videoId 视频ID
+     */
+    public void bumpComments(Long videoId) {
+        bump(COMMENTS_KEY_PREFIX + videoId);
+    }
+
+    /**
+     * 在事务提交后更新用户资料的版本号
+     *
+     * @param username 用户名
+     */
+    public void bumpProfileAfterCommit(String username) {
+        TransactionUtils.afterCommit(() -> bump(PROFILE_KEY_PREFIX + username));
+    }
+
+    /**
+     * 更新一批用户资料的版本号，在一次往返中完成
+     *
+     * @param usernames 用户名集合
+     */
+    public void bumpProfiles(Collection<String> usernames) {
+        bumpAll(PROFILE_KEY_PREFIX, usernames);
+    }
+
+    /**
+     * 用一个批次更新同一类资源的多个版本号
+     */
+    private void bumpAll(String prefix, Collection<?> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        RScriptAsync script = batch.getScript(StringCodec.INSTANCE);
+        String now = String.valueOf(System.currentTimeMillis());
+        String ttl = String.valueOf(ttlMillis());
+        for (Object id : ids) {
+            script.evalAsync(RScript.Mode.READ_WRITE, BUMP_SCRIPT, RScript.ReturnType.INTEGER,
+                    Collections.singletonList(prefix + id), now, ttl);
+        }
+        batch.execute();
+    }
+
+    /**
+     * 版本号加一，同一毫秒内的多次变更和节点之间的时钟偏差都不会产生重复或倒退的版本号
+     */
+    private void bump(String key) {
+        redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE,
+                BUMP_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Collections.singletonList(key),
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(ttlMillis()));
+    }
+
+    /**
+     * 用于ETag的版本号，版本号不存在时为0加上当前时间段编号
+     * 时间段长度等于版本号有效期：某个时间段内签发的"0"ETag，要等版本号创建并过期后才会再次出现0，
+     * 那时至少已经过了一个完整的有效期，时间段编号不同，不会把创建之后的修改误判为未修改
+     */
+    private String etagVersion(String key) {
+        long version = version(key);
+        return version != 0 ? String.valueOf(version) : "0." + System.currentTimeMillis() / ttlMillis();
+    }
+
+    /**
+     * 读取版本号，Key不存在时返回0，读取不创建Key
+     */
+    private long version(String key) {
+        Long version = redissonClient.<Long>getBucket(key, LongCodec.INSTANCE).get();
+        return version != null ? version : 0;
+    }
+
+    private long ttlMillis() {
+        return TimeUnit.HOURS.toMillis(ttlHours);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.videoapp.cache;
+
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 合并并发加载：同一个Key同时只有一个线程真正执行加载，其他线程等待并共享它的结果
+ * 本节点内用CompletableFuture合并；提供了共享缓存查询时，再用Redisson短锁在节点之间合并，
+ * 拿到锁后先重新查一次共享缓存，只有仍未命中才执行加载
+ */
+@Component
+public class SingleFlightLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(SingleFlightLoader.class);
+
+    /**
+     * 跨节点加载锁的Key前缀
+     */
+    private static final String LOCK_KEY_PREFIX = "lock:load:";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    /**
+     * 等待其他节点加载完成的最长时间（毫秒），超时后不再等待，直接加载
+     */
+    @Value("${cache.single-flight.lock-wait-ms:200}")
+    private long lockWaitMs;
+
+    /**
+     * 跨节点加载锁的租期（毫秒），持有锁的节点宕机时锁会在租期后自动释放
+     */
+    @Value("${cache.single-flight.lock-lease-ms:3000}")
+    private long lockLeaseMs;
+
+    /**
+     * 本节点正在进行的加载
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 只在本节点内合并并发加载
+     *
+     * @param key 加载的Key
+     * @param loader 加载函数
+     * @return 加载结果，并发的调用方拿到的是同一个对象
+     */
+    public <T> T load(String key, Supplier<T> loader) {
+        return load(key, null, loader);
+    }
+
+    /**
+     * 在本节点内和节点之间合并并发加载
+     *
+     * @param key 加载的Key
+     * @param sharedLookup 查询共享缓存（如Redis）的函数，未命中返回null；为null时只在本节点内合并
+     * @param loader 加载函数，负责把结果写入共享缓存
+     * @return 加载结果，并发的调用方拿到的是同一个对象
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(String key, Supplier<T> sharedLookup, Supplier<T> loader) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return (T) await(existing);
+        }
+
+        try {
+            T value = sharedLookup == null ? loader.get() : loadAcrossNodes(key, sharedLookup, loader);
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * 持有跨节点锁时执行加载；在等待时间内拿不到锁时放弃合并直接加载，
+     * 避免Redis异常或持锁节点卡住时所有请求一起阻塞
+     */
+    private <T> T loadAcrossNodes(String key, Supplier<T> sharedLookup, Supplier<T> loader) {
+        RLock lock = redissonClient.getLock(LOCK_KEY_PREFIX + key);
+        boolean locked = false;
+        try {
+            locked = lock.tryLock(lockWaitMs, lockLeaseMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("获取加载锁失败，直接加载: {}", key, e);
+        }
+
+        try {
+            // 等锁期间其他节点可能已经加载完成并写入了共享缓存
+            T value = sharedLookup.get();
+            return value != null ? value : loader.get();
+        } finally {
+            if (locked && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.example.videoapp.cache;
+
+import com.example.videoapp.DTO.VideoDetailDTO;
+import com.example.videoapp.common.TransactionUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.netty.buffer.ByteBuf;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.JsonJacksonCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 视频详情两级缓存：进程内Caffeine作为一级缓存，Redis作为二级缓存
+ * 失效消息通过Redis发布订阅广播到所有节点，保证各节点一级缓存一致；
+ * 播放量写回后只在缓存中原地累加播放量，不让热门视频的缓存随每次写回失效
+ * 每次失效同时递增视频的缓存代数，加载前记下代数，写回二级缓存时代数已变化就放弃写回，
+ * 在事务提交前读到旧数据的加载不会在失效之后把旧数据写回二级缓存
+ */
+@Component
+public class VideoDetailCache {
+
+    /**
+     * 视频详情在Redis中的Key前缀
+     */
+    private static final String KEY_PREFIX = "video:detail:";
+
+    /**
+     * 视频缓存代数在Redis中的Key前缀
+     */
+    private static final String GENERATION_KEY_PREFIX = "video:detail:gen:";
+
+    /**
+     * 删除二级缓存并递增缓存代数，代数的有效期与二级缓存相同
+     * KEYS: 详情Key、代数Key；ARGV[1]为有效期毫秒数
+     */
+    private static final String INVALIDATE_SCRIPT =
+            "redis.call('del', KEYS[1]); "
+                    + "redis.call('incr', KEYS[2]); "
+                    + "redis.call('pexpire', KEYS[2], ARGV[1]); "
+                    + "return 1;";
+
+    /**
+     * 缓存代数与加载前记下的一致时才写入二级缓存，代数不存在视为0
+     * KEYS: 详情Key、代数Key；ARGV: 加载前的代数、视频详情JSON、有效期毫秒数
+     */
+    private static final String STORE_SCRIPT =
+            "if (redis.call('get', KEYS[2]) or '0') ~= ARGV[1] then "
+                    + "return 0; "
+                    + "end; "
+                    + "redis.call('set', KEYS[1], ARGV[2], 'px', ARGV[3]); "
+                    + "return 1;";
+
+    /**
+     * 缓存失效广播频道
+     */
+    private static final String INVALIDATION_TOPIC = "video:detail:invalidate";
+
+    /**
+     * 播放量累加广播频道
+     */
+    private static final String VIEWS_TOPIC = "video:detail:views";
+
+    /**
+     * 二级缓存存在时在JSON中原地累加播放量，保留剩余有效期
+     * ARGV[1]为播放增量
+     */
+    private static final String ADD_VIEWS_SCRIPT =
+            "local value = redis.call('get', KEYS[1]); "
+                    + "if not value then "
+                    + "return 0; "
+                    + "end; "
+                    + "local patched, count = string.gsub(value, '\"viewCount\":(%d+)', function(views) "
+                    + "return '\"viewCount\":' .. string.format('%d', tonumber(views) + tonumber(ARGV[1])); "
+                    + "end, 1); "
+                    + "if count == 0 then "
+                    + "return 0; "
+                    + "end; "
+                    + "local ttl = redis.call('pttl', KEYS[1]); "
+                    + "if ttl > 0 then "
+                    + "redis.call('set', KEYS[1], patched, 'px', ttl); "
+                    + "else "
+                    + "redis.call('set', KEYS[1], patched); "
+                    + "end; "
+                    + "return 1;";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private JsonJacksonCodec jsonJacksonCodec;
+
+    @Autowired
+    private SingleFlightLoader singleFlightLoader;
+
+    /**
+     * 一级缓存最多保存的视频数量
+     */
+    @Value("${video.detail-cache.local-max-size:10000}")
+    private long localMaxSize;
+
+    /**
+     * 一级缓存的有效期（秒）
+     */
+    @Value("${video.detail-cache.local-ttl-seconds:60}")
+    private long localTtlSeconds;
+
+    /**
+     * 二级缓存的有效期（分钟）
+     */
+    @Value("${video.detail-cache.redis-ttl-minutes:30}")
+    private long redisTtlMinutes;
+
+    /**
+     * 进程内一级缓存
+     */
+    private Cache<Long, VideoDetailDTO> localCache;
+
+    /**
+     * 失效广播频道
+     */
+    private RTopic invalidationTopic;
+
+    /**
+     * 播放量累加广播频道
+     */
+    private RTopic viewsTopic;
+
+    /**
+     * 初始化一级缓存并订阅失效广播
+     */
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(localTtlSeconds))
+                .build();
+
+        // 广播消息内容为逗号分隔的视频ID，收到后只清理本节点的一级缓存
+        invalidationTopic = redissonClient.getTopic(INVALIDATION_TOPIC, StringCodec.INSTANCE);
+        invalidationTopic.addListener(String.class, (channel, message) ->
+                localCache.invalidateAll(parseIds(message)));
+
+        // 广播消息内容为逗号分隔的"视频ID:增量"，包括本节点在内的每个节点各自累加一次一级缓存
+        viewsTopic = redissonClient.getTopic(VIEWS_TOPIC, StringCodec.INSTANCE);
+        viewsTopic.addListener(String.class, (channel, message) ->
+                parseDeltas(message).forEach(this::addLocalViews));
+    }
+
+    /**
+     * 读取视频详情，依次查询一级缓存、二级缓存，都未命中时调用加载函数并回填
+     * 并发未命中同一个视频时只有一个请求会真正查询数据库
+     *
+     * @param videoId 视频ID
+     * @param loader 缓存未命中时从数据库加载的函数
+     * @return 共享的视频详情，调用方不得直接修改；视频不存在时返回null
+     */
+    public VideoDetailDTO get(Long videoId, Function<Long, VideoDetailDTO> loader) {
+        VideoDetailDTO videoDetail = localCache.getIfPresent(videoId);
+        if (videoDetail != null) {
+            return videoDetail;
+        }
+
+        RBucket<VideoDetailDTO> bucket = bucket(videoId);
+        videoDetail = bucket.get();
+        if (videoDetail == null) {
+            videoDetail = singleFlightLoader.load(KEY_PREFIX + videoId, bucket::get, () -> {
+                String generation = generation(videoId);
+                VideoDetailDTO loaded = loader.apply(videoId);
+                if (loaded != null) {
+                    redissonClient.getScript(StringCodec.INSTANCE).eval(
+                            RScript.Mode.READ_WRITE,
+                            STORE_SCRIPT,
+                            RScript.ReturnType.INTEGER,
+                            List.of(KEY_PREFIX + videoId, GENERATION_KEY_PREFIX + videoId),
+                            generation, encode(loaded), String.valueOf(redisTtlMillis()));
+                }
+                return loaded;
+            });
+            if (videoDetail == null) {
+                return null;
+            }
+        }
+
+        localCache.put(videoId, videoDetail);
+        return videoDetail;
+    }
+
+    /**
+     * 批量读取视频详情：一级缓存批量命中，剩余的用一次MGET查询二级缓存，
+     * 仍未命中的交给批量加载函数一次性加载，并用一次管道写回二级缓存
+     *
+     * @param videoIds 视频ID集合
+     * @param loader 批量加载函数，返回视频ID到详情的映射，不存在的视频不包含在内
+     * @return 视频ID到共享视频详情的映射，调用方不得直接修改；不存在的视频不包含在内
+     */
+    public Map<Long, VideoDetailDTO> getAll(Collection<Long> videoIds,
+                                            Function<Collection<Long>, Map<Long, VideoDetailDTO>> loader) {
+        Map<Long, VideoDetailDTO> result = new HashMap<>(localCache.getAllPresent(videoIds));
+        List<Long> misses = videoIds.stream().filter(id -> !result.containsKey(id)).distinct().collect(Collectors.toList());
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        String[] keys = misses.stream().map(id -> KEY_PREFIX + id).toArray(String[]::new);
+        Map<String, VideoDetailDTO> remote = redissonClient.getBuckets(jsonJacksonCodec).get(keys);
+        List<Long> dbMisses = new ArrayList<>();
+        for (Long id : misses) {
+            VideoDetailDTO videoDetail = remote.get(KEY_PREFIX + id);
+            if (videoDetail != null) {
+                result.put(id, videoDetail);
+                localCache.put(id, videoDetail);
+            } else {
+                dbMisses.add(id);
+            }
+        }
+        if (dbMisses.isEmpty()) {
+            return result;
+        }
+
+        String[] generationKeys = dbMisses.stream().map(id -> GENERATION_KEY_PREFIX + id).toArray(String[]::new);
+        Map<String, String> generations = redissonClient.getBuckets(StringCodec.INSTANCE).get(generationKeys);
+        Map<Long, VideoDetailDTO> loaded = loader.apply(dbMisses);
+        if (!loaded.isEmpty()) {
+            RBatch batch = redissonClient.createBatch();
+            String ttl = String.valueOf(redisTtlMillis());
+            loaded.forEach((id, videoDetail) -> batch.getScript(StringCodec.INSTANCE).evalAsync(
+                    RScript.Mode.READ_WRITE,
+                    STORE_SCRIPT,
+                    RScript.ReturnType.INTEGER,
+                    List.of(KEY_PREFIX + id, GENERATION_KEY_PREFIX + id),
+                    generations.getOrDefault(GENERATION_KEY_PREFIX + id, "0"), encode(videoDetail), ttl));
+            batch.execute();
+            localCache.putAll(loaded);
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    /**
+     * 立即失效指定视频的缓存，并通知其他节点
+     *
+     * @param videoIds 视频ID集合
+     */
+    public void invalidate(Collection<Long> videoIds) {
+        if (videoIds.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        String ttl = String.valueOf(redisTtlMillis());
+        for (Long id : videoIds) {
+            batch.getScript(StringCodec.INSTANCE).evalAsync(
+                    RScript.Mode.READ_WRITE,
+                    INVALIDATE_SCRIPT,
+                    RScript.ReturnType.INTEGER,
+                    List.of(KEY_PREFIX + id, GENERATION_KEY_PREFIX + id),
+                    ttl);
+        }
+        batch.execute();
+        localCache.invalidateAll(videoIds);
+        invalidationTopic.publish(videoIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+    }
+
+    /**
+     * 失效指定视频的缓存；如果当前处于事务中，则延迟到事务提交之后执行，
+     * 避免其他请求在提交前把旧数据重新加载进缓存
+     *
+     * @param videoId 视频ID
+     */
+    public void invalidateAfterCommit(Long videoId) {
+        TransactionUtils.afterCommit(() -> invalidate(List.of(videoId)));
+    }
+
+    /**
+     * 在已缓存的视频详情上累加已写回数据库的播放量，未缓存的视频不做处理
+     * 二级缓存用一次管道原地修改，一级缓存通过广播由各节点自行累加
+     *
+     * @param deltas 视频ID到播放增量的映射
+     */
+    public void addViews(Map<Long, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        deltas.forEach((id, delta) -> batch.getScript(StringCodec.INSTANCE).evalAsync(
+                RScript.Mode.READ_WRITE,
+                ADD_VIEWS_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                List.of(KEY_PREFIX + id),
+                String.valueOf(delta)));
+        batch.execute();
+        viewsTopic.publish(deltas.entrySet().stream()
+                .map(entry -> entry.getKey() + ":" + entry.getValue())
+                .collect(Collectors.joining(",")));
+    }
+
+    /**
+     * 一级缓存中的对象被所有请求共享，复制一份累加后替换
+     */
+    private void addLocalViews(Long videoId, Long delta) {
+        localCache.asMap().computeIfPresent(videoId, (id, cached) -> {
+            VideoDetailDTO patched = new VideoDetailDTO();
+            BeanUtils.copyProperties(cached, patched);
+            patched.setViewCount((cached.getViewCount() == null ? 0 : cached.getViewCount()) + delta);
+            return patched;
+        });
+    }
+
+    /**
+     * 读取视频当前的缓存代数，不存在时为0
+     */
+    private String generation(Long videoId) {
+        String generation = redissonClient.<String>getBucket(GENERATION_KEY_PREFIX + videoId, StringCodec.INSTANCE).get();
+        return generation != null ? generation : "0";
+    }
+
+    /**
+     * 用与读取二级缓存相同的编码器把视频详情编码为JSON
+     */
+    private String encode(VideoDetailDTO videoDetail) {
+        try {
+            ByteBuf buf = jsonJacksonCodec.getValueEncoder().encode(videoDetail);
+            try {
+                return buf.toString(StandardCharsets.UTF_8);
+            } finally {
+                buf.release();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("视频详情序列化失败", e);
+        }
+    }
+
+    private long redisTtlMillis() {
+        return TimeUnit.MINUTES.toMillis(redisTtlMinutes);
+    }
+
+    private RBucket<VideoDetailDTO> bucket(Long videoId) {
+        return redissonClient.getBucket(KEY_PREFIX + videoId, jsonJacksonCodec);
+    }
+
+    private static List<Long> parseIds(String message) {
+        return Arrays.stream(message.split(","))
+                .filter(s -> !s.isBlank())
+                .map(Long::valueOf)
+                .collect(Collectors.toList());
+    }
+
+    private static Map<Long, Long> parseDeltas(String message) {
+        Map<Long, Long> deltas = new HashMap<>();
+        for (String entry : message.split(",")) {
+            int separator = entry.indexOf(':');
+            if (separator > 0) {
+                deltas.put(Long.valueOf(entry.substring(0, separator)), Long.valueOf(entry.substring(separator + 1)));
+            }
+        }
+        return deltas;
+    }
+}
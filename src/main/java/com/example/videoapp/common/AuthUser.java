@@ -0,0 +1,23 @@
+package com.example.videoapp.common;
+
+import lombok.Getter;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collections;
+
+/**
+ * JWT认证后的当前用户，在用户名之外携带用户ID，业务代码不必再按用户名查询用户表
+ */
+@Getter
+public class AuthUser extends User {
+
+    /**
+     * 用户ID
+     */
+    private final Long id;
+
+    public AuthUser(Long id, String username) {
+        super(username, "", Collections.emptyList());
+        this.id = id;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.videoapp.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 进程内布隆过滤器，只支持字符串元素
+ * 判断结果为不存在时一定不存在，为存在时可能误判，调用方需要再做一次精确确认
+ * 位数组使用AtomicLongArray，可以在读取的同时由其他线程并发写入
+ */
+public class BloomFilter {
+
+    /**
+     * 位数组
+     */
+    private final AtomicLongArray bits;
+
+    /**
+     * 位数组的总位数
+     */
+    private final long bitCount;
+
+    /**
+     * 每个元素使用的哈希函数个数
+     */
+    private final int hashCount;
+
+    /**
+     * 按预期元素数量和可接受的误判率创建布隆过滤器
+     *
+     * @param expectedInsertions 预期元素数量
+     * @param falsePositiveRate 可接受的误判率
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(expectedInsertions, 1);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (m + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    /**
+     * 加入元素
+     *
+     * @param value 元素
+     */
+    public void put(String value) {
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+            } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * 判断元素是否可能存在
+     *
+     * @param value 元素
+     * @return 返回false时元素一定不存在
+     */
+    public boolean mightContain(String value) {
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 带种子的64位FNV-1a哈希，再做一次混合使低位分布均匀
+     */
+    private static long hash(String value, long seed) {
+        long h = 0xCBF29CE484222325L ^ seed;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
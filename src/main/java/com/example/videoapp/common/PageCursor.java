@@ -0,0 +1,112 @@
+package com.example.videoapp.common;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 游标分页的游标对象，记录上一页最后一条数据的排序键和ID，
+ * 对外以Base64编码的不透明字符串传递
+ */
+@Getter
+public class PageCursor {
+
+    /**
+     * 游标各字段之间的分隔符
+     */
+    private static final String SEPARATOR = "|";
+
+    /**
+     * 排序方式，用于校验游标与当前请求的排序方式一致
+     */
+    private final String sortBy;
+
+    /**
+     * 上一页最后一条数据的排序键
+     */
+    private final String sortValue;
+
+    /**
+     * 上一页最后一条数据的ID
+     */
+    private final Long lastId;
+
+    public PageCursor(String sortBy, String sortValue, Long lastId) {
+        this.sortBy = sortBy;
+        this.sortValue = sortValue;
+        this.lastId = lastId;
+    }
+
+    /**
+     * 将排序键解析为时间，用于按时间排序的游标
+     *
+     * @return 排序时间
+     */
+    public LocalDateTime getSortTime() {
+        return LocalDateTime.parse(sortValue);
+    }
+
+    /**
+     * 将排序键解析为数值，用于按计数排序的游标
+     *
+     * @return 排序数值
+     */
+    public Long getSortNumber() {
+        return Long.valueOf(sortValue);
+    }
+
+    /**
+     * 编码为不透明的游标字符串
+     *
+     * @return 游标字符串
+     */
+    public String encode() {
+        String raw = sortBy + SEPARATOR + sortValue + SEPARATOR + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标字符串
+     *
+     * @param cursor 游标字符串，为空表示第一页
+     * @param sortBy 当前请求的排序方式
+     * @return 游标对象，第一页时返回null
+     */
+    public static PageCursor decode(String cursor, String sortBy) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            if (parts.length != 3 || !parts[0].equals(sortBy)) {
+                throw new IllegalArgumentException("游标与排序方式不匹配");
+            }
+            PageCursor pageCursor = new PageCursor(parts[0], parts[1], Long.valueOf(parts[2]));
+            // 提前校验排序键格式，避免带着非法参数进入SQL
+            if ("latest".equals(sortBy)) {
+                pageCursor.getSortTime();
+            } else {
+                pageCursor.getSortNumber();
+            }
+            return pageCursor;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
+
+    /**
+     * 规范化排序方式，未知的排序方式按最新排序处理
+     *
+     * @param sortBy 请求的排序方式
+     * @return latest、views或popularity之一
+     */
+    public static String normalizeSortBy(String sortBy) {
+        if ("views".equals(sortBy) || "popularity".equals(sortBy)) {
+            return sortBy;
+        }
+        return "latest";
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.videoapp.common;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务相关的工具方法
+ */
+public final class TransactionUtils {
+
+    private TransactionUtils() {}
+
+    /**
+     * 在当前事务提交之后执行操作；不在事务中时立即执行
+     * 用于缓存失效、Redis计数等需要在数据库提交后才能生效的副作用
+     *
+     * @param action 要执行的操作
+     */
+    public static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.videoapp.config;
+
+import com.example.videoapp.lock.LocalStripedLockProvider;
+import com.example.videoapp.lock.LockProvider;
+import com.example.videoapp.lock.RedissonLockProvider;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 锁配置类，根据部署方式选择锁的实现
+ */
+@Configuration
+public class LockConfig {
+
+    /**
+     * 创建锁提供者
+     * 
+     * @param redissonClient Redisson客户端
+     * @param provider 锁的实现：local为进程内分段锁（单节点部署），redisson为分布式锁（集群部署）
+     * @param stripes 进程内分段锁的分段数量
+     * @param leaseMillis 分布式锁的租期（毫秒）
+     * @return 锁提供者
+     */
+    @Bean
+    public LockProvider lockProvider(RedissonClient redissonClient,
+                                     @Value("${lock.provider:redisson}") String provider,
+                                     @Value("${lock.local.stripes:1024}") int stripes,
+                                     @Value("${lock.redisson.lease-ms:10000}") long leaseMillis) {
+        if ("local".equals(provider)) {
+            return new LocalStripedLockProvider(stripes);
+        }
+        return new RedissonLockProvider(redissonClient, leaseMillis);
+    }
+}
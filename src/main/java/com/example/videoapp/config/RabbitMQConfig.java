@@ -2,9 +2,13 @@ package com.example.videoapp.config;
 
 import jakarta.annotation.PostConstruct;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -28,12 +32,54 @@ public class RabbitMQConfig {
     public static final String NOTIFICATION_QUEUE_NAME = "notification.queue";
     public static final String NOTIFICATION_ROUTING_KEY = "notification.new";
 
+    /**
+     * 无法处理的通知消息转入的死信交换机、队列和路由键名称
+     */
+    public static final String NOTIFICATION_DEAD_LETTER_EXCHANGE_NAME = "notification.dlx";
+    public static final String NOTIFICATION_DEAD_LETTER_QUEUE_NAME = "notification.dlq";
+    public static final String NOTIFICATION_DEAD_LETTER_ROUTING_KEY = "notification.dead";
+
+    /**
+     * 通知批量监听容器工厂的Bean名称
+     */
+    public static final String NOTIFICATION_BATCH_CONTAINER_FACTORY = "notificationBatchContainerFactory";
+
     /**
      * Spring AMQP的管理工具
      */
     @Autowired
     private AmqpAdmin amqpAdmin;
 
+    /**
+     * 通知消费者每批最多处理的消息数
+     */
+    @Value("${notification.consumer.batch-size:100}")
+    private int notificationBatchSize;
+
+    /**
+     * 凑批时等待下一条消息的最长时间（毫秒），超时后先处理已收到的消息
+     */
+    @Value("${notification.consumer.receive-timeout-ms:200}")
+    private long notificationReceiveTimeoutMs;
+
+    /**
+     * 每个通知消费者预取的消息数，至少为批大小
+     */
+    @Value("${notification.consumer.prefetch:250}")
+    private int notificationPrefetch;
+
+    /**
+     * 通知消费者的初始并发数
+     */
+    @Value("${notification.consumer.concurrency:2}")
+    private int notificationConcurrency;
+
+    /**
+     * 通知消费者的最大并发数，队列积压时自动扩容
+     */
+    @Value("${notification.consumer.max-concurrency:4}")
+    private int notificationMaxConcurrency;
+
     /**
      * 在Bean初始化后自动声明RabbitMQ的交换机、队列和绑定关系
      */
@@ -54,6 +100,37 @@ public class RabbitMQConfig {
         amqpAdmin.declareExchange(notificationExchange);
         amqpAdmin.declareQueue(notificationQueue);
         amqpAdmin.declareBinding(notificationBinding);
+
+        // 声明通知死信，已有的通知队列参数不变，由消费者显式转发无法处理的消息
+        DirectExchange deadLetterExchange = new DirectExchange(NOTIFICATION_DEAD_LETTER_EXCHANGE_NAME);
+        Queue deadLetterQueue = new Queue(NOTIFICATION_DEAD_LETTER_QUEUE_NAME, true);
+        Binding deadLetterBinding = BindingBuilder.bind(deadLetterQueue).to(deadLetterExchange).with(NOTIFICATION_DEAD_LETTER_ROUTING_KEY);
+        amqpAdmin.declareExchange(deadLetterExchange);
+        amqpAdmin.declareQueue(deadLetterQueue);
+        amqpAdmin.declareBinding(deadLetterBinding);
+    }
+
+    /**
+     * 通知批量监听容器工厂：消费者一次取出一批消息交给监听方法，由监听方法按批手动确认
+     * 
+     * @param configurer Spring Boot的默认容器配置
+     * @param connectionFactory 连接工厂
+     * @return 容器工厂
+     */
+    @Bean(NOTIFICATION_BATCH_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory notificationBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(notificationBatchSize);
+        factory.setReceiveTimeout(notificationReceiveTimeoutMs);
+        factory.setPrefetchCount(Math.max(notificationPrefetch, notificationBatchSize));
+        factory.setConcurrentConsumers(notificationConcurrency);
+        factory.setMaxConcurrentConsumers(Math.max(notificationConcurrency, notificationMaxConcurrency));
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
     }
     
     /**
@@ -18,13 +18,12 @@ import org.springframework.context.annotation.Configuration;
 public class RedissonConfig {
 
     /**
-     * 创建并配置RedissonSpringCacheManager
+     * 创建Redis中存储对象使用的JSON编码器，缓存管理器和手动缓存组件共用
      * 
-     * @param redissonClient Redisson客户端
-     * @return 配置好的缓存管理器
+     * @return JSON编码器
      */
     @Bean
-    public CacheManager cacheManager(RedissonClient redissonClient) {
+    public JsonJacksonCodec jsonJacksonCodec() {
         // 创建Jackson的ObjectMapper，支持Java 8时间类型和类型信息保留
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
@@ -32,10 +31,18 @@ public class RedissonConfig {
                 objectMapper.getPolymorphicTypeValidator(),
                 ObjectMapper.DefaultTyping.NON_FINAL
         );
-        
-        // 创建JSON编码器
-        JsonJacksonCodec codec = new JsonJacksonCodec(objectMapper);
+        return new JsonJacksonCodec(objectMapper);
+    }
 
+    /**
+     * 创建并配置RedissonSpringCacheManager
+     * 
+     * @param redissonClient Redisson客户端
+     * @param codec JSON编码器
+     * @return 配置好的缓存管理器
+     */
+    @Bean
+    public CacheManager cacheManager(RedissonClient redissonClient, JsonJacksonCodec codec) {
         // 创建Redisson缓存管理器
         RedissonSpringCacheManager cacheManager = new RedissonSpringCacheManager(redissonClient);
 
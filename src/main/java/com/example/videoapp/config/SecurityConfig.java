@@ -1,7 +1,9 @@
 package com.example.videoapp.config;
 
 import com.example.videoapp.filter.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -25,6 +27,12 @@ public class SecurityConfig {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    /**
+     * BCrypt强度，调高后旧密码会在用户下次登录时自动重新哈希
+     */
+    @Value("${security.password.bcrypt-strength:10}")
+    private int bcryptStrength;
+
     /**
      * 配置密码编码器Bean
      * 
@@ -32,7 +40,7 @@ public class SecurityConfig {
      */
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 
     /**
@@ -51,10 +59,15 @@ public class SecurityConfig {
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 // 配置请求授权规则
                 .authorizeHttpRequests(auth -> auth
-                        // 公开的POST接口(注册、登录、发送验证码)
+                        // 异步接口（CompletableFuture、SSE）结果写回和错误转发时的再次分派，首次分派时已经完成授权
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+
+                        // 公开的POST接口(注册、登录、刷新令牌、退出登录、发送验证码)
                         .requestMatchers(HttpMethod.POST,
                                 "/api/users/register",
                                 "/api/users/login",
+                                "/api/users/refresh",
+                                "/api/users/logout",
                                 "/api/users/send-verification-code").permitAll()
 
                         // 公开的GET接口(视频、评论、用户公开信息)
@@ -62,6 +75,7 @@ public class SecurityConfig {
                                 "/api/videos/**",
                                 "/api/videos/{videoId}/comments",
                                 "/api/users/search",
+                                "/api/users/suggest",
                                 "/api/users/{username}",
                                 "/api/users/{userId}/videos"
                         ).permitAll()
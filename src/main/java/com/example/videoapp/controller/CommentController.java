@@ -1,15 +1,15 @@
 package com.example.videoapp.controller;
 
-import com.example.videoapp.DTO.CommentDetailDTO;
 import com.example.videoapp.DTO.CreateCommentRequest;
+import com.example.videoapp.cache.ResourceVersionStore;
 import com.example.videoapp.common.Result;
 import com.example.videoapp.entity.Comment;
 import com.example.videoapp.service.CommentService;
+import com.example.videoapp.service.UserIdResolver;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
-
-import java.util.List;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * 评论控制器，处理与视频评论相关的请求
@@ -20,6 +20,12 @@ public class CommentController {
     
     @Autowired
     private CommentService commentService;
+
+    @Autowired
+    private ResourceVersionStore resourceVersionStore;
+
+    @Autowired
+    private UserIdResolver userIdResolver;
     
     /**
      * 发表评论
@@ -34,20 +40,48 @@ public class CommentController {
             @PathVariable Long videoId,
             @RequestBody CreateCommentRequest commentRequest,
             Authentication authentication) {
-        String username = authentication.getName();
-        return Result.success(commentService.createComment(videoId, commentRequest.getContent(), username));
+        Long userId = userIdResolver.requireUserId(authentication);
+        return Result.success(commentService.createComment(videoId, commentRequest.getContent(), userId));
     }
     
     /**
-     * 获取视频的所有评论
+     * 获取视频的评论
+     * 携带cursor参数时使用游标分页（第一页传空字符串），返回CursorPage；否则返回全部评论
+     * 评论列表未变化时直接返回304，不查询数据库
      * 
      * @param videoId 视频ID
-     * @return 评论列表
+     * @param cursor 游标，为null时返回全部评论
+     * @param size 游标分页时的每页大小
+     * @param withTotal 游标分页时是否返回评论总数
+     * @param webRequest 当前请求，用于处理条件请求
+     * @return 评论列表，未修改时返回null
      */
     @GetMapping("/videos/{videoId}/comments")
-    public Result<List<CommentDetailDTO>> getCommentsForVideo(@PathVariable Long videoId) {
+    public Result<?> getCommentsForVideo(
+            @PathVariable Long videoId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal,
+            WebRequest webRequest) {
+        if (webRequest.checkNotModified(resourceVersionStore.commentsEtag(videoId))) {
+            return null;
+        }
+        if (cursor != null) {
+            return Result.success(commentService.getCommentsByVideoIdByCursor(videoId, cursor, size, withTotal));
+        }
         return Result.success(commentService.getCommentsByVideoId(videoId));
     }
+
+    /**
+     * 获取视频的评论数，不加载评论
+     * 
+     * @param videoId 视频ID
+     * @return 评论数
+     */
+    @GetMapping("/videos/{videoId}/comments/count")
+    public Result<Long> getCommentCount(@PathVariable Long videoId) {
+        return Result.success(commentService.getCommentCount(videoId));
+    }
     
     /**
      * 删除评论
@@ -60,8 +94,8 @@ public class CommentController {
     public Result<Void> deleteComment(
             @PathVariable Long commentId,
             Authentication authentication) {
-        String username = authentication.getName();
-        commentService.deleteComment(commentId, username);
+        Long userId = userIdResolver.requireUserId(authentication);
+        commentService.deleteComment(commentId, userId);
         return Result.success(); 
     }
 }
@@ -3,9 +3,13 @@ package com.example.videoapp.controller;
 import com.example.videoapp.common.Result;
 import com.example.videoapp.entity.Notification;
 import com.example.videoapp.service.NotificationService;
+import com.example.videoapp.service.NotificationStreamService;
+import com.example.videoapp.service.UserIdResolver;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -18,6 +22,12 @@ public class NotificationController {
     
     @Autowired
     private NotificationService notificationService;
+
+    @Autowired
+    private NotificationStreamService notificationStreamService;
+
+    @Autowired
+    private UserIdResolver userIdResolver;
     
     /**
      * 获取当前用户的所有通知
@@ -27,7 +37,33 @@ public class NotificationController {
      */
     @GetMapping
     public Result<List<Notification>> getMyNotifications(Authentication authentication) {
-        return Result.success(notificationService.getNotificationsForUser(authentication.getName()));
+        return Result.success(notificationService.getNotificationsForUser(userIdResolver.requireUserId(authentication)));
+    }
+    
+    /**
+     * 订阅当前用户的通知推送(SSE)
+     * 新的和合并更新过的通知以notification事件推送，重连时携带Last-Event-ID补发断线期间的通知
+     * 
+     * @param lastEventId 客户端最后收到的事件ID
+     * @param authentication 认证对象
+     * @return SSE连接
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            Authentication authentication) {
+        return notificationStreamService.connect(userIdResolver.requireUserId(authentication), lastEventId);
+    }
+
+    /**
+     * 获取当前用户的未读通知数，只读取Redis中的计数器，供客户端轮询角标
+     * 
+     * @param authentication 认证对象
+     * @return 未读通知数
+     */
+    @GetMapping("/unread-count")
+    public Result<Long> getUnreadCount(Authentication authentication) {
+        return Result.success(notificationService.getUnreadCount(userIdResolver.requireUserId(authentication)));
     }
     
     /**
@@ -39,7 +75,7 @@ public class NotificationController {
      */
     @PostMapping("/{notificationId}/read")
     public Result<Void> markAsRead(@PathVariable Long notificationId, Authentication authentication) {
-        notificationService.markNotificationAsRead(notificationId, authentication.getName());
+        notificationService.markNotificationAsRead(notificationId, userIdResolver.requireUserId(authentication));
         return Result.success();
     }
     
@@ -51,7 +87,7 @@ public class NotificationController {
      */
     @PostMapping("/read-all")
     public Result<Void> markAllAsRead(Authentication authentication) {
-        notificationService.markAllAsReadForUser(authentication.getName());
+        notificationService.markAllAsReadForUser(userIdResolver.requireUserId(authentication));
         return Result.success();
     }
 }
@@ -1,10 +1,11 @@
 package com.example.videoapp.controller;
 
 import com.example.videoapp.DTO.*;
+import com.example.videoapp.cache.ResourceVersionStore;
 import com.example.videoapp.common.Result;
 import com.example.videoapp.entity.User;
-import com.example.videoapp.entity.Video;
 import com.example.videoapp.service.EmailService;
+import com.example.videoapp.service.UserIdResolver;
 import com.example.videoapp.service.UserService;
 import com.example.videoapp.service.VerificationService;
 import com.example.videoapp.service.VideoService;
@@ -12,9 +13,12 @@ import com.github.pagehelper.PageInfo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("api/users")
@@ -30,6 +34,12 @@ public class UserController {
     
     @Autowired
     private VerificationService verificationService;
+
+    @Autowired
+    private ResourceVersionStore resourceVersionStore;
+
+    @Autowired
+    private UserIdResolver userIdResolver;
     
     /**
      * 注册新用户
@@ -38,21 +48,46 @@ public class UserController {
      * @return 注册成功的用户信息
      */
     @PostMapping("/register")
-    public Result<User> register(@RequestBody RegisterRequest registerRequest) {
-        return Result.success(userService.register(registerRequest));
+    public CompletableFuture<Result<User>> register(@RequestBody RegisterRequest registerRequest) {
+        return userService.register(registerRequest).thenApply(Result::success);
     }
     
     /**
      * 用户登录
      * 
      * @param loginRequest 登录请求对象
-     * @return 包含JWT令牌的登录响应
+     * @return 包含访问令牌和刷新令牌的登录响应
      */
     @PostMapping("/login")
-    public Result<LoginResponse> login(@RequestBody LoginRequest loginRequest) {
-        LoginResponse loginResponse = new LoginResponse();
-        loginResponse.setToken(userService.login(loginRequest.getUsername(), loginRequest.getPassword()));
-        return Result.success(loginResponse);
+    public CompletableFuture<Result<LoginResponse>> login(@RequestBody LoginRequest loginRequest) {
+        return userService.login(loginRequest.getUsername(), loginRequest.getPassword()).thenApply(Result::success);
+    }
+    
+    /**
+     * 用刷新令牌换取新的令牌对
+     * 
+     * @param request 刷新令牌请求
+     * @return 新的访问令牌和刷新令牌
+     */
+    @PostMapping("/refresh")
+    public Result<LoginResponse> refresh(@RequestBody RefreshTokenRequest request) {
+        return Result.success(userService.refresh(request.getRefreshToken()));
+    }
+    
+    /**
+     * 退出登录，吊销当前访问令牌和刷新令牌
+     * 
+     * @param authHeader 携带访问令牌的Authorization请求头
+     * @param request 刷新令牌请求
+     * @return 操作结果
+     */
+    @PostMapping("/logout")
+    public Result<Void> logout(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @RequestBody(required = false) RefreshTokenRequest request) {
+        String accessToken = authHeader != null && authHeader.startsWith("Bearer ") ? authHeader.substring(7) : null;
+        userService.logout(accessToken, request == null ? null : request.getRefreshToken());
+        return Result.success();
     }
     
     /**
@@ -68,12 +103,17 @@ public class UserController {
     
     /**
      * 根据用户名获取用户资料
+     * 资料未变化时直接返回304，不查询数据库
      * 
      * @param username 用户名
-     * @return 用户资料
+     * @param webRequest 当前请求，用于处理条件请求
+     * @return 用户资料，未修改时返回null
      */
     @GetMapping("/{username}")
-    public Result<UserProfileResponse> getUserInfoByUsername(@PathVariable String username) {
+    public Result<UserProfileResponse> getUserInfoByUsername(@PathVariable String username, WebRequest webRequest) {
+        if (webRequest.checkNotModified(resourceVersionStore.profileEtag(username))) {
+            return null;
+        }
         return Result.success(userService.getUserInfoByUsername(username));
     }
     
@@ -93,6 +133,20 @@ public class UserController {
         return Result.success(userService.searchUsers(keyword, page, size));
     }
     
+    /**
+     * 按昵称前缀联想用户，用于搜索框自动补全
+     * 
+     * @param prefix 昵称前缀
+     * @param limit 最多返回的数量
+     * @return 匹配的用户列表
+     */
+    @GetMapping("/suggest")
+    public Result<List<UploaderDTO>> suggestUsers(
+            @RequestParam String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        return Result.success(userService.suggestUsers(prefix, limit));
+    }
+    
     /**
      * 更新当前登录用户的资料
      * 
@@ -109,17 +163,25 @@ public class UserController {
     
     /**
      * 获取指定用户的视频列表
+     * 携带cursor参数时使用游标分页（第一页传空字符串），返回CursorPage；否则按页码分页，返回PageInfo
      * 
      * @param userId 用户ID
      * @param page 页码
      * @param size 每页大小
+     * @param cursor 游标，为null时使用页码分页
+     * @param withTotal 游标分页时是否返回总数
      * @return 视频分页列表
      */
     @GetMapping("/{userId}/videos")
-    public Result<PageInfo<Video>> getUserVideos(
+    public Result<?> getUserVideos(
             @PathVariable Long userId,
             @RequestParam(defaultValue = "1") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        if (cursor != null) {
+            return Result.success(videoService.findVideosByUserIdByCursor(userId, cursor, size, withTotal));
+        }
         return Result.success(videoService.findVideosByUserIdPaginated(userId, page, size));
     }
     
@@ -146,15 +208,14 @@ public class UserController {
      * @return 操作结果
      */
     @PostMapping("/me/password")
-    public Result<Void> changePassword(
+    public CompletableFuture<Result<Void>> changePassword(
             Authentication authentication, 
             @RequestBody ChangePasswordRequest request) {
-        userService.changePassword(
+        return userService.changePassword(
                 authentication.getName(),
                 request.getOldPassword(),
                 request.getNewPassword()
-        );
-        return Result.success();
+        ).thenApply(ignored -> Result.success());
     }
     
     /**
@@ -165,7 +226,7 @@ public class UserController {
      */
     @PostMapping("/me/claim-daily")
     public Result<Void> claimDaily(Authentication authentication) {
-        userService.claimDailyFish(authentication.getName());
+        userService.claimDailyFish(userIdResolver.requireUserId(authentication), authentication.getName());
         return Result.success();
     }
     
@@ -1,30 +1,53 @@
 package com.example.videoapp.controller;
 
-import com.example.videoapp.DTO.UserProfileResponse;
+import com.example.videoapp.DTO.LeaderboardEntryDTO;
+import com.example.videoapp.DTO.UploaderDTO;
+import com.example.videoapp.DTO.VideoBatchDTO;
 import com.example.videoapp.DTO.VideoDetailDTO;
+import com.example.videoapp.cache.ResourceVersionStore;
 import com.example.videoapp.common.Result;
 import com.example.videoapp.entity.Video;
+import com.example.videoapp.service.FishLeaderboardService;
 import com.example.videoapp.service.FishService;
-import com.example.videoapp.service.UserService;
+import com.example.videoapp.service.UserIdResolver;
 import com.example.videoapp.service.VideoService;
-import com.github.pagehelper.PageInfo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
+import java.util.Set;
+
 @RestController
 @RequestMapping("api/videos")
 public class VideoController {
 
+    /**
+     * 批量接口单次允许查询的最大视频数量
+     */
+    private static final int MAX_BATCH_SIZE = 100;
+
+    /**
+     * 排行榜一次最多返回的名次数
+     */
+    private static final int MAX_LEADERBOARD_SIZE = 50;
+
     @Autowired
     private VideoService videoService;
     
     @Autowired
     private FishService fishService;
+
+    @Autowired
+    private FishLeaderboardService fishLeaderboardService;
     
     @Autowired
-    private UserService userService;
+    private UserIdResolver userIdResolver;
+
+    @Autowired
+    private ResourceVersionStore resourceVersionStore;
 
     /**
      * 上传视频
@@ -43,60 +66,151 @@ public class VideoController {
             @RequestParam String title, 
             @RequestParam String description, 
             Authentication authentication) {
-        return Result.success(videoService.uploadVideo(file, coverFile, title, description, authentication.getName()));
+        return Result.success(videoService.uploadVideo(file, coverFile, title, description, userIdResolver.requireUserId(authentication)));
     }
 
     /**
      * 获取所有视频列表
+     * 携带cursor参数时使用游标分页（第一页传空字符串），返回CursorPage；否则按页码分页，返回PageInfo
      * 
      * @param page 页码
      * @param size 每页大小
      * @param sortBy 排序方式
+     * @param cursor 游标，为null时使用页码分页
+     * @param withTotal 游标分页时是否返回总数
      * @return 分页视频列表
      */
     @GetMapping
-    public Result<PageInfo<Video>> getAllVideos(
+    public Result<?> getAllVideos(
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "10") int size,
-            @RequestParam(defaultValue = "latest") String sortBy) {
+            @RequestParam(defaultValue = "latest") String sortBy,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        if (cursor != null) {
+            return Result.success(videoService.findAllVideosByCursor(cursor, size, sortBy, withTotal));
+        }
         return Result.success(videoService.findAllVideosPaginated(page, size, sortBy));
     }
 
     /**
      * 获取视频详情
+     * 客户端携带的If-None-Match与当前版本一致时直接返回304，不查询数据库，但仍计入播放量
      * 
      * @param videoId 视频ID
      * @param authentication 认证对象
-     * @return 视频详情DTO
+     * @param webRequest 当前请求，用于处理条件请求
+     * @return 视频详情DTO，未修改时返回null
      */
     @GetMapping("/{videoId}")
-    public Result<VideoDetailDTO> getVideoById(@PathVariable Long videoId, Authentication authentication) {
-        String currentUsername = null;
-        if (authentication != null && authentication.isAuthenticated()) {
-            currentUsername = authentication.getName();
+    public Result<VideoDetailDTO> getVideoById(@PathVariable Long videoId, Authentication authentication, WebRequest webRequest) {
+        Long currentUserId = userIdResolver.findUserId(authentication);
+        if (webRequest.checkNotModified(resourceVersionStore.videoEtag(videoId, currentUserId))) {
+            videoService.recordView(videoId);
+            return null;
         }
-        VideoDetailDTO videoDetail = videoService.findVideoDetailById(videoId, currentUsername);
+        VideoDetailDTO videoDetail = videoService.findVideoDetailById(videoId, currentUserId);
         if (videoDetail == null) {
             return Result.error(404, "视频不存在");
         }
         return Result.success(videoDetail);
     }
 
+    /**
+     * 批量获取视频详情，不增加播放量
+     * 
+     * @param ids 视频ID列表，最多100个
+     * @param authentication 认证对象
+     * @return 按请求顺序排列的视频详情，以及不存在的视频ID
+     */
+    @GetMapping("/batch")
+    public Result<VideoBatchDTO> getVideosByIds(@RequestParam List<Long> ids, Authentication authentication) {
+        if (ids.size() > MAX_BATCH_SIZE) {
+            return Result.error(400, "一次最多查询" + MAX_BATCH_SIZE + "个视频");
+        }
+        Long currentUserId = userIdResolver.findUserId(authentication);
+        return Result.success(videoService.findVideoDetailsByIds(ids, currentUserId));
+    }
+
+    /**
+     * 收到鱼币最多的视频
+     * 
+     * @param period 统计周期，day为今天，week为最近7天
+     * @param limit 返回的名次数，最多50
+     * @return 按名次排列的视频
+     */
+    @GetMapping("/leaderboard/videos")
+    public Result<List<LeaderboardEntryDTO<VideoDetailDTO>>> getVideoLeaderboard(
+            @RequestParam(defaultValue = "day") String period,
+            @RequestParam(defaultValue = "10") int limit) {
+        FishLeaderboardService.Period parsed = FishLeaderboardService.Period.parse(period);
+        if (parsed == null) {
+            return Result.error(400, "不支持的统计周期: " + period);
+        }
+        return Result.success(fishLeaderboardService.topVideos(parsed, clampLeaderboardLimit(limit)));
+    }
+
+    /**
+     * 收到鱼币最多的创作者
+     * 
+     * @param period 统计周期，day为今天，week为最近7天
+     * @param limit 返回的名次数，最多50
+     * @return 按名次排列的创作者
+     */
+    @GetMapping("/leaderboard/creators")
+    public Result<List<LeaderboardEntryDTO<UploaderDTO>>> getCreatorLeaderboard(
+            @RequestParam(defaultValue = "day") String period,
+            @RequestParam(defaultValue = "10") int limit) {
+        FishLeaderboardService.Period parsed = FishLeaderboardService.Period.parse(period);
+        if (parsed == null) {
+            return Result.error(400, "不支持的统计周期: " + period);
+        }
+        return Result.success(fishLeaderboardService.topCreators(parsed, clampLeaderboardLimit(limit)));
+    }
+
+    private static int clampLeaderboardLimit(int limit) {
+        return Math.min(Math.max(limit, 1), MAX_LEADERBOARD_SIZE);
+    }
+
+    /**
+     * 批量查询当前用户投喂过哪些视频，用于视频列表页一次性标记已投喂状态
+     * 
+     * @param ids 视频ID列表，最多100个
+     * @param authentication 认证对象
+     * @return 当前用户投喂过的视频ID集合，未登录时为空
+     */
+    @GetMapping("/fed")
+    public Result<Set<Long>> getFedVideoIds(@RequestParam List<Long> ids, Authentication authentication) {
+        if (ids.size() > MAX_BATCH_SIZE) {
+            return Result.error(400, "一次最多查询" + MAX_BATCH_SIZE + "个视频");
+        }
+        Long currentUserId = userIdResolver.findUserId(authentication);
+        return Result.success(videoService.findFedVideoIds(ids, currentUserId));
+    }
+
     /**
      * 搜索视频
+     * 携带cursor参数时使用游标分页（第一页传空字符串），返回CursorPage；否则按页码分页，返回PageInfo
      * 
      * @param keyword 搜索关键词
      * @param page 页码
      * @param size 每页大小
      * @param sortBy 排序方式
+     * @param cursor 游标，为null时使用页码分页
+     * @param withTotal 游标分页时是否返回总数
      * @return 分页视频列表
      */
     @GetMapping("/search")
-    public Result<PageInfo<Video>> searchVideos(
+    public Result<?> searchVideos(
             @RequestParam String keyword,
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "10") int size,
-            @RequestParam(defaultValue = "latest") String sortBy) {
+            @RequestParam(defaultValue = "latest") String sortBy,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        if (cursor != null) {
+            return Result.success(videoService.searchVideosByCursor(keyword, cursor, size, sortBy, withTotal));
+        }
         return Result.success(videoService.searchVideos(keyword, page, size, sortBy));
     }
 
@@ -109,25 +223,26 @@ public class VideoController {
      */
     @DeleteMapping("/{videoId}")
     public Result<Void> deleteVideo(@PathVariable Long videoId, Authentication authentication) {
-        videoService.deleteVideo(videoId, authentication.getName());
+        videoService.deleteVideo(videoId, userIdResolver.requireUserId(authentication));
         return Result.success();
     }
 
     /**
      * 给视频点赞（投喂小鱼）
+     * batch模式下在所在批次提交后才返回，以异步方式等待，不占用请求线程；其他模式同步返回
      * 
      * @param videoId 视频ID
      * @param authentication 认证对象
-     * @return 操作结果
+     * @return 操作结果，batch模式下为结果的Future
      */
     @PostMapping("/{videoId}/feed")
-    public Result<Void> feedFish(@PathVariable Long videoId, Authentication authentication) {
-        String username = authentication.getName();
-        UserProfileResponse userInfo = userService.getUserInfoByUsername(username);
-        if (userInfo == null) {
-            throw new RuntimeException("认证失败，找不到当前用户");
+    public Object feedFish(@PathVariable Long videoId, Authentication authentication) {
+        Long userId = userIdResolver.requireUserId(authentication);
+        if (fishService.isBatchMode()) {
+            return fishService.feedFishToVideoInBatch(userId, authentication.getName(), videoId)
+                    .thenApply(v -> Result.success());
         }
-        fishService.feedFishToVideo(userInfo.getId(), videoId);
+        fishService.feedFishToVideo(userId, authentication.getName(), videoId);
         return Result.success();
     }
 
@@ -148,8 +263,8 @@ public class VideoController {
             @RequestParam(required = false) String description,
             @RequestParam(required = false) MultipartFile cover,
             Authentication authentication) {
-        String username = authentication.getName();
-        Video updatedVideo = videoService.updateVideo(videoId, title, description, cover, username);
+        Long userId = userIdResolver.requireUserId(authentication);
+        Video updatedVideo = videoService.updateVideo(videoId, title, description, cover, userId);
         return Result.success(updatedVideo);
     }
 }
\ No newline at end of file
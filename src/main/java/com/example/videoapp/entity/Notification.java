@@ -3,6 +3,7 @@ package com.example.videoapp.entity;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * 通知实体类
@@ -49,4 +50,19 @@ public class Notification {
      * 通知创建时间
      */
     private LocalDateTime createdAt;
+
+    /**
+     * 合并进这条通知的事件数，同一视频同一类型的通知在合并窗口内合并为一条
+     */
+    private Integer actorCount;
+
+    /**
+     * 最近几位触发者的昵称，最新的在前
+     */
+    private List<String> actorNames;
+
+    /**
+     * 最近一次合并新事件的时间
+     */
+    private LocalDateTime updatedAt;
 }
\ No newline at end of file
@@ -12,6 +12,21 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 @RestControllerAdvice
 public class GlobalExceptionHandler {
     
+    /**
+     * 处理服务繁忙异常，返回429，客户端应稍后重试
+     * 
+     * @param ex 捕获到的服务繁忙异常
+     * @return 包含错误信息的响应实体
+     */
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<ErrorResponse> handleTooManyRequestsException(TooManyRequestsException ex) {
+        ErrorResponse error = new ErrorResponse();
+        error.setStatus(429);
+        error.setMessage(ex.getMessage());
+        error.setTimestamp(System.currentTimeMillis());
+        return new ResponseEntity<>(error, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
     /**
      * 处理所有运行时异常
      * 
@@ -0,0 +1,11 @@
+package com.example.videoapp.exception;
+
+/**
+ * 服务繁忙异常，由全局异常处理器转换为429响应
+ */
+public class TooManyRequestsException extends RuntimeException {
+
+    public TooManyRequestsException(String message) {
+        super(message);
+    }
+}
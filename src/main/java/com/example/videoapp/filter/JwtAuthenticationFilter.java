@@ -1,7 +1,9 @@
 package com.example.videoapp.filter;
 
 import com.example.videoapp.JwtUtil;
+import com.example.videoapp.common.AuthUser;
 import com.example.videoapp.service.CustomUserDetailsService;
+import com.example.videoapp.service.TokenRevocationService;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.security.SecurityException;
 import jakarta.servlet.FilterChain;
@@ -11,7 +13,6 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -35,6 +36,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private CustomUserDetailsService userDetailsService;
 
+    /**
+     * 令牌吊销服务
+     */
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
     /**
      * 执行过滤器内部逻辑
      * 
@@ -51,7 +58,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         // 从请求头获取Authorization信息
         final String authHeader = request.getHeader("Authorization");
 
-        String username = null;
+        JwtUtil.TokenIdentity identity = null;
         String jwt = null;
 
         // 检查请求头是否包含有效的Bearer令牌
@@ -59,8 +66,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             // 提取JWT令牌（去掉"Bearer "前缀）
             jwt = authHeader.substring(7);
             try {
-                // 从令牌中获取用户名
-                username = jwtUtil.getUsernameFromToken(jwt);
+                // 从令牌中获取用户名和用户ID
+                identity = jwtUtil.parseToken(jwt);
             } catch (IllegalArgumentException e) {
                 logger.warn("无法获取JWT令牌");
             } catch (ExpiredJwtException e) {
@@ -71,13 +78,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         // 当成功获取用户名，且SecurityContext中当前没有认证信息时
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            // 从用户服务加载用户详情
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
+        if (identity != null && identity.username() != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            // 令牌带有用户ID时直接构建主体，旧令牌从主体缓存加载，缓存未命中时才查询数据库
+            AuthUser authUser = this.userDetailsService.loadPrincipal(identity.username(), identity.userId());
+
+            // 已吊销的令牌按未登录处理，未吊销时只做本地判断，不产生网络调用
+            if (tokenRevocationService.isRevoked(identity, authUser.getId())) {
+                logger.warn("JWT令牌已被吊销");
+                filterChain.doFilter(request, response);
+                return;
+            }
 
             // 创建认证令牌
             UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(
-                    userDetails, null, userDetails.getAuthorities());
+                    authUser, null, authUser.getAuthorities());
 
             // 将认证信息设置到SecurityContext中
             SecurityContextHolder.getContext().setAuthentication(authenticationToken);
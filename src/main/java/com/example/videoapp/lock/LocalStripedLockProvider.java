@@ -0,0 +1,38 @@
+package com.example.videoapp.lock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 进程内分段锁，锁名称按哈希映射到固定数量的ReentrantLock上，获取和释放都没有网络往返
+ * 不同名称可能落在同一段上而互相等待，段数越多冲突越少；只适用于单节点部署
+ */
+public class LocalStripedLockProvider implements LockProvider {
+
+    private final ReentrantLock[] stripes;
+
+    /**
+     * @param stripeCount 分段数量，会向上取整为2的幂
+     */
+    public LocalStripedLockProvider(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(stripeCount, 1) - 1) << 1;
+        stripes = new ReentrantLock[Math.max(size, 1)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public HeldLock tryAcquire(String name, long waitMillis) throws InterruptedException {
+        ReentrantLock lock = stripeOf(name);
+        boolean locked = waitMillis <= 0 ? lock.tryLock() : lock.tryLock(waitMillis, TimeUnit.MILLISECONDS);
+        return locked ? lock::unlock : null;
+    }
+
+    private ReentrantLock stripeOf(String name) {
+        int hash = name.hashCode();
+        // 把高位混入低位，避免相近的ID集中在少数几段上
+        hash ^= hash >>> 16;
+        return stripes[hash & (stripes.length - 1)];
+    }
+}
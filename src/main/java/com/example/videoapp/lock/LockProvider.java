@@ -0,0 +1,28 @@
+package com.example.videoapp.lock;
+
+/**
+ * 互斥锁提供者，单节点部署使用进程内分段锁，集群部署使用Redisson分布式锁
+ */
+public interface LockProvider {
+
+    /**
+     * 在等待时间内尝试获取锁
+     *
+     * @param name 锁名称
+     * @param waitMillis 最长等待时间（毫秒），0表示不等待
+     * @return 获取成功返回锁句柄，超时返回null
+     * @throws InterruptedException 等待期间线程被中断
+     */
+    HeldLock tryAcquire(String name, long waitMillis) throws InterruptedException;
+
+    /**
+     * 已获取的锁，必须由获取它的线程释放
+     */
+    interface HeldLock {
+
+        /**
+         * 释放锁
+         */
+        void release();
+    }
+}
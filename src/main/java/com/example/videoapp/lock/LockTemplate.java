@@ -0,0 +1,92 @@
+package com.example.videoapp.lock;
+
+import com.example.videoapp.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 加锁执行模板，统一处理获取、释放和监控指标
+ * 按锁前缀记录获取耗时（区分成功和超时）、持有时间和发生竞争的次数；
+ * 等待超过预算时立即失败并返回429，锁被卡住时不会占住Tomcat线程
+ */
+@Component
+public class LockTemplate {
+
+    @Autowired
+    private LockProvider lockProvider;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 持有锁执行操作
+     *
+     * @param prefix 锁前缀，同时作为监控指标的标签
+     * @param key 锁的业务Key，与前缀拼接成锁名称
+     * @param waitMillis 等待预算（毫秒）
+     * @param action 要执行的操作
+     * @return 操作结果
+     */
+    public <T> T execute(String prefix, Object key, long waitMillis, Supplier<T> action) {
+        String name = prefix + ":" + key;
+        long start = System.nanoTime();
+        LockProvider.HeldLock lock;
+        try {
+            lock = lockProvider.tryAcquire(name, 0);
+            if (lock == null) {
+                // 锁被占用，记一次竞争后在预算内等待
+                Counter.builder("lock.contention").tag("prefix", prefix)
+                        .description("获取锁时锁已被占用的次数")
+                        .register(meterRegistry).increment();
+                lock = lockProvider.tryAcquire(name, waitMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("获取锁期间被中断", e);
+        }
+
+        recordAcquire(prefix, lock != null, System.nanoTime() - start);
+        if (lock == null) {
+            throw new TooManyRequestsException("操作频繁，请稍后再试！");
+        }
+
+        long acquiredAt = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            lock.release();
+            Timer.builder("lock.hold").tag("prefix", prefix)
+                    .description("持有锁的时间")
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - acquiredAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 持有锁执行没有返回值的操作
+     *
+     * @param prefix 锁前缀，同时作为监控指标的标签
+     * @param key 锁的业务Key，与前缀拼接成锁名称
+     * @param waitMillis 等待预算（毫秒）
+     * @param action 要执行的操作
+     */
+    public void run(String prefix, Object key, long waitMillis, Runnable action) {
+        execute(prefix, key, waitMillis, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private void recordAcquire(String prefix, boolean acquired, long nanos) {
+        Timer.builder("lock.acquire").tag("prefix", prefix).tag("outcome", acquired ? "acquired" : "timeout")
+                .description("获取锁的耗时")
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
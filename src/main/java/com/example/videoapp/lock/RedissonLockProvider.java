@@ -0,0 +1,38 @@
+package com.example.videoapp.lock;
+
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Redisson的分布式锁，集群中所有节点互斥；租期到达后锁自动释放，持锁节点宕机不会永久占用
+ */
+public class RedissonLockProvider implements LockProvider {
+
+    private final RedissonClient redissonClient;
+
+    private final long leaseMillis;
+
+    /**
+     * @param redissonClient Redisson客户端
+     * @param leaseMillis 锁的租期（毫秒）
+     */
+    public RedissonLockProvider(RedissonClient redissonClient, long leaseMillis) {
+        this.redissonClient = redissonClient;
+        this.leaseMillis = leaseMillis;
+    }
+
+    @Override
+    public HeldLock tryAcquire(String name, long waitMillis) throws InterruptedException {
+        RLock lock = redissonClient.getLock(name);
+        if (!lock.tryLock(Math.max(waitMillis, 0), leaseMillis, TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+        return () -> {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        };
+    }
+}
@@ -1,8 +1,10 @@
 package com.example.videoapp.mapper;
 
 import com.example.videoapp.DTO.CommentDetailDTO;
+import com.example.videoapp.common.PageCursor;
 import com.example.videoapp.entity.Comment;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 import java.util.List;
 
@@ -26,6 +28,25 @@ public interface CommentMapper {
      * @return 评论详情DTO列表
      */
     List<CommentDetailDTO> findByVideoId(Long videoId);
+
+    /**
+     * 按游标分页查找指定视频的评论，按发表时间倒序
+     *
+     * @param videoId 视频ID
+     * @param cursor 上一页最后一条评论的游标，为null表示第一页
+     * @param limit 最多返回的条数
+     * @return 评论详情DTO列表
+     */
+    List<CommentDetailDTO> findByVideoIdByCursor(@Param("videoId") Long videoId, @Param("cursor") PageCursor cursor,
+                                                 @Param("limit") int limit);
+
+    /**
+     * 统计指定视频的评论数
+     *
+     * @param videoId 视频ID
+     * @return 评论数
+     */
+    long countByVideoId(Long videoId);
     
     /**
      * 根据ID查找评论
@@ -2,9 +2,46 @@ package com.example.videoapp.mapper;
 
 import com.example.videoapp.entity.FishTransaction;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 @Mapper
 public interface FishTransactionMapper {
     int insert(FishTransaction transaction);
     void deleteByVideoId(Long videoId);
+
+    /**
+     * 查询投喂过指定视频的所有用户ID
+     *
+     * @param videoId 视频ID
+     * @return 用户ID列表
+     */
+    List<Long> findUserIdsByVideoId(Long videoId);
+
+    /**
+     * 在给定的视频中查询指定用户投喂过的视频ID
+     *
+     * @param userId 用户ID
+     * @param videoIds 候选视频ID
+     * @return 用户投喂过的视频ID列表
+     */
+    List<Long> findFedVideoIds(@Param("userId") Long userId, @Param("videoIds") Collection<Long> videoIds);
+
+    /**
+     * 批量插入投喂记录，合并为一条多行INSERT
+     *
+     * @param transactions 投喂记录
+     * @return 受影响的行数
+     */
+    int batchInsert(@Param("transactions") List<FishTransaction> transactions);
+
+    /**
+     * 在给定的投喂记录中查询数据库里已经存在的（用户、视频）组合
+     *
+     * @param transactions 候选投喂记录
+     * @return 已存在的投喂记录，只包含userId、videoId
+     */
+    List<FishTransaction> findExisting(@Param("transactions") Collection<FishTransaction> transactions);
 }
\ No newline at end of file
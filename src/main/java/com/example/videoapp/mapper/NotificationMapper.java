@@ -1,13 +1,37 @@
 package com.example.videoapp.mapper;
 
+import com.example.videoapp.DTO.UnreadCountDTO;
+import com.example.videoapp.common.PageCursor;
 import com.example.videoapp.entity.Notification;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
 public interface NotificationMapper {
     void insert(Notification notification);
+
+    /**
+     * 用一条多行INSERT批量插入通知
+     * @param notifications 通知列表，不能为空
+     */
+    void batchInsert(List<Notification> notifications);
+
+    /**
+     * 锁定合并窗口内仍未读、可以继续合并新事件的聚合通知，必须在事务中调用
+     * @param keys 要查找的(接收者, 类型, 视频)组合，只使用这三个字段
+     * @param since 合并窗口的起点，早于它创建的通知不再合并
+     * @return 按ID升序的聚合通知
+     */
+    List<Notification> lockOpenAggregates(@Param("keys") List<Notification> keys, @Param("since") LocalDateTime since);
+
+    /**
+     * 原地更新聚合通知的触发者、内容、事件数和更新时间
+     * @param notification 聚合通知
+     */
+    void updateAggregate(Notification notification);
     /**
      * 根据接收者ID，按时间倒序查询通知列表
      * @param recipientId 接收者用户ID
@@ -15,6 +39,16 @@ public interface NotificationMapper {
      */
     List<Notification> findByRecipientId(Long recipientId);
 
+    /**
+     * 查询在游标之后新建或更新过的通知，按(updated_at, id)升序，用于推送通道断线续传
+     * @param recipientId 接收者用户ID
+     * @param cursor 客户端最后收到的事件
+     * @param limit 最多返回的条数
+     * @return 通知列表
+     */
+    List<Notification> findUpdatedAfter(@Param("recipientId") Long recipientId, @Param("cursor") PageCursor cursor,
+                                        @Param("limit") int limit);
+
     /**
      * 根据通知ID查询通知
      * @param id 通知ID
@@ -27,5 +61,32 @@ public interface NotificationMapper {
      * @param notification 要更新的通知对象
      */
     void update(Notification notification);
-    void markAllAsReadByRecipientId(Long recipientId); // 新增
+
+    /**
+     * 把未读的通知标记为已读
+     * @param id 通知ID
+     * @return 实际从未读变为已读的行数，已经是已读时返回0
+     */
+    int markAsRead(Long id);
+
+    /**
+     * 把用户的所有未读通知标记为已读
+     * @param recipientId 接收者用户ID
+     * @return 实际从未读变为已读的行数
+     */
+    int markAllAsReadByRecipientId(Long recipientId);
+
+    /**
+     * 统计用户的未读通知数
+     * @param recipientId 接收者用户ID
+     * @return 未读通知数
+     */
+    long countUnreadByRecipientId(Long recipientId);
+
+    /**
+     * 按用户分组统计未读通知数，没有未读通知的用户不会出现在结果中
+     * @param recipientIds 接收者用户ID
+     * @return 每个用户的未读通知数
+     */
+    List<UnreadCountDTO> countUnreadByRecipientIds(@Param("recipientIds") List<Long> recipientIds);
 }
@@ -5,7 +5,9 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 用户数据访问接口
@@ -72,6 +74,54 @@ public interface UserMapper {
     int updateUserFish(@Param("id") Long id,
                        @Param("fishBalance") Integer fishBalance,
                        @Param("lastDailyClaim") LocalDate lastDailyClaim);
+
+    /**
+     * 领取每日鱼币，在余额上相对增加，并且只在当天尚未领取时生效
+     *
+     * @param id 用户ID
+     * @param amount 奖励数量
+     * @param today 当天日期
+     * @return 受影响的行数，0表示当天已经领取过或用户不存在
+     */
+    int claimDailyFish(@Param("id") Long id,
+                       @Param("amount") int amount,
+                       @Param("today") LocalDate today);
+
+    /**
+     * 只在密码哈希仍是调用方校验过的那个时更新密码，避免覆盖并发写入的新密码
+     *
+     * @param id 用户ID
+     * @param password 新的密码哈希
+     * @param expectedPassword 调用方读到并校验过的密码哈希
+     * @return 受影响的行数，0表示密码已被修改或用户不存在
+     */
+    int updatePasswordIfUnchanged(@Param("id") Long id,
+                                  @Param("password") String password,
+                                  @Param("expectedPassword") String expectedPassword);
+
+    /**
+     * 批量扣减多个用户的鱼币余额，合并为一条多行UPDATE
+     *
+     * @param debits 用户ID到扣减数量的映射
+     * @return 受影响的行数
+     */
+    int batchDecrementFishBalance(@Param("debits") Map<Long, Integer> debits);
+
+    /**
+     * 根据ID批量查询用户的鱼币余额，用于鱼币账本对账
+     *
+     * @param ids 用户ID集合
+     * @return 只包含id、fishBalance的用户列表
+     */
+    List<User> findFishBalancesByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 按ID顺序锁定一批用户行并读取鱼币余额（SELECT ... FOR UPDATE），用于批量提交投喂
+     *
+     * @param ids 用户ID集合
+     * @return 只包含id、fishBalance的用户列表
+     */
+    List<User> lockFishBalancesByIds(@Param("ids") Collection<Long> ids);
     
     /**
      * 根据ID查找用户
@@ -80,4 +130,21 @@ public interface UserMapper {
      * @return 用户对象，不存在则返回null
      */
     User findById(Long id);
+
+    /**
+     * 按ID升序分批读取用户的昵称信息，用于构建昵称索引
+     *
+     * @param lastId 上一批最后一个用户ID，第一批传0
+     * @param limit 每批数量
+     * @return 只包含id、username、nickname、avatarUrl的用户列表
+     */
+    List<User> findNicknamesAfterId(@Param("lastId") Long lastId, @Param("limit") int limit);
+
+    /**
+     * 根据ID批量读取用户的昵称信息
+     *
+     * @param ids 用户ID集合
+     * @return 只包含id、username、nickname、avatarUrl的用户列表
+     */
+    List<User> findNicknamesByIds(@Param("ids") Collection<Long> ids);
 }
\ No newline at end of file
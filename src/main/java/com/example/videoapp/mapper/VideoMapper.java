@@ -1,11 +1,14 @@
 package com.example.videoapp.mapper;
 
 import com.example.videoapp.DTO.VideoDetailDTO;
+import com.example.videoapp.common.PageCursor;
 import com.example.videoapp.entity.Video;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 视频数据访问接口
@@ -28,6 +31,23 @@ public interface VideoMapper {
      */
     List<Video> findAll(@Param("sortBy") String sortBy);
     
+    /**
+     * 按游标查询视频列表的下一页，翻页代价与页数无关
+     *
+     * @param sortBy 排序方式（latest、views、popularity）
+     * @param cursor 上一页最后一条数据的游标，第一页为null
+     * @param limit 查询条数
+     * @return 视频列表
+     */
+    List<Video> findAllByCursor(@Param("sortBy") String sortBy, @Param("cursor") PageCursor cursor, @Param("limit") int limit);
+
+    /**
+     * 统计视频总数
+     *
+     * @return 视频总数
+     */
+    long countAll();
+
     /**
      * 根据ID查找视频
      *
@@ -37,12 +57,46 @@ public interface VideoMapper {
     Video findById(Long id);
     
     /**
-     * 根据ID查找视频，并包含上传者信息
+     * 根据ID批量查找视频，结果顺序不保证与传入顺序一致
+     *
+     * @param ids 视频ID集合
+     * @return 视频列表
+     */
+    List<Video> findByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 按ID升序分批读取视频的排行分数（播放量和鱼币数），用于重建排行榜
+     *
+     * @param lastId 上一批最后一个视频ID，第一批传0
+     * @param limit 每批数量
+     * @return 只包含id、viewCount、fishCount的视频列表
+     */
+    List<Video> findRankScoresAfterId(@Param("lastId") Long lastId, @Param("limit") int limit);
+
+    /**
+     * 按ID升序分批读取视频的标题、描述、创建时间和计数，用于构建搜索索引
+     *
+     * @param lastId 上一批最后一个视频ID，第一批传0
+     * @param limit 每批数量
+     * @return 视频列表
+     */
+    List<Video> findSearchFieldsAfterId(@Param("lastId") Long lastId, @Param("limit") int limit);
+
+    /**
+     * 根据ID查找视频，并包含上传者信息（不包含任何与当前用户相关的数据）
      *
      * @param id 视频ID
      * @return 视频详情DTO
      */
     VideoDetailDTO findByIdWithUploader(Long id);
+
+    /**
+     * 根据ID批量查找视频详情，并包含上传者信息，结果顺序不保证与传入顺序一致
+     *
+     * @param ids 视频ID集合，不能为空
+     * @return 视频详情DTO列表
+     */
+    List<VideoDetailDTO> findDetailsByIds(@Param("ids") Collection<Long> ids);
     
     /**
      * 查找指定用户上传的视频
@@ -51,6 +105,24 @@ public interface VideoMapper {
      * @return 视频列表
      */
     List<Video> findByUserId(Long userId);
+
+    /**
+     * 按游标查询指定用户上传的视频，按上传时间倒序
+     *
+     * @param userId 用户ID
+     * @param cursor 上一页最后一条数据的游标，第一页为null
+     * @param limit 查询条数
+     * @return 视频列表
+     */
+    List<Video> findByUserIdByCursor(@Param("userId") Long userId, @Param("cursor") PageCursor cursor, @Param("limit") int limit);
+
+    /**
+     * 统计指定用户上传的视频数
+     *
+     * @param userId 用户ID
+     * @return 视频数
+     */
+    long countByUserId(Long userId);
     
     /**
      * 根据标题搜索视频，并按指定方式排序
@@ -60,6 +132,26 @@ public interface VideoMapper {
      * @return 视频列表
      */
     List<Video> searchByTitle(@Param("keyword") String keyword, @Param("sortBy") String sortBy);
+
+    /**
+     * 按游标查询标题搜索结果的下一页
+     *
+     * @param keyword 搜索关键词
+     * @param sortBy 排序方式（latest、views、popularity）
+     * @param cursor 上一页最后一条数据的游标，第一页为null
+     * @param limit 查询条数
+     * @return 视频列表
+     */
+    List<Video> searchByTitleByCursor(@Param("keyword") String keyword, @Param("sortBy") String sortBy,
+                                      @Param("cursor") PageCursor cursor, @Param("limit") int limit);
+
+    /**
+     * 统计标题包含关键词的视频数
+     *
+     * @param keyword 搜索关键词
+     * @return 视频数
+     */
+    long countByTitle(String keyword);
     
     /**
      * 增加视频播放量
@@ -67,6 +159,14 @@ public interface VideoMapper {
      * @param id 视频ID
      */
     void incrementViewCount(Long id);
+
+    /**
+     * 批量增加多个视频的播放量，合并为一条多行UPDATE
+     *
+     * @param deltas 视频ID到播放增量的映射
+     * @return 受影响的行数
+     */
+    int batchIncrementViewCount(@Param("deltas") Map<Long, Long> deltas);
     
     /**
      * 根据ID删除视频
@@ -77,21 +177,20 @@ public interface VideoMapper {
     int deleteById(Long id);
     
     /**
-     * 根据ID查找视频，包含上传者信息，并检查当前用户是否已点赞
+     * 增加视频获得的鱼币数量
      *
      * @param videoId 视频ID
-     * @param currentUserId 当前用户ID
-     * @return 视频详情DTO
+     * @return 受影响的行数
      */
-    VideoDetailDTO findByIdWithUploader(@Param("videoId") Long videoId, @Param("currentUserId") Long currentUserId);
-    
+    int incrementFishCount(Long videoId);
+
     /**
-     * 增加视频获得的鱼币数量
+     * 批量增加多个视频获得的鱼币数量，合并为一条多行UPDATE
      *
-     * @param videoId 视频ID
+     * @param credits 视频ID到鱼币增量的映射
      * @return 受影响的行数
      */
-    int incrementFishCount(Long videoId);
+    int batchIncrementFishCount(@Param("credits") Map<Long, Integer> credits);
     
     /**
      * 更新视频信息
@@ -0,0 +1,80 @@
+package com.example.videoapp.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 二元分词器，适用于以中文为主的短文本
+ * 文本按非字母数字字符切分成片段，每个片段产出单字和相邻两字组成的词元
+ */
+final class BigramTokenizer {
+
+    private BigramTokenizer() {}
+
+    /**
+     * 对文档文本分词，同时产出单字和二元词元，使单字查询也能命中
+     *
+     * @param text 文本
+     * @return 去重后的词元集合
+     */
+    static Set<String> tokenizeDocument(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (int[] run : runs(text)) {
+            for (int i = 0; i < run.length; i++) {
+                tokens.add(new String(run, i, 1));
+                if (i + 1 < run.length) {
+                    tokens.add(new String(run, i, 2));
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 对查询文本分词，长度不小于2的片段只产出二元词元，单字片段产出单字词元
+     *
+     * @param text 查询文本
+     * @return 去重后的词元集合
+     */
+    static Set<String> tokenizeQuery(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (int[] run : runs(text)) {
+            if (run.length == 1) {
+                tokens.add(new String(run, 0, 1));
+                continue;
+            }
+            for (int i = 0; i + 1 < run.length; i++) {
+                tokens.add(new String(run, i, 2));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 将文本转为小写后按非字母数字字符切分，每个片段以码点数组表示
+     *
+     * @param text 文本
+     * @return 片段列表
+     */
+    private static List<int[]> runs(String text) {
+        List<int[]> runs = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return runs;
+        }
+        int[] codePoints = text.toLowerCase().codePoints().toArray();
+        int start = -1;
+        for (int i = 0; i <= codePoints.length; i++) {
+            boolean wordChar = i < codePoints.length && Character.isLetterOrDigit(codePoints[i]);
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                runs.add(Arrays.copyOfRange(codePoints, start, i));
+                start = -1;
+            }
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.videoapp.search;
+
+import java.util.Arrays;
+
+/**
+ * 倒排索引的文档列表，使用有序的原始int数组保存文档ID，
+ * 避免每个文档ID都装箱成Integer对象带来的内存开销
+ * 非线程安全，由外部的读写锁保护
+ */
+class IntPostingList {
+
+    /**
+     * 有序的文档ID数组，只有前size个元素有效
+     */
+    private int[] ids = new int[4];
+
+    /**
+     * 有效文档数量
+     */
+    private int size;
+
+    /**
+     * 加入文档ID，已存在时忽略
+     *
+     * @param id 文档ID
+     */
+    void add(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+            return;
+        }
+        int insertAt = -index - 1;
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+        ids[insertAt] = id;
+        size++;
+    }
+
+    /**
+     * 移除文档ID，不存在时忽略
+     *
+     * @param id 文档ID
+     */
+    void remove(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index < 0) {
+            return;
+        }
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+    }
+
+    /**
+     * 获取第index个文档ID
+     *
+     * @param index 下标
+     * @return 文档ID
+     */
+    int get(int index) {
+        return ids[index];
+    }
+
+    /**
+     * 获取文档数量
+     *
+     * @return 文档数量
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 是否为空
+     *
+     * @return 没有任何文档时返回true
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.videoapp.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 昵称前缀树，子节点以有序的char数组和节点数组保存，按二分查找定位，
+ * 比每个节点一个HashMap更紧凑；删除昵称时同时剪掉空分支，保证前缀遍历不会走进空子树
+ * 非线程安全，由外部的读写锁保护
+ *
+ * @param <T> 昵称对应的条目类型
+ */
+class NicknameTrie<T> {
+
+    private static final char[] NO_KEYS = new char[0];
+
+    private final Node<T> root = new Node<>();
+
+    /**
+     * 在昵称下加入一个条目
+     *
+     * @param key 规范化后的昵称
+     * @param entry 条目
+     */
+    void put(String key, T entry) {
+        Node<T> node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrCreate(key.charAt(i));
+        }
+        node.entries.add(entry);
+    }
+
+    /**
+     * 从昵称下移除一个条目，分支变空时剪掉
+     *
+     * @param key 规范化后的昵称
+     * @param entry 条目
+     */
+    void remove(String key, T entry) {
+        remove(root, key, 0, entry);
+    }
+
+    /**
+     * 精确查找昵称下的所有条目
+     *
+     * @param key 规范化后的昵称
+     * @return 条目列表，不存在时返回空列表
+     */
+    List<T> get(String key) {
+        Node<T> node = find(key);
+        return node == null ? List.of() : node.entries;
+    }
+
+    /**
+     * 按字典序列出以指定前缀开头的条目
+     *
+     * @param prefix 规范化后的前缀
+     * @param limit 最多返回的条目数
+     * @return 条目列表
+     */
+    List<T> startsWith(String prefix, int limit) {
+        List<T> result = new ArrayList<>(Math.min(limit, 16));
+        Node<T> node = find(prefix);
+        if (node != null) {
+            collect(node, result, limit);
+        }
+        return result;
+    }
+
+    private Node<T> find(String key) {
+        Node<T> node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        return node;
+    }
+
+    private boolean remove(Node<T> node, String key, int depth, T entry) {
+        if (depth == key.length()) {
+            node.entries.remove(entry);
+        } else {
+            Node<T> child = node.child(key.charAt(depth));
+            if (child != null && remove(child, key, depth + 1, entry)) {
+                node.removeChild(key.charAt(depth));
+            }
+        }
+        return node.entries.isEmpty() && node.size == 0;
+    }
+
+    private void collect(Node<T> node, List<T> result, int limit) {
+        for (T entry : node.entries) {
+            if (result.size() >= limit) {
+                return;
+            }
+            result.add(entry);
+        }
+        for (int i = 0; i < node.size && result.size() < limit; i++) {
+            collect(node.children[i], result, limit);
+        }
+    }
+
+    private static final class Node<T> {
+        private char[] keys = NO_KEYS;
+        private Node<T>[] children = newArray(0);
+        private int size;
+        private final List<T> entries = new ArrayList<>(1);
+
+        private Node<T> child(char c) {
+            int index = Arrays.binarySearch(keys, 0, size, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node<T> childOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, 0, size, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -index - 1;
+            if (size == keys.length) {
+                int capacity = Math.max(2, size * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, insertAt, keys, insertAt + 1, size - insertAt);
+            System.arraycopy(children, insertAt, children, insertAt + 1, size - insertAt);
+            Node<T> child = new Node<>();
+            keys[insertAt] = c;
+            children[insertAt] = child;
+            size++;
+            return child;
+        }
+
+        private void removeChild(char c) {
+            int index = Arrays.binarySearch(keys, 0, size, c);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(children, index + 1, children, index, size - index - 1);
+            size--;
+            children[size] = null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newArray(int length) {
+            return (Node<T>[]) new Node[length];
+        }
+    }
+}
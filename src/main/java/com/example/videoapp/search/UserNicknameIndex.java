@@ -0,0 +1,381 @@
+package com.example.videoapp.search;
+
+import com.example.videoapp.DTO.UploaderDTO;
+import com.example.videoapp.entity.User;
+import com.example.videoapp.mapper.UserMapper;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * 用户昵称的进程内前缀索引，提供昵称联想和按昵称精确查找，不再对users表做LIKE查询
+ * 启动时从数据库批量构建，注册和修改资料后通过Redis发布订阅通知各节点重新加载该用户；
+ * 发布订阅不保证送达，定时再与数据库全量比对一次，补上丢失的事件
+ */
+@Component
+public class UserNicknameIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(UserNicknameIndex.class);
+
+    /**
+     * 索引变更事件频道，消息内容为用户ID
+     */
+    private static final String EVENT_TOPIC = "user:nickname:index";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    /**
+     * 是否启用昵称索引，关闭时按昵称查找走数据库
+     */
+    @Value("${user.nickname-index.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 构建索引时每批从数据库读取的用户数量
+     */
+    @Value("${user.nickname-index.build-chunk-size:1000}")
+    private int buildChunkSize;
+
+    /**
+     * 规范化昵称到用户条目的前缀树
+     */
+    private final NicknameTrie<NicknameEntry> trie = new NicknameTrie<>();
+
+    /**
+     * 用户ID到当前条目的映射，用于昵称修改时找到旧条目
+     */
+    private final Map<Long, NicknameEntry> entriesById = new HashMap<>();
+
+    /**
+     * 保护前缀树和条目映射的读写锁
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 初次构建是否完成
+     */
+    private volatile boolean ready;
+
+    /**
+     * 索引变更事件频道
+     */
+    private RTopic eventTopic;
+
+    /**
+     * 订阅索引变更事件
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        eventTopic = redissonClient.getTopic(EVENT_TOPIC, StringCodec.INSTANCE);
+        eventTopic.addListener(String.class, (channel, message) -> {
+            try {
+                reload(Long.valueOf(message));
+            } catch (Exception e) {
+                log.warn("处理昵称索引事件失败: {}", message, e);
+            }
+        });
+    }
+
+    /**
+     * 应用启动完成后从数据库分批构建索引
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int total = sync();
+        ready = true;
+        log.info("用户昵称索引构建完成，共{}个用户，耗时{}ms", total, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 定时与数据库全量比对，纠正因广播丢失（订阅断线、节点重启期间的事件）造成的偏差
+     */
+    @Scheduled(fixedDelayString = "${user.nickname-index.resync-interval-ms:600000}",
+            initialDelayString = "${user.nickname-index.resync-interval-ms:600000}")
+    public void resync() {
+        if (!isAvailable()) {
+            return;
+        }
+        try {
+            sync();
+        } catch (Exception e) {
+            log.warn("用户昵称索引与数据库比对失败", e);
+        }
+    }
+
+    /**
+     * 分批读取数据库中的用户写入索引，条目未变化时跳过，最后移除数据库中已不存在的用户；
+     * 扫描结束后才注册的用户不在扫描范围内，不会被误删
+     *
+     * @return 数据库中的用户数
+     */
+    private int sync() {
+        Set<Long> seen = new HashSet<>();
+        long lastId = 0;
+        int changed = 0;
+        while (true) {
+            List<User> chunk = userMapper.findNicknamesAfterId(lastId, buildChunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            lock.writeLock().lock();
+            try {
+                for (User user : chunk) {
+                    if (!matchesLocked(user)) {
+                        putLocked(user);
+                        changed++;
+                    }
+                    seen.add(user.getId());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            lastId = chunk.get(chunk.size() - 1).getId();
+            if (chunk.size() < buildChunkSize) {
+                break;
+            }
+        }
+
+        int removed = 0;
+        lock.writeLock().lock();
+        try {
+            for (Long userId : new ArrayList<>(entriesById.keySet())) {
+                if (userId <= lastId && !seen.contains(userId)) {
+                    removeLocked(userId);
+                    removed++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (ready && (changed > 0 || removed > 0)) {
+            log.info("用户昵称索引比对完成，更新{}个用户，移除{}个用户", changed, removed);
+        }
+        return seen.size();
+    }
+
+    /**
+     * 索引是否可用
+     *
+     * @return 已启用且初次构建完成时返回true
+     */
+    public boolean isAvailable() {
+        return enabled && ready;
+    }
+
+    /**
+     * 昵称前缀联想
+     *
+     * @param prefix 昵称前缀
+     * @param limit 最多返回的用户数
+     * @return 昵称以该前缀开头的用户，按昵称字典序排列
+     */
+    public List<UploaderDTO> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return List.of();
+        }
+        List<NicknameEntry> entries;
+        lock.readLock().lock();
+        try {
+            entries = trie.startsWith(key, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return entries.stream().map(NicknameEntry::toUploader).collect(Collectors.toList());
+    }
+
+    /**
+     * 按昵称精确查找用户名，大小写不敏感，与数据库的默认排序规则一致
+     *
+     * @param nickname 昵称
+     * @return 用户名，不存在时返回null
+     */
+    public String findUsernameByNickname(String nickname) {
+        lock.readLock().lock();
+        try {
+            List<NicknameEntry> entries = trie.get(normalize(nickname));
+            if (entries.isEmpty()) {
+                return null;
+            }
+            // 多个用户的昵称只有大小写不同时，优先返回完全一致的那个
+            for (NicknameEntry entry : entries) {
+                if (entry.nickname().equals(nickname)) {
+                    return entry.username();
+                }
+            }
+            return entries.get(0).username();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按用户ID查找昵称
+     *
+     * @param userId 用户ID
+     * @return 昵称，索引不可用或用户不在索引中时返回null
+     */
+    public String findNicknameById(Long userId) {
+        if (!isAvailable()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            NicknameEntry entry = entriesById.get(userId);
+            return entry == null ? null : entry.nickname();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按用户ID批量查找用户的展示信息
+     *
+     * @param userIds 用户ID
+     * @return 用户ID到展示信息的映射，索引不可用时为空，不在索引中的用户不包含在内
+     */
+    public Map<Long, UploaderDTO> findUploaders(Collection<Long> userIds) {
+        Map<Long, UploaderDTO> uploaders = new HashMap<>();
+        if (!isAvailable()) {
+            return uploaders;
+        }
+        lock.readLock().lock();
+        try {
+            for (Long userId : userIds) {
+                NicknameEntry entry = entriesById.get(userId);
+                if (entry != null) {
+                    uploaders.put(userId, entry.toUploader());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return uploaders;
+    }
+
+    /**
+     * 广播用户资料变更事件，各节点重新读取该用户并更新索引
+     *
+     * @param userId 用户ID
+     */
+    public void publishUpdate(Long userId) {
+        if (enabled && userId != null) {
+            eventTopic.publish(String.valueOf(userId));
+        }
+    }
+
+    /**
+     * 从数据库重新读取用户并替换索引中的条目
+     *
+     * @param userId 用户ID
+     */
+    private void reload(Long userId) {
+        User user = userMapper.findById(userId);
+        lock.writeLock().lock();
+        try {
+            if (user == null) {
+                removeLocked(userId);
+            } else {
+                putLocked(user);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 写入或替换用户条目，调用方必须持有写锁
+     *
+     * @param user 用户
+     */
+    private void putLocked(User user) {
+        removeLocked(user.getId());
+        if (user.getNickname() == null || user.getNickname().isEmpty()) {
+            return;
+        }
+        NicknameEntry entry = new NicknameEntry(user.getId(), user.getUsername(), user.getNickname(), user.getAvatarUrl());
+        trie.put(normalize(entry.nickname()), entry);
+        entriesById.put(entry.id(), entry);
+    }
+
+    /**
+     * 索引中的条目是否与数据库中的用户一致，调用方必须持有读锁或写锁
+     *
+     * @param user 用户
+     * @return 一致时返回true
+     */
+    private boolean matchesLocked(User user) {
+        NicknameEntry entry = entriesById.get(user.getId());
+        if (entry == null) {
+            return user.getNickname() == null || user.getNickname().isEmpty();
+        }
+        return Objects.equals(entry.username(), user.getUsername())
+                && Objects.equals(entry.nickname(), user.getNickname())
+                && Objects.equals(entry.avatarUrl(), user.getAvatarUrl());
+    }
+
+    /**
+     * 移除用户条目，调用方必须持有写锁
+     *
+     * @param userId 用户ID
+     */
+    private void removeLocked(Long userId) {
+        NicknameEntry old = entriesById.remove(userId);
+        if (old != null) {
+            trie.remove(normalize(old.nickname()), old);
+        }
+    }
+
+    private static String normalize(String nickname) {
+        return nickname == null ? "" : nickname.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 索引中的用户条目
+     */
+    private record NicknameEntry(Long id, String username, String nickname, String avatarUrl) {
+
+        private UploaderDTO toUploader() {
+            UploaderDTO dto = new UploaderDTO();
+            dto.setId(id);
+            dto.setUsername(username);
+            dto.setNickname(nickname);
+            dto.setAvatarUrl(avatarUrl);
+            return dto;
+        }
+    }
+}
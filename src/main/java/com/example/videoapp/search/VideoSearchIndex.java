@@ -0,0 +1,505 @@
+package com.example.videoapp.search;
+
+import com.example.videoapp.entity.Video;
+import com.example.videoapp.mapper.VideoMapper;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * 视频标题和描述的进程内倒排索引，替代无法走索引的 LIKE '%关键词%' 全表扫描
+ * 启动时从数据库批量构建，之后通过Redis发布订阅接收上传、修改、删除和计数变化事件增量更新，
+ * 所有节点各自维护一份索引；发布订阅不保证送达，定时再与数据库全量比对一次，补上丢失的事件
+ */
+@Component
+public class VideoSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(VideoSearchIndex.class);
+
+    /**
+     * 索引变更事件频道，消息格式：U:视频ID、D:视频ID、V:视频ID=增量,...、F:视频ID=增量
+     */
+    private static final String EVENT_TOPIC = "video:search:index";
+
+    /**
+     * 标题命中的权重，高于描述命中
+     */
+    private static final int TITLE_WEIGHT = 2;
+
+    /**
+     * 描述命中的权重
+     */
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    /**
+     * 命中结果的排序：命中词元数、加权得分、排序字段、视频ID依次倒序
+     */
+    private static final Comparator<Hit> HIT_ORDER = Comparator.comparingInt(Hit::matchedTerms)
+            .thenComparingInt(Hit::weightedScore)
+            .thenComparingLong(Hit::sortKey)
+            .thenComparingInt(Hit::videoId)
+            .reversed();
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private VideoMapper videoMapper;
+
+    /**
+     * 是否启用索引搜索，关闭时搜索走数据库
+     */
+    @Value("${video.search.index-enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 构建索引时每批从数据库读取的视频数量
+     */
+    @Value("${video.search.build-chunk-size:1000}")
+    private int buildChunkSize;
+
+    /**
+     * 标题词元到文档列表的倒排表
+     */
+    private final Map<String, IntPostingList> titleIndex = new HashMap<>();
+
+    /**
+     * 描述词元到文档列表的倒排表
+     */
+    private final Map<String, IntPostingList> descriptionIndex = new HashMap<>();
+
+    /**
+     * 已索引的文档，保存排序所需的字段
+     */
+    private final Map<Integer, IndexedVideo> documents = new HashMap<>();
+
+    /**
+     * 保护倒排表和文档表的读写锁
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 初次构建是否完成
+     */
+    private volatile boolean ready;
+
+    /**
+     * 索引变更事件频道
+     */
+    private RTopic eventTopic;
+
+    /**
+     * 订阅索引变更事件
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        eventTopic = redissonClient.getTopic(EVENT_TOPIC, StringCodec.INSTANCE);
+        eventTopic.addListener(String.class, (channel, message) -> {
+            try {
+                handleEvent(message);
+            } catch (Exception e) {
+                log.warn("处理搜索索引事件失败: {}", message, e);
+            }
+        });
+    }
+
+    /**
+     * 应用启动完成后从数据库分批构建索引
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int total = sync();
+        ready = true;
+        log.info("视频搜索索引构建完成，共{}个视频，{}个标题词元，耗时{}ms",
+                total, titleIndex.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 定时与数据库全量比对，纠正因广播丢失（订阅断线、节点重启期间的事件）造成的偏差
+     */
+    @Scheduled(fixedDelayString = "${video.search.resync-interval-ms:600000}",
+            initialDelayString = "${video.search.resync-interval-ms:600000}")
+    public void resync() {
+        if (!isAvailable()) {
+            return;
+        }
+        try {
+            sync();
+        } catch (Exception e) {
+            log.warn("视频搜索索引与数据库比对失败", e);
+        }
+    }
+
+    /**
+     * 分批读取数据库中的视频写入索引，标题和描述未变化的文档只刷新排序字段，
+     * 最后移除数据库中已不存在的文档；扫描结束后才上传的视频不在扫描范围内，不会被误删
+     *
+     * @return 数据库中的视频数
+     */
+    private int sync() {
+        Set<Integer> seen = new HashSet<>();
+        long lastId = 0;
+        int changed = 0;
+        while (true) {
+            List<Video> chunk = videoMapper.findSearchFieldsAfterId(lastId, buildChunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            lock.writeLock().lock();
+            try {
+                for (Video video : chunk) {
+                    if (syncLocked(video)) {
+                        changed++;
+                    }
+                    seen.add(Math.toIntExact(video.getId()));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            lastId = chunk.get(chunk.size() - 1).getId();
+            if (chunk.size() < buildChunkSize) {
+                break;
+            }
+        }
+
+        int removed = 0;
+        lock.writeLock().lock();
+        try {
+            for (Integer id : new ArrayList<>(documents.keySet())) {
+                if (id <= lastId && !seen.contains(id)) {
+                    removeLocked(id);
+                    removed++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (ready && (changed > 0 || removed > 0)) {
+            log.info("视频搜索索引比对完成，更新{}个文档，移除{}个文档", changed, removed);
+        }
+        return seen.size();
+    }
+
+    /**
+     * 索引是否可用于搜索
+     *
+     * @return 已启用且初次构建完成时返回true
+     */
+    public boolean isAvailable() {
+        return enabled && ready;
+    }
+
+    /**
+     * 搜索视频，先按命中的词元数排序，再按请求的排序方式排序
+     *
+     * @param keyword 搜索关键词
+     * @param sortBy 排序方式（latest、views、popularity）
+     * @param page 页码，从1开始
+     * @param size 每页大小
+     * @return 当前页的视频ID和命中总数
+     */
+    public SearchResult search(String keyword, String sortBy, int page, int size) {
+        List<String> terms = new ArrayList<>(BigramTokenizer.tokenizeQuery(keyword));
+        if (terms.isEmpty()) {
+            return new SearchResult(List.of(), 0);
+        }
+
+        ToLongFunction<IndexedVideo> sortKey = sortKey(sortBy);
+        List<Hit> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            // 每个文档的累计得分：[命中词元数, 加权得分, 最近一次计数的词元序号]
+            Map<Integer, int[]> scores = new HashMap<>();
+            for (int t = 0; t < terms.size(); t++) {
+                accumulate(scores, titleIndex.get(terms.get(t)), t, TITLE_WEIGHT);
+                accumulate(scores, descriptionIndex.get(terms.get(t)), t, DESCRIPTION_WEIGHT);
+            }
+
+            // 至少命中一半的查询词元，避免长查询被只命中一个二元词元的文档淹没
+            int minMatched = (terms.size() + 1) / 2;
+            for (Map.Entry<Integer, int[]> entry : scores.entrySet()) {
+                int[] score = entry.getValue();
+                if (score[0] >= minMatched) {
+                    // 排序字段在读锁内复制到命中结果中，释放读锁后并发更新计数不会影响排序的一致性
+                    IndexedVideo video = documents.get(entry.getKey());
+                    hits.add(new Hit(video.id(), score[0], score[1], sortKey.applyAsLong(video)));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        hits.sort(HIT_ORDER);
+        int from = Math.min(Math.max(page - 1, 0) * size, hits.size());
+        int to = Math.min(from + size, hits.size());
+        List<Long> ids = hits.subList(from, to).stream()
+                .map(hit -> (long) hit.videoId())
+                .collect(Collectors.toList());
+        return new SearchResult(ids, hits.size());
+    }
+
+    /**
+     * 广播视频新增或修改事件，各节点重新读取该视频并更新索引
+     *
+     * @param videoId 视频ID
+     */
+    public void publishUpsert(Long videoId) {
+        publish("U:" + videoId);
+    }
+
+    /**
+     * 广播视频删除事件
+     *
+     * @param videoId 视频ID
+     */
+    public void publishDelete(Long videoId) {
+        publish("D:" + videoId);
+    }
+
+    /**
+     * 广播播放量增量，用于按播放量排序
+     *
+     * @param deltas 视频ID到播放增量的映射
+     */
+    public void publishViews(Map<Long, Long> deltas) {
+        if (!deltas.isEmpty()) {
+            publish("V:" + encodeDeltas(deltas));
+        }
+    }
+
+    /**
+     * 广播鱼币增量，用于按鱼币数排序
+     *
+     * @param videoId 视频ID
+     * @param delta 鱼币增量
+     */
+    public void publishFish(Long videoId, long delta) {
+        publish("F:" + videoId + "=" + delta);
+    }
+
+    private void publish(String message) {
+        if (enabled) {
+            eventTopic.publish(message);
+        }
+    }
+
+    /**
+     * 处理索引变更事件
+     *
+     * @param message 事件消息
+     */
+    private void handleEvent(String message) {
+        String payload = message.substring(2);
+        switch (message.charAt(0)) {
+            case 'U' -> {
+                Video video = videoMapper.findById(Long.valueOf(payload));
+                if (video != null) {
+                    lock.writeLock().lock();
+                    try {
+                        indexLocked(video);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+            }
+            case 'D' -> {
+                lock.writeLock().lock();
+                try {
+                    removeLocked(Math.toIntExact(Long.parseLong(payload)));
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            case 'V', 'F' -> {
+                boolean views = message.charAt(0) == 'V';
+                lock.writeLock().lock();
+                try {
+                    for (String pair : payload.split(",")) {
+                        String[] parts = pair.split("=");
+                        IndexedVideo doc = documents.get(Integer.valueOf(parts[0]));
+                        if (doc != null) {
+                            long delta = Long.parseLong(parts[1]);
+                            if (views) {
+                                doc.viewCount += delta;
+                            } else {
+                                doc.fishCount += delta;
+                            }
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            default -> log.warn("未知的搜索索引事件: {}", message);
+        }
+    }
+
+    /**
+     * 写入或替换一个文档，调用方必须持有写锁
+     *
+     * @param video 视频
+     */
+    private void indexLocked(Video video) {
+        int id = Math.toIntExact(video.getId());
+        removeLocked(id);
+
+        IndexedVideo doc = new IndexedVideo(id);
+        doc.titleTerms = BigramTokenizer.tokenizeDocument(video.getTitle());
+        doc.descriptionTerms = BigramTokenizer.tokenizeDocument(video.getDescription());
+        doc.createdAt = video.getCreatedAt() == null ? 0 : video.getCreatedAt().toEpochSecond(ZoneOffset.UTC);
+        doc.viewCount = video.getViewCount() == null ? 0 : video.getViewCount();
+        doc.fishCount = video.getFishCount() == null ? 0 : video.getFishCount();
+
+        for (String term : doc.titleTerms) {
+            titleIndex.computeIfAbsent(term, k -> new IntPostingList()).add(id);
+        }
+        for (String term : doc.descriptionTerms) {
+            descriptionIndex.computeIfAbsent(term, k -> new IntPostingList()).add(id);
+        }
+        documents.put(id, doc);
+    }
+
+    /**
+     * 按数据库中的视频更新文档，调用方必须持有写锁
+     *
+     * @param video 视频
+     * @return 文档新增或标题、描述有变化时返回true
+     */
+    private boolean syncLocked(Video video) {
+        IndexedVideo doc = documents.get(Math.toIntExact(video.getId()));
+        if (doc == null
+                || !doc.titleTerms.equals(BigramTokenizer.tokenizeDocument(video.getTitle()))
+                || !doc.descriptionTerms.equals(BigramTokenizer.tokenizeDocument(video.getDescription()))) {
+            indexLocked(video);
+            return true;
+        }
+        doc.viewCount = video.getViewCount() == null ? 0 : video.getViewCount();
+        doc.fishCount = video.getFishCount() == null ? 0 : video.getFishCount();
+        return false;
+    }
+
+    /**
+     * 移除一个文档，调用方必须持有写锁
+     *
+     * @param id 文档ID
+     */
+    private void removeLocked(int id) {
+        IndexedVideo doc = documents.remove(id);
+        if (doc == null) {
+            return;
+        }
+        removePostings(titleIndex, doc.titleTerms, id);
+        removePostings(descriptionIndex, doc.descriptionTerms, id);
+    }
+
+    private static void removePostings(Map<String, IntPostingList> index, Set<String> terms, int id) {
+        for (String term : terms) {
+            IntPostingList postings = index.get(term);
+            if (postings != null) {
+                postings.remove(id);
+                if (postings.isEmpty()) {
+                    index.remove(term);
+                }
+            }
+        }
+    }
+
+    private static void accumulate(Map<Integer, int[]> scores, IntPostingList postings, int termOrdinal, int weight) {
+        if (postings == null) {
+            return;
+        }
+        for (int i = 0; i < postings.size(); i++) {
+            int[] score = scores.computeIfAbsent(postings.get(i), k -> new int[]{0, 0, -1});
+            score[1] += weight;
+            // 同一个词元在标题和描述中都命中时只算一次
+            if (score[2] != termOrdinal) {
+                score[0]++;
+                score[2] = termOrdinal;
+            }
+        }
+    }
+
+    private static ToLongFunction<IndexedVideo> sortKey(String sortBy) {
+        return switch (sortBy == null ? "latest" : sortBy) {
+            case "views" -> video -> video.viewCount;
+            case "popularity" -> video -> video.fishCount;
+            default -> video -> video.createdAt;
+        };
+    }
+
+    private static String encodeDeltas(Map<Long, Long> deltas) {
+        return deltas.entrySet().stream()
+                .map(entry -> entry.getKey() + "=" + entry.getValue())
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * 已索引的视频文档
+     */
+    private static final class IndexedVideo {
+        private final int id;
+        private Set<String> titleTerms;
+        private Set<String> descriptionTerms;
+        private long createdAt;
+        private long viewCount;
+        private long fishCount;
+
+        private IndexedVideo(int id) {
+            this.id = id;
+        }
+
+        private int id() {
+            return id;
+        }
+    }
+
+    /**
+     * 单个命中结果
+     *
+     * @param videoId 视频ID
+     * @param matchedTerms 命中的查询词元数
+     * @param weightedScore 加权得分
+     * @param sortKey 排序方式对应的字段值，在读锁内复制
+     */
+    private record Hit(int videoId, int matchedTerms, int weightedScore, long sortKey) {
+    }
+
+    /**
+     * 搜索结果
+     *
+     * @param videoIds 当前页的视频ID，按相关度和排序方式排列
+     * @param total 命中总数
+     */
+    public record SearchResult(List<Long> videoIds, int total) {
+    }
+}
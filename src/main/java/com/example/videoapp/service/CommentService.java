@@ -1,7 +1,15 @@
 package com.example.videoapp.service;
 
 import com.example.videoapp.DTO.CommentDetailDTO;
+import com.example.videoapp.DTO.CommenterDTO;
+import com.example.videoapp.DTO.CursorPage;
 import com.example.videoapp.DTO.NotificationMessageDTO;
+import com.example.videoapp.DTO.UploaderDTO;
+import com.example.videoapp.cache.CommentCountCache;
+import com.example.videoapp.cache.RecentCommentsCache;
+import com.example.videoapp.cache.ResourceVersionStore;
+import com.example.videoapp.cache.SingleFlightLoader;
+import com.example.videoapp.common.PageCursor;
 import com.example.videoapp.config.RabbitMQConfig;
 import com.example.videoapp.entity.Comment;
 import com.example.videoapp.entity.User;
@@ -9,11 +17,13 @@ import com.example.videoapp.entity.Video;
 import com.example.videoapp.mapper.CommentMapper;
 import com.example.videoapp.mapper.UserMapper;
 import com.example.videoapp.mapper.VideoMapper;
+import com.example.videoapp.search.UserNicknameIndex;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -21,6 +31,11 @@ import java.util.List;
  */
 @Service
 public class CommentService {
+
+    /**
+     * 游标分页允许的最大每页大小
+     */
+    private static final int MAX_PAGE_SIZE = 100;
     
     @Autowired
     private CommentMapper commentMapper;
@@ -33,15 +48,103 @@ public class CommentService {
     
     @Autowired
     private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private SingleFlightLoader singleFlightLoader;
+
+    @Autowired
+    private ResourceVersionStore resourceVersionStore;
+
+    @Autowired
+    private CommentCountCache commentCountCache;
+
+    @Autowired
+    private RecentCommentsCache recentCommentsCache;
+
+    @Autowired
+    private UserNicknameIndex userNicknameIndex;
     
     /**
-     * 获取视频的所有评论
+     * 获取视频的所有评论，同一视频的并发请求合并为一次查询
      * 
      * @param videoId 视频ID
      * @return 评论列表
      */
     public List<CommentDetailDTO> getCommentsByVideoId(Long videoId) {
-        return commentMapper.findByVideoId(videoId);
+        return singleFlightLoader.load("comment:list:" + videoId, () -> commentMapper.findByVideoId(videoId));
+    }
+
+    /**
+     * 按游标分页获取视频的评论，按发表时间倒序
+     * 
+     * @param videoId 视频ID
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @param size 每页大小
+     * @param withTotal 是否返回评论总数（总数读取评论数缓存）
+     * @return 游标分页结果
+     */
+    public CursorPage<CommentDetailDTO> getCommentsByVideoIdByCursor(Long videoId, String cursor, int size, boolean withTotal) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        PageCursor pageCursor = PageCursor.decode(cursor, "latest");
+        if (pageCursor == null && pageSize < recentCommentsCache.capacity()) {
+            CursorPage<CommentDetailDTO> page = firstPageFromCache(videoId, pageSize, withTotal);
+            if (page != null) {
+                return page;
+            }
+        }
+        List<CommentDetailDTO> rows = commentMapper.findByVideoIdByCursor(videoId, pageCursor, pageSize + 1);
+        return toCursorPage(rows, pageSize, withTotal ? commentCountCache.get(videoId) : null);
+    }
+
+    /**
+     * 从最新评论缓存中读取第一页
+     * 
+     * @param videoId 视频ID
+     * @param pageSize 每页大小，小于缓存容量
+     * @param withTotal 是否返回评论总数
+     * @return 游标分页结果；缓存中的评论因删除而不足一页、无法确定是否还有下一页时返回null
+     */
+    private CursorPage<CommentDetailDTO> firstPageFromCache(Long videoId, int pageSize, boolean withTotal) {
+        long total = commentCountCache.get(videoId);
+        // 没有评论的视频不会在Redis中留下列表，直接返回空页
+        List<CommentDetailDTO> rows = total == 0 ? new ArrayList<>() : recentCommentsCache.range(videoId, pageSize + 1);
+        if (rows.size() <= pageSize && rows.size() < total) {
+            return null;
+        }
+        return toCursorPage(rows, pageSize, withTotal ? total : null);
+    }
+
+    /**
+     * 把多查询一条的结果转换为游标分页结果
+     * 
+     * @param rows 查询结果，最多比页大小多一条，用来判断是否还有下一页
+     * @param pageSize 每页大小
+     * @param total 总数，可为null
+     * @return 游标分页结果
+     */
+    private CursorPage<CommentDetailDTO> toCursorPage(List<CommentDetailDTO> rows, int pageSize, Long total) {
+        boolean hasMore = rows.size() > pageSize;
+        List<CommentDetailDTO> comments = hasMore ? new ArrayList<>(rows.subList(0, pageSize)) : rows;
+
+        CursorPage<CommentDetailDTO> page = new CursorPage<>();
+        if (hasMore) {
+            CommentDetailDTO last = comments.get(comments.size() - 1);
+            page.setNextCursor(new PageCursor("latest", last.getCreatedAt().toString(), last.getId()).encode());
+        }
+        page.setList(comments);
+        page.setHasMore(hasMore);
+        page.setTotal(total);
+        return page;
+    }
+
+    /**
+     * 获取视频的评论数，读取缓存的计数器，不加载评论
+     * 
+     * @param videoId 视频ID
+     * @return 评论数
+     */
+    public long getCommentCount(Long videoId) {
+        return commentCountCache.get(videoId);
     }
     
     /**
@@ -49,36 +152,40 @@ public class CommentService {
      * 
      * @param videoId 视频ID
      * @param content 评论内容
-     * @param username 评论用户名
+     * @param userId 评论用户ID
      * @return 创建的评论对象
      */
-    public Comment createComment(Long videoId, String content, String username) {
-        // 查找评论用户
-        User user = userMapper.findByUsername(username);
-        if (user == null) {
+    public Comment createComment(Long videoId, String content, Long userId) {
+        // 先确认评论者存在，不写入没有作者的评论
+        CommenterDTO commenter = findCommenter(userId);
+        if (commenter == null) {
             throw new RuntimeException("用户不存在");
         }
-        
+
         // 创建评论
         Comment comment = new Comment();
         comment.setVideoId(videoId);
         comment.setContent(content);
-        comment.setUserId(user.getId());
+        comment.setUserId(userId);
         comment.setCreatedAt(LocalDateTime.now());
         comment.setUpdatedAt(LocalDateTime.now());
         commentMapper.insert(comment);
+        commentCountCache.increment(videoId, 1);
+        // 先更新版本号再追加，保证并发加载最新评论列表时不会用旧数据覆盖这条评论
+        resourceVersionStore.bumpComments(videoId);
+        recentCommentsCache.push(toDetail(comment, commenter));
 
         // 发送评论通知
         Video video = videoMapper.findById(videoId);
         if (video != null) {
             // 不给自己的视频发送通知
-            if (!user.getId().equals(video.getUserId())) {
+            if (!userId.equals(video.getUserId())) {
                 NotificationMessageDTO notificationMessageDTO = new NotificationMessageDTO(
                         "NEW_COMMENT",
-                        user.getId(),
+                        userId,
                         video.getUserId(),
                         videoId,
-                        user.getNickname(),
+                        commenter.getNickname(),
                         video.getTitle());
                 rabbitTemplate.convertAndSend(
                         RabbitMQConfig.NOTIFICATION_EXCHANGE_NAME,
@@ -94,9 +201,9 @@ public class CommentService {
      * 删除评论
      * 
      * @param commentId 评论ID
-     * @param username 操作用户名
+     * @param userId 操作用户ID
      */
-    public void deleteComment(Long commentId, String username) {
+    public void deleteComment(Long commentId, Long userId) {
         // 查找评论
         Comment comment = commentMapper.findById(commentId);
         if (comment == null) {
@@ -104,16 +211,54 @@ public class CommentService {
         }
         
         // 检查权限
-        User user = userMapper.findByUsername(username);
-        if (user == null) {
-            throw new RuntimeException("用户不存在");
-        }
-        
-        if (!comment.getUserId().equals(user.getId())) {
+        if (!comment.getUserId().equals(userId)) {
             throw new RuntimeException("无权删除他人评论");
         }
         
         // 删除评论
-        commentMapper.deleteById(commentId);
+        // 并发重复删除时只有真正删掉了评论的一次扣减评论数
+        if (commentMapper.deleteById(commentId) > 0) {
+            commentCountCache.increment(comment.getVideoId(), -1);
+        }
+        resourceVersionStore.bumpComments(comment.getVideoId());
+        recentCommentsCache.remove(comment.getVideoId(), commentId);
+    }
+
+    /**
+     * 查找评论者信息，优先使用内存中的昵称索引
+     * 
+     * @param userId 用户ID
+     * @return 评论者信息，用户不存在时返回null
+     */
+    private CommenterDTO findCommenter(Long userId) {
+        UploaderDTO uploader = userNicknameIndex.findUploaders(List.of(userId)).get(userId);
+        CommenterDTO commenter = new CommenterDTO();
+        if (uploader != null) {
+            commenter.setId(uploader.getId());
+            commenter.setUsername(uploader.getUsername());
+            commenter.setNickname(uploader.getNickname());
+            commenter.setAvatarUrl(uploader.getAvatarUrl());
+            return commenter;
+        }
+        User user = userMapper.findById(userId);
+        if (user == null) {
+            return null;
+        }
+        commenter.setId(user.getId());
+        commenter.setUsername(user.getUsername());
+        commenter.setNickname(user.getNickname());
+        commenter.setAvatarUrl(user.getAvatarUrl());
+        return commenter;
+    }
+
+    private static CommentDetailDTO toDetail(Comment comment, CommenterDTO commenter) {
+        CommentDetailDTO detail = new CommentDetailDTO();
+        detail.setId(comment.getId());
+        detail.setVideoId(comment.getVideoId());
+        detail.setContent(comment.getContent());
+        detail.setCreatedAt(comment.getCreatedAt());
+        detail.setUpdatedAt(comment.getUpdatedAt());
+        detail.setCommenter(commenter);
+        return detail;
     }
 }
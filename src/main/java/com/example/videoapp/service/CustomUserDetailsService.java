@@ -1,13 +1,19 @@
 package com.example.videoapp.service;
 
+import com.example.videoapp.common.AuthUser;
 import com.example.videoapp.entity.User;
 import com.example.videoapp.mapper.UserMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
 
 @Service
@@ -15,6 +21,31 @@ public class CustomUserDetailsService implements UserDetailsService {
     @Autowired
     private UserMapper userMapper;
 
+    /**
+     * 认证主体缓存最多保存的用户数量
+     */
+    @Value("${jwt.principal-cache-max-size:10000}")
+    private long principalCacheMaxSize;
+
+    /**
+     * 认证主体缓存的有效期（分钟）
+     */
+    @Value("${jwt.principal-cache-ttl-minutes:10}")
+    private long principalCacheTtlMinutes;
+
+    /**
+     * 用户名到认证主体的缓存，主体中不保存密码
+     */
+    private Cache<String, AuthUser> principals;
+
+    @PostConstruct
+    public void init() {
+        principals = Caffeine.newBuilder()
+                .maximumSize(principalCacheMaxSize)
+                .expireAfterWrite(Duration.ofMinutes(principalCacheTtlMinutes))
+                .build();
+    }
+
     public UserDetails loadUserByUsername(String username) {
         User user=userMapper.findByUsername(username);
         if(user == null) {
@@ -22,4 +53,25 @@ public class CustomUserDetailsService implements UserDetailsService {
         }
         return new org.springframework.security.core.userdetails.User(username,user.getPassword(),new ArrayList<>());
     }
+
+    /**
+     * 加载JWT认证使用的主体，令牌已经证明了身份
+     * 令牌中带有用户ID时直接构建主体；旧令牌只有用户名，缓存未命中时查询数据库确认用户存在并取得用户ID
+     *
+     * @param username 用户名
+     * @param userId 令牌中的用户ID，旧令牌为null
+     * @return 不包含密码的认证主体
+     */
+    public AuthUser loadPrincipal(String username, Long userId) {
+        if (userId != null) {
+            return new AuthUser(userId, username);
+        }
+        return principals.get(username, key -> {
+            User user = userMapper.findByUsername(key);
+            if (user == null) {
+                throw new UsernameNotFoundException("User not found: " + key);
+            }
+            return new AuthUser(user.getId(), user.getUsername());
+        });
+    }
 }
@@ -0,0 +1,117 @@
+package com.example.videoapp.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBitSet;
+import org.redisson.api.RFuture;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 每日领取记录，每天一个Redis位图，以用户ID为偏移量
+ * 领取时用SETBIT原子地置位并拿到旧值，同一用户同一天的并发领取只有一个能成功；
+ * 查询是否已领取只需一次GETBIT，统计当天领取人数只需一次BITCOUNT
+ */
+@Component
+public class DailyClaimTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(DailyClaimTracker.class);
+
+    /**
+     * 每日领取位图的Key前缀，后接yyyyMMdd格式的日期
+     */
+    private static final String KEY_PREFIX = "fish:daily:";
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 位图保留天数，过期前可用于统计历史每天的领取人数
+     */
+    @Value("${fish.daily.retention-days:35}")
+    private long retentionDays;
+
+    /**
+     * 注册当天领取人数指标
+     */
+    @PostConstruct
+    public void initMetrics() {
+        Gauge.builder("fish.daily.claimers", this, tracker -> tracker.countClaimers(LocalDate.now()))
+                .description("当天领取每日鱼币的用户数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 标记用户当天已领取
+     *
+     * @param userId 用户ID
+     * @param day 日期
+     * @return 本次标记成功返回true，当天已经领取过返回false
+     */
+    public boolean tryMark(Long userId, LocalDate day) {
+        RBatch batch = redissonClient.createBatch();
+        RFuture<Boolean> previous = batch.getBitSet(key(day)).setAsync(userId, true);
+        batch.getBitSet(key(day)).expireAsync(Duration.ofDays(retentionDays));
+        batch.execute();
+        return !previous.toCompletableFuture().join();
+    }
+
+    /**
+     * 撤销用户当天的领取标记（领取在数据库中失败时调用）
+     *
+     * @param userId 用户ID
+     * @param day 日期
+     */
+    public void unmark(Long userId, LocalDate day) {
+        bitSet(day).clear(userId);
+    }
+
+    /**
+     * 用户当天是否已领取
+     *
+     * @param userId 用户ID
+     * @param day 日期
+     * @return 已领取返回true
+     */
+    public boolean hasClaimed(Long userId, LocalDate day) {
+        return bitSet(day).get(userId);
+    }
+
+    /**
+     * 统计某天的领取人数
+     *
+     * @param day 日期
+     * @return 领取人数，Redis不可用时返回0
+     */
+    public long countClaimers(LocalDate day) {
+        try {
+            return bitSet(day).cardinality();
+        } catch (RuntimeException e) {
+            log.debug("统计{}的领取人数失败", day, e);
+            return 0;
+        }
+    }
+
+    private RBitSet bitSet(LocalDate day) {
+        return redissonClient.getBitSet(key(day));
+    }
+
+    private static String key(LocalDate day) {
+        return KEY_PREFIX + day.format(DAY_FORMAT);
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.DTO.VideoDetailDTO;
+import com.example.videoapp.cache.FishFedCache;
+import com.example.videoapp.cache.ResourceVersionStore;
+import com.example.videoapp.cache.VideoDetailCache;
+import com.example.videoapp.entity.FishTransaction;
+import com.example.videoapp.entity.User;
+import com.example.videoapp.entity.Video;
+import com.example.videoapp.exception.TooManyRequestsException;
+import com.example.videoapp.mapper.FishTransactionMapper;
+import com.example.videoapp.mapper.UserMapper;
+import com.example.videoapp.mapper.VideoMapper;
+import com.example.videoapp.search.VideoSearchIndex;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 投喂组提交器，把并发的投喂请求攒成小批次，在一个事务中一起提交
+ * 每批按用户ID顺序锁定涉及的用户行，逐条判断余额和重复投喂，通过的投喂用一条多行INSERT写入，
+ * 余额扣减按用户合并、鱼币增加按视频合并各一条多行UPDATE；事务提交后才完成调用方的Future，
+ * 持久性与逐条提交相同，但事务数和语句数随批次大小成倍减少
+ */
+@Service
+public class FishFeedBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(FishFeedBatcher.class);
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private VideoMapper videoMapper;
+
+    @Autowired
+    private FishTransactionMapper fishTransactionMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private VideoDetailCache videoDetailCache;
+
+    @Autowired
+    private FishFedCache fishFedCache;
+
+    @Autowired
+    private FishLedgerService fishLedgerService;
+
+    @Autowired
+    private VideoRankingService videoRankingService;
+
+    @Autowired
+    private VideoSearchIndex videoSearchIndex;
+
+    @Autowired
+    private ResourceVersionStore resourceVersionStore;
+
+    /**
+     * 投喂的处理方式，只有batch时才启动提交线程
+     */
+    @Value("${fish.feed.mode:ledger}")
+    private String feedMode;
+
+    /**
+     * 每批最多包含的投喂数
+     */
+    @Value("${fish.batch.max-size:200}")
+    private int maxBatchSize;
+
+    /**
+     * 收到第一条投喂后最多等待多久凑批（毫秒）
+     */
+    @Value("${fish.batch.max-wait-ms:5}")
+    private long maxWaitMs;
+
+    /**
+     * 等待提交的投喂队列长度，超出后直接拒绝
+     */
+    @Value("${fish.batch.queue-capacity:10000}")
+    private int queueCapacity;
+
+    /**
+     * 等待提交的投喂
+     */
+    private BlockingQueue<FeedRequest> queue;
+
+    /**
+     * 提交线程
+     */
+    private Thread committer;
+
+    /**
+     * 是否正在运行
+     */
+    private volatile boolean running;
+
+    /**
+     * 单批提交的投喂数
+     */
+    private DistributionSummary batchSizeSummary;
+
+    @PostConstruct
+    public void init() {
+        if (!"batch".equals(feedMode)) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        batchSizeSummary = DistributionSummary.builder("fish.batch.size")
+                .description("单批提交的投喂数")
+                .register(meterRegistry);
+        Gauge.builder("fish.batch.queue.size", queue, BlockingQueue::size)
+                .description("等待提交的投喂数")
+                .register(meterRegistry);
+
+        running = true;
+        committer = new Thread(this::run, "fish-feed-batcher");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * 停止接收新的投喂，把队列中剩余的投喂提交完再退出
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (committer == null) {
+            return;
+        }
+        running = false;
+        committer.interrupt();
+        committer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * 提交一次投喂，调用方已经确认视频存在
+     *
+     * @param userId 用户ID
+     * @param username 用户名
+     * @param video 视频详情
+     * @return 所在批次提交后完成；余额不足或重复投喂时以RuntimeException异常完成
+     */
+    public CompletableFuture<Void> submit(Long userId, String username, VideoDetailDTO video) {
+        FeedRequest request = new FeedRequest(userId, username, video, new CompletableFuture<>());
+        if (!running || !queue.offer(request)) {
+            throw new TooManyRequestsException("操作频繁，请稍后再试！");
+        }
+        return request.future();
+    }
+
+    private void run() {
+        List<FeedRequest> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                FeedRequest first = running ? queue.take() : queue.poll();
+                if (first == null) {
+                    break;
+                }
+                batch.add(first);
+                // 凑批：在等待时间内尽量取满一批
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    FeedRequest next = remaining > 0 && running
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // 关闭时被中断，继续把队列中剩余的投喂提交完
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中提交一批投喂，并完成对应的Future
+     *
+     * @param batch 投喂请求
+     */
+    private void commit(List<FeedRequest> batch) {
+        Map<FeedRequest, String> rejections = new HashMap<>();
+        List<FeedRequest> accepted;
+        try {
+            accepted = transactionTemplate.execute(status -> write(batch, rejections));
+        } catch (Exception e) {
+            log.error("批量提交{}条投喂失败", batch.size(), e);
+            RuntimeException failure = new RuntimeException("操作失败，请稍后再试！");
+            batch.forEach(request -> request.future().completeExceptionally(failure));
+            return;
+        }
+        batchSizeSummary.record(batch.size());
+
+        try {
+            afterCommit(accepted);
+        } catch (Exception e) {
+            log.warn("投喂提交后更新缓存、排行榜和搜索索引失败", e);
+        }
+        for (FeedRequest request : batch) {
+            String rejection = rejections.get(request);
+            if (rejection == null) {
+                request.future().complete(null);
+            } else {
+                request.future().completeExceptionally(new RuntimeException(rejection));
+            }
+        }
+    }
+
+    /**
+     * 锁定用户行后逐条判断，写入通过的投喂
+     *
+     * @param batch 投喂请求，按到达顺序
+     * @param rejections 收集被拒绝的请求和原因
+     * @return 通过的投喂请求
+     */
+    private List<FeedRequest> write(List<FeedRequest> batch, Map<FeedRequest, String> rejections) {
+        rejections.clear();
+        Set<Long> userIds = batch.stream().map(FeedRequest::userId).collect(Collectors.toSet());
+        Map<Long, Integer> balances = userMapper.lockFishBalancesByIds(userIds).stream()
+                .collect(Collectors.toMap(User::getId, User::getFishBalance));
+
+        List<FishTransaction> candidates = batch.stream().map(FeedRequest::toTransaction).collect(Collectors.toList());
+        Set<String> fed = fishTransactionMapper.findExisting(candidates).stream()
+                .map(t -> t.getUserId() + ":" + t.getVideoId())
+                .collect(Collectors.toCollection(HashSet::new));
+        Set<Long> videoIds = batch.stream().map(r -> r.video().getId()).collect(Collectors.toSet());
+        Set<Long> liveVideoIds = videoMapper.findByIds(videoIds).stream().map(Video::getId).collect(Collectors.toSet());
+
+        List<FeedRequest> accepted = new ArrayList<>(batch.size());
+        for (FeedRequest request : batch) {
+            Integer balance = balances.get(request.userId());
+            if (balance == null) {
+                rejections.put(request, "操作失败，用户不存在！");
+            } else if (!liveVideoIds.contains(request.video().getId())) {
+                rejections.put(request, "视频不存在");
+            } else if (!fed.add(request.userId() + ":" + request.video().getId())) {
+                rejections.put(request, "您已经给这个视频喂过鱼了！");
+            } else if (balance < 1) {
+                rejections.put(request, "小鱼余额不足！");
+            } else {
+                balances.put(request.userId(), balance - 1);
+                accepted.add(request);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return accepted;
+        }
+
+        Map<Long, Integer> debits = new HashMap<>();
+        Map<Long, Integer> credits = new HashMap<>();
+        for (FeedRequest request : accepted) {
+            debits.merge(request.userId(), 1, Integer::sum);
+            credits.merge(request.video().getId(), 1, Integer::sum);
+        }
+        fishTransactionMapper.batchInsert(accepted.stream().map(FeedRequest::toTransaction).collect(Collectors.toList()));
+        userMapper.batchDecrementFishBalance(debits);
+        videoMapper.batchIncrementFishCount(credits);
+        return accepted;
+    }
+
+    /**
+     * 事务提交后同步投喂关系、账本、缓存、排行榜和搜索索引
+     *
+     * @param accepted 已提交的投喂请求
+     */
+    private void afterCommit(List<FeedRequest> accepted) {
+        if (accepted.isEmpty()) {
+            return;
+        }
+        // 在提交线程上执行，逐条请求的Redis操作按视频和用户合并，每类只有一次往返
+        Map<Long, Integer> credits = new HashMap<>();
+        Map<Long, List<Long>> fedUserIds = new HashMap<>();
+        for (FeedRequest request : accepted) {
+            fedUserIds.computeIfAbsent(request.video().getId(), id -> new ArrayList<>()).add(request.userId());
+            credits.merge(request.video().getId(), 1, Integer::sum);
+        }
+        fishFedCache.markFed(fedUserIds);
+        // 提交后拿不到账本锁，移除这些用户的账本余额，下次使用时按数据库重新加载
+        fishLedgerService.removeAll(accepted.stream().map(FeedRequest::userId).collect(Collectors.toSet()));
+        videoDetailCache.invalidate(credits.keySet());
+        resourceVersionStore.bumpVideos(credits.keySet());
+        credits.forEach((videoId, amount) -> {
+            videoRankingService.incrementFish(videoId, amount);
+            videoSearchIndex.publishFish(videoId, amount);
+        });
+        resourceVersionStore.bumpProfiles(accepted.stream().map(FeedRequest::username).collect(Collectors.toSet()));
+    }
+
+    /**
+     * 一次投喂请求
+     */
+    private record FeedRequest(Long userId, String username, VideoDetailDTO video, CompletableFuture<Void> future) {
+
+        private FishTransaction toTransaction() {
+            FishTransaction transaction = new FishTransaction();
+            transaction.setUserId(userId);
+            transaction.setVideoId(video.getId());
+            transaction.setAmount(1);
+            transaction.setCreatedAt(LocalDateTime.now());
+            return transaction;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.cache.ResourceVersionStore;
+import com.example.videoapp.cache.VideoDetailCache;
+import com.example.videoapp.entity.FishTransaction;
+import com.example.videoapp.entity.User;
+import com.example.videoapp.entity.Video;
+import com.example.videoapp.mapper.FishTransactionMapper;
+import com.example.videoapp.mapper.UserMapper;
+import com.example.videoapp.mapper.VideoMapper;
+import com.example.videoapp.search.VideoSearchIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 鱼币流水写入器，定时把Redis账本中的投喂流水批量写入MySQL，并定时对账
+ * 每批流水在一个事务中完成：一条多行INSERT写入投喂记录，按用户合并的余额扣减和按视频合并的鱼币增加
+ * 各一条多行UPDATE；提交后才从Redis中确认移除，写入失败时流水保留，下一轮重试；
+ * 整批因数据错误失败或连续多次失败时改为逐条写入，无法写入的流水移入死信列表，不会卡住后面的流水
+ * 写入和对账都持有同一把分布式锁，集群中同时只有一个节点在写；锁按批持有，
+ * 账本加载余额时也要获取这把锁，不必等待整个列表写完
+ */
+@Service
+public class FishJournalApplier {
+
+    private static final Logger log = LoggerFactory.getLogger(FishJournalApplier.class);
+
+    /**
+     * 写入、对账和账本加载余额共用的分布式锁
+     */
+    static final String LOCK_KEY = "lock:fish:ledger";
+
+    @Autowired
+    private FishLedgerService fishLedgerService;
+
+    @Autowired
+    private FishTransactionMapper fishTransactionMapper;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private VideoMapper videoMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private VideoDetailCache videoDetailCache;
+
+    @Autowired
+    private ResourceVersionStore resourceVersionStore;
+
+    @Autowired
+    private VideoRankingService videoRankingService;
+
+    @Autowired
+    private VideoSearchIndex videoSearchIndex;
+
+    /**
+     * 每批写入的最大流水条数
+     */
+    @Value("${fish.ledger.apply-batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 整批连续失败多少次后改为逐条写入
+     */
+    @Value("${fish.ledger.max-attempts:5}")
+    private int maxAttempts;
+
+    /**
+     * 本节点写入当前列表头部连续失败的次数，只在持有写入锁时访问
+     */
+    private int consecutiveFailures;
+
+    /**
+     * 单批写入的流水条数
+     */
+    private DistributionSummary applySizeSummary;
+
+    /**
+     * 对账发现并修正的余额偏差次数
+     */
+    private Counter driftCounter;
+
+    /**
+     * 注册监控指标
+     */
+    @PostConstruct
+    public void initMetrics() {
+        this.applySizeSummary = DistributionSummary.builder("fish.ledger.apply.size")
+                .description("单批写入数据库的投喂流水条数")
+                .register(meterRegistry);
+        this.driftCounter = Counter.builder("fish.ledger.drift")
+                .description("对账发现的账本余额与数据库不一致的次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 定时把待写入的流水批量写入数据库，直到列表清空
+     */
+    @Scheduled(fixedDelayString = "${fish.ledger.apply-interval-ms:500}")
+    public void apply() {
+        boolean[] more = {true};
+        while (more[0]) {
+            more[0] = false;
+            withLock(() -> {
+                List<String> entries = fishLedgerService.peekJournal(batchSize);
+                more[0] = !entries.isEmpty() && applyBatch(entries) && entries.size() == batchSize;
+            });
+        }
+    }
+
+    /**
+     * 定时对账：数据库余额应当等于账本余额加上尚未写入的扣减数量
+     * 每批用户对账期间持有写入锁，数据库中的余额不会因流水写入而变化；
+     * 不一致时再核对一次以排除正在进行的每日领取，仍不一致才修正账本
+     */
+    @Scheduled(cron = "${fish.ledger.reconcile-cron:0 */10 * * * *}")
+    public void reconcile() {
+        long start = System.currentTimeMillis();
+        int[] checked = {0};
+        int[] repaired = {0};
+        List<Long> chunk = new ArrayList<>(batchSize);
+        for (String userId : fishLedgerService.userIds()) {
+            chunk.add(Long.valueOf(userId));
+            if (chunk.size() == batchSize) {
+                reconcileLocked(chunk, checked, repaired);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            reconcileLocked(chunk, checked, repaired);
+        }
+        log.info("鱼币账本对账完成，检查{}个用户，修正{}个，耗时{}ms",
+                checked[0], repaired[0], System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 持有写入锁对账一批用户，锁被其他节点持有时跳过这一批，留给下一轮
+     */
+    private void reconcileLocked(List<Long> chunk, int[] checked, int[] repaired) {
+        withLock(() -> {
+            checked[0] += chunk.size();
+            repaired[0] += reconcileChunk(chunk);
+        });
+    }
+
+    /**
+     * 写入一批流水并确认
+     *
+     * @param entries 流水条目
+     * @return 写入成功返回true
+     */
+    private boolean applyBatch(List<String> entries) {
+        WriteResult result;
+        try {
+            List<FishTransaction> transactions = entries.stream().map(FishJournalApplier::parse).collect(Collectors.toList());
+            result = transactionTemplate.execute(status -> write(transactions));
+        } catch (Exception e) {
+            consecutiveFailures++;
+            if (isPoison(e) || consecutiveFailures >= maxAttempts) {
+                log.error("写入{}条投喂流水失败，改为逐条写入", entries.size(), e);
+                return applyEach(entries);
+            }
+            log.error("写入{}条投喂流水失败，将在下一轮重试", entries.size(), e);
+            return false;
+        }
+        consecutiveFailures = 0;
+        fishLedgerService.ackJournal(entries);
+        applySizeSummary.record(entries.size());
+        afterWrite(result);
+        return true;
+    }
+
+    /**
+     * 逐条写入并确认，因数据错误无法写入的流水移入死信列表；遇到其他错误时停止，下一轮从这一条重试
+     *
+     * @param entries 流水条目
+     * @return 全部处理完返回true
+     */
+    private boolean applyEach(List<String> entries) {
+        for (String entry : entries) {
+            WriteResult result;
+            try {
+                List<FishTransaction> transactions = List.of(parse(entry));
+                result = transactionTemplate.execute(status -> write(transactions));
+            } catch (Exception e) {
+                if (!isPoison(e)) {
+                    log.error("写入投喂流水{}失败，将在下一轮重试", entry, e);
+                    return false;
+                }
+                // 账本已经扣减但数据库没有，移出后由对账修正余额
+                log.error("投喂流水{}无法写入数据库，已移入死信列表", entry, e);
+                fishLedgerService.deadLetterJournal(entry);
+                continue;
+            }
+            fishLedgerService.ackJournal(List.of(entry));
+            afterWrite(result);
+        }
+        consecutiveFailures = 0;
+        applySizeSummary.record(entries.size());
+        return true;
+    }
+
+    /**
+     * 是否为重试也无法成功的错误：流水格式错误或数据库拒绝这条数据
+     */
+    private static boolean isPoison(Exception e) {
+        return e instanceof IllegalArgumentException || e instanceof NonTransientDataAccessException;
+    }
+
+    /**
+     * 流水写入后退回批次内重复投喂多扣的账本余额，并把视频鱼币数同步到缓存、排行榜和搜索索引
+     *
+     * @param result 写入结果
+     */
+    private void afterWrite(WriteResult result) {
+        // 持有写入锁，不会与账本加载余额交错
+        result.refunds().forEach(fishLedgerService::credit);
+        Map<Long, Integer> credits = result.credits();
+        try {
+            if (!credits.isEmpty()) {
+                videoDetailCache.invalidate(credits.keySet());
+                resourceVersionStore.bumpVideos(credits.keySet());
+                credits.forEach((videoId, amount) -> {
+                    videoRankingService.incrementFish(videoId, amount);
+                    videoSearchIndex.publishFish(videoId, amount);
+                });
+            }
+        } catch (Exception e) {
+            log.warn("投喂流水写入后更新缓存、排行榜和搜索索引失败", e);
+        }
+    }
+
+    /**
+     * 在事务中写入投喂记录并合并更新余额和鱼币数
+     * 上一轮可能已经提交但未来得及确认，数据库中已存在的投喂记录跳过，保证重复写入不会重复扣减；
+     * 同一批中同一用户对同一视频的多条流水（投喂集合过期重新加载时漏掉了未写入的流水）只写入第一条，
+     * 其余的在账本中多扣的余额写入后退回；视频在投喂后被删除的记录也跳过，账本中多扣的余额由对账修正
+     *
+     * @param transactions 投喂记录
+     * @return 视频鱼币增量和需要退回的账本余额
+     */
+    private WriteResult write(List<FishTransaction> transactions) {
+        Set<String> existing = fishTransactionMapper.findExisting(transactions).stream()
+                .map(t -> t.getUserId() + ":" + t.getVideoId())
+                .collect(Collectors.toCollection(HashSet::new));
+        Set<Long> videoIds = transactions.stream().map(FishTransaction::getVideoId).collect(Collectors.toSet());
+        Set<Long> liveVideoIds = videoMapper.findByIds(videoIds).stream().map(Video::getId).collect(Collectors.toSet());
+
+        Set<String> batchKeys = new HashSet<>();
+        List<FishTransaction> fresh = new ArrayList<>(transactions.size());
+        Map<Long, Integer> refunds = new HashMap<>();
+        for (FishTransaction transaction : transactions) {
+            String key = transaction.getUserId() + ":" + transaction.getVideoId();
+            if (!liveVideoIds.contains(transaction.getVideoId()) || existing.contains(key)) {
+                continue;
+            }
+            if (batchKeys.add(key)) {
+                fresh.add(transaction);
+            } else {
+                refunds.merge(transaction.getUserId(), transaction.getAmount(), Integer::sum);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return new WriteResult(Map.of(), refunds);
+        }
+
+        Map<Long, Integer> debits = new HashMap<>();
+        Map<Long, Integer> credits = new HashMap<>();
+        for (FishTransaction transaction : fresh) {
+            debits.merge(transaction.getUserId(), transaction.getAmount(), Integer::sum);
+            credits.merge(transaction.getVideoId(), transaction.getAmount(), Integer::sum);
+        }
+        fishTransactionMapper.batchInsert(fresh);
+        userMapper.batchDecrementFishBalance(debits);
+        videoMapper.batchIncrementFishCount(credits);
+        return new WriteResult(credits, refunds);
+    }
+
+    /**
+     * 对账一批用户
+     *
+     * @param userIds 用户ID
+     * @return 修正的用户数
+     */
+    private int reconcileChunk(List<Long> userIds) {
+        List<Long> mismatched = findMismatched(userIds, fishLedgerService.snapshot(userIds));
+        if (mismatched.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, long[]> recheck = fishLedgerService.snapshot(mismatched);
+        Map<Long, Integer> databaseBalances = loadDatabaseBalances(mismatched);
+        int repaired = 0;
+        for (Long userId : mismatched) {
+            Integer databaseBalance = databaseBalances.get(userId);
+            long[] ledger = recheck.get(userId);
+            if (databaseBalance == null) {
+                fishLedgerService.remove(userId);
+            } else if (ledger != null && ledger[0] + ledger[1] != databaseBalance) {
+                log.warn("用户{}的鱼币账本余额{}加待写入扣减{}与数据库余额{}不一致，已修正",
+                        userId, ledger[0], ledger[1], databaseBalance);
+                fishLedgerService.repair(userId, databaseBalance);
+                driftCounter.increment();
+                repaired++;
+            }
+        }
+        return repaired;
+    }
+
+    private List<Long> findMismatched(List<Long> userIds, Map<Long, long[]> ledger) {
+        Map<Long, Integer> databaseBalances = loadDatabaseBalances(userIds);
+        List<Long> mismatched = new ArrayList<>();
+        ledger.forEach((userId, values) -> {
+            Integer databaseBalance = databaseBalances.get(userId);
+            if (databaseBalance == null || values[0] + values[1] != databaseBalance) {
+                mismatched.add(userId);
+            }
+        });
+        return mismatched;
+    }
+
+    private Map<Long, Integer> loadDatabaseBalances(List<Long> userIds) {
+        return userMapper.findFishBalancesByIds(userIds).stream()
+                .collect(Collectors.toMap(User::getId, User::getFishBalance));
+    }
+
+    /**
+     * 持有写入锁时执行操作，锁被其他节点持有时跳过本轮；不指定租期，由看门狗在执行期间续期
+     */
+    private void withLock(Runnable action) {
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        boolean locked;
+        try {
+            locked = lock.tryLock(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!locked) {
+            return;
+        }
+        try {
+            action.run();
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 解析流水条目：用户ID:视频ID:投喂时间毫秒
+     */
+    private static FishTransaction parse(String entry) {
+        String[] parts = entry.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("无法识别的投喂流水: " + entry);
+        }
+        FishTransaction transaction = new FishTransaction();
+        transaction.setUserId(Long.valueOf(parts[0]));
+        transaction.setVideoId(Long.valueOf(parts[1]));
+        transaction.setAmount(1);
+        transaction.setCreatedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(parts[2])), ZoneId.systemDefault()));
+        return transaction;
+    }
+
+    /**
+     * 一批流水的写入结果
+     *
+     * @param credits 视频ID到鱼币增量的映射
+     * @param refunds 用户ID到需要退回的账本余额的映射
+     */
+    private record WriteResult(Map<Long, Integer> credits, Map<Long, Integer> refunds) {
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.DTO.LeaderboardEntryDTO;
+import com.example.videoapp.DTO.UploaderDTO;
+import com.example.videoapp.DTO.VideoDetailDTO;
+import com.example.videoapp.cache.VideoDetailCache;
+import com.example.videoapp.entity.User;
+import com.example.videoapp.mapper.UserMapper;
+import com.example.videoapp.mapper.VideoMapper;
+import com.example.videoapp.search.UserNicknameIndex;
+import org.redisson.api.RBatch;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RScoredSortedSetAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.protocol.ScoredEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 鱼币排行榜服务，按天维护视频和创作者收到鱼币数的Redis有序集合，投喂时增量更新
+ * 周榜由最近7天的日榜ZUNIONSTORE合并而成，合并结果短暂缓存；
+ * 读取前K名只需一次ZREVRANGE，上榜视频和创作者的信息从缓存和昵称索引中批量读取
+ */
+@Service
+public class FishLeaderboardService {
+
+    private static final Logger log = LoggerFactory.getLogger(FishLeaderboardService.class);
+
+    /**
+     * 视频日榜的Key前缀，后接yyyyMMdd格式的日期
+     */
+    private static final String VIDEO_KEY_PREFIX = "fish:board:video:";
+
+    /**
+     * 创作者日榜的Key前缀，后接yyyyMMdd格式的日期
+     */
+    private static final String CREATOR_KEY_PREFIX = "fish:board:creator:";
+
+    /**
+     * 周榜Key的中缀，后接周榜最后一天的日期
+     */
+    private static final String WEEK_INFIX = "week:";
+
+    /**
+     * 周榜包含的天数
+     */
+    private static final int WEEK_DAYS = 7;
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private VideoDetailCache videoDetailCache;
+
+    @Autowired
+    private VideoMapper videoMapper;
+
+    @Autowired
+    private UserNicknameIndex userNicknameIndex;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    /**
+     * 日榜保留天数，需要覆盖周榜的7天
+     */
+    @Value("${fish.leaderboard.retention-days:8}")
+    private long retentionDays;
+
+    /**
+     * 合并后的周榜缓存时间（秒），过期后下次读取时重新合并
+     */
+    @Value("${fish.leaderboard.week-cache-seconds:60}")
+    private long weekCacheSeconds;
+
+    /**
+     * 统计周期
+     */
+    public enum Period {
+        /**
+         * 今天
+         */
+        DAY,
+        /**
+         * 最近7天
+         */
+        WEEK;
+
+        /**
+         * 解析统计周期参数
+         *
+         * @param value day或week，不区分大小写
+         * @return 统计周期，无法识别时返回null
+         */
+        public static Period parse(String value) {
+            if ("week".equalsIgnoreCase(value)) {
+                return WEEK;
+            }
+            if ("day".equalsIgnoreCase(value)) {
+                return DAY;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 记录一次投喂，视频和创作者的当天分数在一次往返中累加
+     * 排行榜只用于展示，更新失败不影响投喂本身
+     *
+     * @param videoId 视频ID
+     * @param creatorId 视频作者ID
+     * @param amount 鱼币数
+     */
+    public void recordFeed(Long videoId, Long creatorId, long amount) {
+        try {
+            LocalDate today = LocalDate.now();
+            Duration ttl = Duration.ofDays(retentionDays);
+            RBatch batch = redissonClient.createBatch();
+            RScoredSortedSetAsync<Long> videos = batch.getScoredSortedSet(dayKey(VIDEO_KEY_PREFIX, today), LongCodec.INSTANCE);
+            videos.addScoreAsync(videoId, amount);
+            videos.expireAsync(ttl);
+            if (creatorId != null) {
+                RScoredSortedSetAsync<Long> creators = batch.getScoredSortedSet(dayKey(CREATOR_KEY_PREFIX, today), LongCodec.INSTANCE);
+                creators.addScoreAsync(creatorId, amount);
+                creators.expireAsync(ttl);
+            }
+            batch.execute();
+        } catch (RuntimeException e) {
+            log.warn("更新鱼币排行榜失败，视频{}", videoId, e);
+        }
+    }
+
+    /**
+     * 收到鱼币最多的视频
+     *
+     * @param period 统计周期
+     * @param limit 返回的名次数
+     * @return 按名次排列的视频，已被删除的视频会被跳过
+     */
+    public List<LeaderboardEntryDTO<VideoDetailDTO>> topVideos(Period period, int limit) {
+        Collection<ScoredEntry<Long>> entries = top(VIDEO_KEY_PREFIX, period, limit);
+        List<Long> videoIds = entries.stream().map(ScoredEntry::getValue).collect(Collectors.toList());
+        Map<Long, VideoDetailDTO> videos = videoDetailCache.getAll(videoIds, ids ->
+                videoMapper.findDetailsByIds(ids).stream()
+                        .collect(Collectors.toMap(VideoDetailDTO::getId, Function.identity())));
+        return toEntries(entries, videos);
+    }
+
+    /**
+     * 收到鱼币最多的创作者
+     *
+     * @param period 统计周期
+     * @param limit 返回的名次数
+     * @return 按名次排列的创作者
+     */
+    public List<LeaderboardEntryDTO<UploaderDTO>> topCreators(Period period, int limit) {
+        Collection<ScoredEntry<Long>> entries = top(CREATOR_KEY_PREFIX, period, limit);
+        List<Long> userIds = entries.stream().map(ScoredEntry::getValue).collect(Collectors.toList());
+        Map<Long, UploaderDTO> creators = userNicknameIndex.findUploaders(userIds);
+        List<Long> misses = userIds.stream().filter(id -> !creators.containsKey(id)).collect(Collectors.toList());
+        if (!misses.isEmpty()) {
+            // 昵称索引未就绪时才会查询数据库
+            for (User user : userMapper.findNicknamesByIds(misses)) {
+                UploaderDTO uploader = new UploaderDTO();
+                uploader.setId(user.getId());
+                uploader.setUsername(user.getUsername());
+                uploader.setNickname(user.getNickname());
+                uploader.setAvatarUrl(user.getAvatarUrl());
+                creators.put(user.getId(), uploader);
+            }
+        }
+        return toEntries(entries, creators);
+    }
+
+    /**
+     * 读取榜单前K名
+     */
+    private Collection<ScoredEntry<Long>> top(String prefix, Period period, int limit) {
+        LocalDate today = LocalDate.now();
+        RScoredSortedSet<Long> board = period == Period.WEEK ? weekBoard(prefix, today)
+                : redissonClient.getScoredSortedSet(dayKey(prefix, today), LongCodec.INSTANCE);
+        return board.entryRangeReversed(0, limit - 1);
+    }
+
+    /**
+     * 获取周榜，缓存不存在时用最近7天的日榜合并生成
+     */
+    private RScoredSortedSet<Long> weekBoard(String prefix, LocalDate today) {
+        RScoredSortedSet<Long> week = redissonClient.getScoredSortedSet(
+                prefix + WEEK_INFIX + today.format(DAY_FORMAT), LongCodec.INSTANCE);
+        if (!week.isExists()) {
+            String[] days = new String[WEEK_DAYS];
+            for (int i = 0; i < WEEK_DAYS; i++) {
+                days[i] = dayKey(prefix, today.minusDays(i));
+            }
+            week.union(days);
+            week.expire(Duration.ofSeconds(weekCacheSeconds));
+        }
+        return week;
+    }
+
+    private static <T> List<LeaderboardEntryDTO<T>> toEntries(Collection<ScoredEntry<Long>> entries, Map<Long, T> items) {
+        List<LeaderboardEntryDTO<T>> result = new ArrayList<>(entries.size());
+        for (ScoredEntry<Long> entry : entries) {
+            T item = items.get(entry.getValue());
+            if (item == null) {
+                continue;
+            }
+            LeaderboardEntryDTO<T> dto = new LeaderboardEntryDTO<>();
+            dto.setRank(result.size() + 1);
+            dto.setFishCount(entry.getScore().longValue());
+            dto.setItem(item);
+            result.add(dto);
+        }
+        return result;
+    }
+
+    private static String dayKey(String prefix, LocalDate day) {
+        return prefix + day.format(DAY_FORMAT);
+    }
+}
@@ -0,0 +1,399 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.cache.FishFedCache;
+import com.example.videoapp.entity.User;
+import com.example.videoapp.mapper.UserMapper;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RList;
+import org.redisson.api.RLock;
+import org.redisson.api.RMap;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Redis鱼币账本
+ * 用户余额以Redis哈希为准，投喂时用一个Lua脚本在一次往返中完成余额检查、重复投喂检查、扣减余额、
+ * 记录投喂关系并追加一条流水；流水由FishJournalApplier异步批量写入MySQL
+ * 每个用户尚未写入数据库的扣减数量单独记录，数据库余额减去它就是账本余额，加载和对账都依赖这个关系
+ */
+@Service
+public class FishLedgerService {
+
+    /**
+     * 用户余额哈希，字段为用户ID
+     */
+    private static final String BALANCE_KEY = "fish:ledger:balance";
+
+    /**
+     * 尚未写入数据库的扣减数量哈希，字段为用户ID
+     */
+    private static final String PENDING_KEY = "fish:ledger:pending";
+
+    /**
+     * 待写入数据库的投喂流水列表，条目格式：用户ID:视频ID:投喂时间毫秒
+     */
+    private static final String JOURNAL_KEY = "fish:ledger:journal";
+
+    /**
+     * 无法写入数据库的投喂流水，保留下来供人工排查
+     */
+    private static final String DEAD_JOURNAL_KEY = "fish:ledger:journal:dead";
+
+    /**
+     * 余额未加载
+     */
+    private static final long BALANCE_NOT_LOADED = -1;
+
+    /**
+     * 投喂集合未加载
+     */
+    private static final long FED_NOT_LOADED = -2;
+
+    /**
+     * 已经投喂过
+     */
+    private static final long ALREADY_FED = -3;
+
+    /**
+     * 余额不足
+     */
+    private static final long INSUFFICIENT_BALANCE = -4;
+
+    /**
+     * 投喂脚本
+     * KEYS: 余额哈希、待写入哈希、视频投喂集合、流水列表；ARGV: 用户ID、流水条目、投喂集合的已加载哨兵、投喂集合有效期
+     * 投喂时顺带为投喂集合续期，集合在流水写入数据库之前过期重新加载会漏掉这次投喂
+     */
+    private static final String FEED_SCRIPT =
+            "local balance = redis.call('HGET', KEYS[1], ARGV[1]) " +
+            "if not balance then return -1 end " +
+            "if redis.call('SISMEMBER', KEYS[3], ARGV[3]) == 0 then return -2 end " +
+            "if redis.call('SISMEMBER', KEYS[3], ARGV[1]) == 1 then return -3 end " +
+            "if tonumber(balance) < 1 then return -4 end " +
+            "redis.call('SADD', KEYS[3], ARGV[1]) " +
+            "redis.call('PEXPIRE', KEYS[3], ARGV[4]) " +
+            "redis.call('RPUSH', KEYS[4], ARGV[2]) " +
+            "redis.call('HINCRBY', KEYS[2], ARGV[1], 1) " +
+            "return redis.call('HINCRBY', KEYS[1], ARGV[1], -1)";
+
+    /**
+     * 以数据库余额减去尚未写入的扣减数量设置账本余额
+     * KEYS: 余额哈希、待写入哈希；ARGV: 用户ID、数据库余额、是否只在不存在时设置(1/0)
+     */
+    private static final String LOAD_SCRIPT =
+            "if ARGV[3] == '1' and redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 then return 0 end " +
+            "local pending = tonumber(redis.call('HGET', KEYS[2], ARGV[1]) or '0') " +
+            "redis.call('HSET', KEYS[1], ARGV[1], tonumber(ARGV[2]) - pending) " +
+            "return 1";
+
+    /**
+     * 余额已加载时才增加，未加载时由下次加载从数据库读到
+     * KEYS: 余额哈希；ARGV: 用户ID、增加数量
+     */
+    private static final String CREDIT_SCRIPT =
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then return -1 end " +
+            "return redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])";
+
+    /**
+     * 确认一批流水已写入数据库：从列表头部移除并扣回各用户的待写入数量
+     * KEYS: 流水列表、待写入哈希；ARGV: 条目数量，之后依次是用户ID和该用户的条目数
+     */
+    private static final String ACK_SCRIPT =
+            "redis.call('LTRIM', KEYS[1], tonumber(ARGV[1]), -1) " +
+            "for i = 2, #ARGV, 2 do " +
+            "  if redis.call('HINCRBY', KEYS[2], ARGV[i], -tonumber(ARGV[i + 1])) <= 0 then " +
+            "    redis.call('HDEL', KEYS[2], ARGV[i]) " +
+            "  end " +
+            "end " +
+            "return 1";
+
+    /**
+     * 把列表头部的一条流水移入死信列表，并扣回该用户的待写入数量
+     * KEYS: 流水列表、待写入哈希、死信列表；ARGV: 流水条目、用户ID
+     */
+    private static final String DEAD_LETTER_SCRIPT =
+            "if redis.call('LINDEX', KEYS[1], 0) ~= ARGV[1] then return 0 end " +
+            "redis.call('LPOP', KEYS[1]) " +
+            "redis.call('RPUSH', KEYS[3], ARGV[1]) " +
+            "if redis.call('HINCRBY', KEYS[2], ARGV[2], -1) <= 0 then " +
+            "  redis.call('HDEL', KEYS[2], ARGV[2]) " +
+            "end " +
+            "return 1";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private FishFedCache fishFedCache;
+
+    /**
+     * 加载余额时等待流水写入锁的最长时间（毫秒）
+     */
+    @Value("${fish.ledger.load-lock-wait-ms:1000}")
+    private long loadLockWaitMs;
+
+    /**
+     * 投喂一条小鱼，成功时流水已进入待写入列表
+     *
+     * @param userId 用户ID
+     * @param videoId 视频ID
+     * @return 投喂后的余额
+     */
+    public long feed(Long userId, Long videoId) {
+        String entry = userId + ":" + videoId + ":" + System.currentTimeMillis();
+        List<Object> keys = List.of(BALANCE_KEY, PENDING_KEY, FishFedCache.key(videoId), JOURNAL_KEY);
+        // 余额和投喂集合各自最多需要加载一次
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Long result = script().eval(RScript.Mode.READ_WRITE, FEED_SCRIPT, RScript.ReturnType.INTEGER, keys,
+                    String.valueOf(userId), entry, String.valueOf(FishFedCache.LOADED_MARKER),
+                    String.valueOf(fishFedCache.ttlMillis()));
+            if (result == BALANCE_NOT_LOADED) {
+                loadBalance(userId);
+            } else if (result == FED_NOT_LOADED) {
+                fishFedCache.ensureLoaded(videoId);
+            } else if (result == ALREADY_FED) {
+                throw new RuntimeException("您已经给这个视频喂过鱼了！");
+            } else if (result == INSUFFICIENT_BALANCE) {
+                throw new RuntimeException("小鱼余额不足！");
+            } else {
+                return result;
+            }
+        }
+        throw new RuntimeException("操作频繁，请稍后再试！");
+    }
+
+    /**
+     * 持有账本锁修改数据库余额并同步到账本（如每日领取）
+     * 加载余额也持有这把锁，数据库已提交、账本尚未同步的窗口内不会有加载读到新余额，之后再被重复加一次
+     *
+     * @param userId 用户ID
+     * @param amount 变化数量，扣减时为负数
+     * @param update 修改数据库余额的操作，返回更新行数，为0时不同步账本
+     * @return 更新行数
+     */
+    public int creditWithDatabase(Long userId, int amount, IntSupplier update) {
+        RLock lock = lockLedger();
+        try {
+            int updated = update.getAsInt();
+            if (updated > 0) {
+                credit(userId, amount);
+            }
+            return updated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 数据库余额变化后同步到账本，余额未加载时不做处理
+     * 调用方需持有账本锁，否则应改用creditWithDatabase或remove
+     *
+     * @param userId 用户ID
+     * @param amount 变化数量，扣减时为负数
+     */
+    public void credit(Long userId, int amount) {
+        script().eval(RScript.Mode.READ_WRITE, CREDIT_SCRIPT, RScript.ReturnType.INTEGER,
+                List.of(BALANCE_KEY), String.valueOf(userId), String.valueOf(amount));
+    }
+
+    /**
+     * 查询账本中的余额
+     *
+     * @param userId 用户ID
+     * @return 余额，账本中尚未加载该用户时返回null
+     */
+    public Integer getBalance(Long userId) {
+        String balance = balances().get(String.valueOf(userId));
+        return balance == null ? null : Integer.valueOf(balance);
+    }
+
+    /**
+     * 读取待写入列表头部的流水，不移除
+     *
+     * @param limit 最多读取的条数
+     * @return 流水条目
+     */
+    public List<String> peekJournal(int limit) {
+        return journal().range(0, limit - 1);
+    }
+
+    /**
+     * 确认列表头部的一批流水已写入数据库
+     *
+     * @param entries 已写入的流水条目，必须是peekJournal返回的列表
+     */
+    public void ackJournal(List<String> entries) {
+        Map<String, Integer> countsByUser = new HashMap<>();
+        for (String entry : entries) {
+            countsByUser.merge(entry.substring(0, entry.indexOf(':')), 1, Integer::sum);
+        }
+        List<Object> args = new ArrayList<>(countsByUser.size() * 2 + 1);
+        args.add(String.valueOf(entries.size()));
+        countsByUser.forEach((userId, count) -> {
+            args.add(userId);
+            args.add(String.valueOf(count));
+        });
+        script().eval(RScript.Mode.READ_WRITE, ACK_SCRIPT, RScript.ReturnType.INTEGER,
+                List.of(JOURNAL_KEY, PENDING_KEY), args.toArray());
+    }
+
+    /**
+     * 把列表头部一条无法写入数据库的流水移入死信列表
+     *
+     * @param entry 流水条目，必须是当前列表头部的条目
+     */
+    public void deadLetterJournal(String entry) {
+        int separator = entry.indexOf(':');
+        String userId = separator > 0 ? entry.substring(0, separator) : entry;
+        script().eval(RScript.Mode.READ_WRITE, DEAD_LETTER_SCRIPT, RScript.ReturnType.INTEGER,
+                List.of(JOURNAL_KEY, PENDING_KEY, DEAD_JOURNAL_KEY), entry, userId);
+    }
+
+    /**
+     * 待写入数据库的流水条数
+     *
+     * @return 条数
+     */
+    public int journalSize() {
+        return journal().size();
+    }
+
+    /**
+     * 遍历账本中已加载余额的用户ID
+     *
+     * @return 用户ID
+     */
+    public Iterable<String> userIds() {
+        return balances().keySet(1000);
+    }
+
+    /**
+     * 在同一个MULTI中读取一批用户的账本余额和待写入扣减数量，保证两者一致
+     *
+     * @param userIds 用户ID
+     * @return 用户ID到[账本余额, 待写入数量]的映射，余额未加载的用户不包含在内
+     */
+    public Map<Long, long[]> snapshot(Collection<Long> userIds) {
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults()
+                .executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+        Set<String> fields = userIds.stream().map(String::valueOf).collect(Collectors.toSet());
+        RFuture<Map<String, String>> balances = batch.<String, String>getMap(BALANCE_KEY, StringCodec.INSTANCE)
+                .getAllAsync(fields);
+        RFuture<Map<String, String>> pending = batch.<String, String>getMap(PENDING_KEY, StringCodec.INSTANCE)
+                .getAllAsync(fields);
+        batch.execute();
+
+        Map<Long, long[]> result = new HashMap<>();
+        Map<String, String> pendingValues = pending.toCompletableFuture().join();
+        balances.toCompletableFuture().join().forEach((userId, balance) -> {
+            String pendingCount = pendingValues.get(userId);
+            result.put(Long.valueOf(userId), new long[]{
+                    Long.parseLong(balance), pendingCount == null ? 0 : Long.parseLong(pendingCount)});
+        });
+        return result;
+    }
+
+    /**
+     * 用数据库余额修正账本余额
+     *
+     * @param userId 用户ID
+     * @param databaseBalance 数据库中的余额
+     */
+    public void repair(Long userId, int databaseBalance) {
+        setBalance(userId, databaseBalance, false);
+    }
+
+    /**
+     * 从账本中移除用户，下次使用时从数据库重新加载
+     * 用户已不存在，或数据库余额在事务中变化、提交后无法在账本锁内同步时调用
+     *
+     * @param userId 用户ID
+     */
+    public void remove(Long userId) {
+        balances().fastRemove(String.valueOf(userId));
+    }
+
+    /**
+     * 从账本中移除一批用户，一次往返完成
+     *
+     * @param userIds 用户ID集合
+     */
+    public void removeAll(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        balances().fastRemove(userIds.stream().map(String::valueOf).toArray(String[]::new));
+    }
+
+    /**
+     * 从数据库加载用户余额到账本
+     * 与流水写入互斥：一批流水提交后、确认前，数据库余额已经扣减而待写入数量还未扣回，
+     * 这时加载会把同一批扣减减去两次
+     *
+     * @param userId 用户ID
+     */
+    private void loadBalance(Long userId) {
+        RLock lock = lockLedger();
+        try {
+            User user = userMapper.findById(userId);
+            if (user == null) {
+                throw new RuntimeException("操作失败，用户不存在！");
+            }
+            setBalance(userId, user.getFishBalance(), true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private RLock lockLedger() {
+        RLock lock = redissonClient.getLock(FishJournalApplier.LOCK_KEY);
+        boolean locked;
+        try {
+            locked = lock.tryLock(loadLockWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("获取锁期间被中断", e);
+        }
+        if (!locked) {
+            throw new RuntimeException("操作频繁，请稍后再试！");
+        }
+        return lock;
+    }
+
+    private void setBalance(Long userId, int databaseBalance, boolean onlyIfAbsent) {
+        script().eval(RScript.Mode.READ_WRITE, LOAD_SCRIPT, RScript.ReturnType.INTEGER,
+                List.of(BALANCE_KEY, PENDING_KEY),
+                String.valueOf(userId), String.valueOf(databaseBalance), onlyIfAbsent ? "1" : "0");
+    }
+
+    private RScript script() {
+        return redissonClient.getScript(StringCodec.INSTANCE);
+    }
+
+    private RMap<String, String> balances() {
+        return redissonClient.getMap(BALANCE_KEY, StringCodec.INSTANCE);
+    }
+
+    private RList<String> journal() {
+        return redissonClient.getList(JOURNAL_KEY, StringCodec.INSTANCE);
+    }
+}
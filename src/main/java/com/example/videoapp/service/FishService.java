@@ -1,23 +1,32 @@
 package com.example.videoapp.service;
 
 import com.example.videoapp.DTO.NotificationMessageDTO;
+import com.example.videoapp.DTO.VideoDetailDTO;
+import com.example.videoapp.cache.FishFedCache;
+import com.example.videoapp.cache.ResourceVersionStore;
+import com.example.videoapp.cache.VideoDetailCache;
+import com.example.videoapp.common.TransactionUtils;
 import com.example.videoapp.config.RabbitMQConfig;
 import com.example.videoapp.entity.FishTransaction;
 import com.example.videoapp.entity.User;
 import com.example.videoapp.entity.Video;
+import com.example.videoapp.lock.LockTemplate;
 import com.example.videoapp.mapper.FishTransactionMapper;
 import com.example.videoapp.mapper.UserMapper;
 import com.example.videoapp.mapper.VideoMapper;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
+import com.example.videoapp.search.UserNicknameIndex;
+import com.example.videoapp.search.VideoSearchIndex;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * 鱼币服务，处理用户鱼币相关的业务逻辑
@@ -25,94 +34,244 @@ import java.util.concurrent.TimeUnit;
 @Service
 public class FishService {
 
+    /**
+     * 用户投喂锁的前缀
+     */
+    private static final String FEED_LOCK_PREFIX = "lock:user:feed";
+
     @Autowired
     private UserMapper userMapper;
-    
+
     @Autowired
     private VideoMapper videoMapper;
-    
+
     @Autowired
     private FishTransactionMapper fishTransactionMapper;
-    
+
     @Autowired
     private RabbitTemplate rabbitTemplate;
-    
+
+    @Autowired
+    private LockTemplate lockTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private VideoDetailCache videoDetailCache;
+
+    @Autowired
+    private FishFedCache fishFedCache;
+
+    @Autowired
+    private VideoRankingService videoRankingService;
+
+    @Autowired
+    private VideoSearchIndex videoSearchIndex;
+
+    @Autowired
+    private ResourceVersionStore resourceVersionStore;
+
+    @Autowired
+    private FishLedgerService fishLedgerService;
+
     @Autowired
-    private RedissonClient redissonClient;
+    private UserNicknameIndex userNicknameIndex;
+
+    @Autowired
+    private FishFeedBatcher fishFeedBatcher;
+
+    @Autowired
+    private FishLeaderboardService fishLeaderboardService;
+
+    /**
+     * batch模式下执行提交后的排行榜和通知，不占用唯一的提交线程
+     */
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private Executor ioExecutor;
+
+    /**
+     * 投喂的处理方式：ledger在Redis账本中原子完成并异步写入数据库，locked按用户加锁后同步写入数据库，
+     * batch把并发的投喂攒成小批次在一个事务中提交
+     */
+    @Value("${fish.feed.mode:ledger}")
+    private String feedMode;
 
     /**
-     * 用户给视频投喂小鱼（点赞）
-     * 
+     * locked模式下等待用户投喂锁的预算（毫秒）
+     */
+    @Value("${fish.feed.lock-wait-ms:200}")
+    private long feedLockWaitMs;
+
+    /**
+     * 是否使用组提交处理投喂，此时投喂在所在批次提交后才完成，需要通过feedFishToVideoInBatch异步等待
+     *
+     * @return batch模式时返回true
+     */
+    public boolean isBatchMode() {
+        return "batch".equals(feedMode);
+    }
+
+    /**
+     * 用户给视频投喂小鱼（点赞），ledger和locked模式下返回时已经完成
+     *
      * @param userId 用户ID
+     * @param username 用户名
      * @param videoId 视频ID
      */
-    @Transactional
-    @CacheEvict(value = "video:detail", key = "#videoId")
-    public void feedFishToVideo(Long userId, Long videoId) {
-        // 创建分布式锁的键
-        final String lockKey = "lock:user:feed:" + userId;
-        RLock lock = redissonClient.getLock(lockKey);
+    public void feedFishToVideo(Long userId, String username, Long videoId) {
+        if (isBatchMode()) {
+            throw new IllegalStateException("batch模式下请使用feedFishToVideoInBatch");
+        }
+        if ("locked".equals(feedMode)) {
+            feedWithLock(userId, videoId);
+        } else {
+            feedWithLedger(userId, username, videoId);
+        }
+    }
+
+    /**
+     * batch模式下用户给视频投喂小鱼（点赞）
+     *
+     * @param userId 用户ID
+     * @param username 用户名
+     * @param videoId 视频ID
+     * @return 所在批次提交后完成
+     */
+    public CompletableFuture<Void> feedFishToVideoInBatch(Long userId, String username, Long videoId) {
+        return feedWithBatch(userId, username, videoId);
+    }
+
+    /**
+     * 交给组提交器批量写入数据库，已投喂过的请求直接在缓存中拒绝，不进入批次
+     *
+     * @param userId 用户ID
+     * @param username 用户名
+     * @param videoId 视频ID
+     * @return 所在批次提交后完成
+     */
+    private CompletableFuture<Void> feedWithBatch(Long userId, String username, Long videoId) {
+        VideoDetailDTO video = videoDetailCache.get(videoId, videoMapper::findByIdWithUploader);
+        if (video == null) {
+            throw new RuntimeException("视频不存在");
+        }
+        if (fishFedCache.isFed(userId, videoId)) {
+            throw new RuntimeException("您已经给这个视频喂过鱼了！");
+        }
+        // Future由提交线程完成，之后的Redis、数据库和RabbitMQ操作切换到I/O线程池，不拖慢下一批的提交
+        return fishFeedBatcher.submit(userId, username, video).thenRunAsync(() -> {
+            fishLeaderboardService.recordFeed(videoId, video.getUserId(), 1);
+            sendFishNotification(userId, findNickname(userId, username), videoId, video.getUserId(), video.getTitle());
+        }, ioExecutor);
+    }
+
+    /**
+     * 通过Redis账本投喂：一次Lua脚本完成余额和重复投喂检查、扣减和记账，
+     * 数据库写入、视频鱼币数和排行榜的更新由FishJournalApplier批量完成
+     *
+     * @param userId 用户ID
+     * @param username 用户名
+     * @param videoId 视频ID
+     */
+    private void feedWithLedger(Long userId, String username, Long videoId) {
+        VideoDetailDTO video = videoDetailCache.get(videoId, videoMapper::findByIdWithUploader);
+        if (video == null) {
+            throw new RuntimeException("视频不存在");
+        }
+
+        fishLedgerService.feed(userId, videoId);
+        // 用户资料中的余额直接读取账本，投喂后立即可见
+        resourceVersionStore.bumpProfileAfterCommit(username);
+        fishLeaderboardService.recordFeed(videoId, video.getUserId(), 1);
+
+        sendFishNotification(userId, findNickname(userId, username), videoId, video.getUserId(), video.getTitle());
+    }
+
+    /**
+     * 按用户加锁后在一个事务中同步写入数据库，锁在事务提交之后才释放
+     * 等待超过预算时直接返回429，不会长时间占住请求线程
+     *
+     * @param userId 用户ID
+     * @param videoId 视频ID
+     */
+    private void feedWithLock(Long userId, Long videoId) {
+        lockTemplate.run(FEED_LOCK_PREFIX, userId, feedLockWaitMs,
+                () -> transactionTemplate.executeWithoutResult(status -> feedInTransaction(userId, videoId)));
+    }
+
+    private void feedInTransaction(Long userId, Long videoId) {
+        // 检查用户是否存在
+        User user = userMapper.findById(userId);
+        if (user == null) {
+            throw new RuntimeException("操作失败，用户不存在！");
+        }
+
+        // 检查用户鱼币余额
+        if (user.getFishBalance() < 1) {
+            throw new RuntimeException("小鱼余额不足！");
+        }
+
+        // 创建投喂交易记录
+        FishTransaction transaction = new FishTransaction();
+        transaction.setUserId(userId);
+        transaction.setVideoId(videoId);
+        transaction.setAmount(1);
+        transaction.setCreatedAt(LocalDateTime.now());
 
         try {
-            // 尝试获取锁，最多等待10秒，锁自动释放时间为10秒
-            boolean isLocked = lock.tryLock(10, 10, TimeUnit.SECONDS);
-            if (isLocked) {
-                try {
-                    // 检查用户是否存在
-                    User user = userMapper.findById(userId);
-                    if (user == null) { 
-                        throw new RuntimeException("操作失败，用户不存在！"); 
-                    }
-                    
-                    // 检查用户鱼币余额
-                    if (user.getFishBalance() < 1) { 
-                        throw new RuntimeException("小鱼余额不足！"); 
-                    }
-
-                    // 创建投喂交易记录
-                    FishTransaction transaction = new FishTransaction();
-                    transaction.setUserId(userId);
-                    transaction.setVideoId(videoId);
-                    transaction.setAmount(1);
-                    transaction.setCreatedAt(LocalDateTime.now());
-                    
-                    try {
-                        fishTransactionMapper.insert(transaction);
-                    } catch (Exception e) {
-                        throw new RuntimeException("您已经给这个视频喂过鱼了！");
-                    }
-
-                    // 更新用户鱼币余额和视频获得的鱼币数量
-                    int newBalance = user.getFishBalance() - 1;
-                    userMapper.updateUserFish(user.getId(), newBalance, user.getLastDailyClaim());
-                    videoMapper.incrementFishCount(videoId);
-
-                    // 发送通知给视频作者
-                    Video video = videoMapper.findById(videoId);
-                    if (video != null) {
-                        NotificationMessageDTO notificationMessageDTO = new NotificationMessageDTO(
-                                "NEW_FISH", 
-                                userId, 
-                                video.getUserId(), 
-                                videoId,
-                                user.getNickname(), 
-                                video.getTitle());
-                                
-                        rabbitTemplate.convertAndSend(
-                                RabbitMQConfig.NOTIFICATION_EXCHANGE_NAME,
-                                RabbitMQConfig.NOTIFICATION_ROUTING_KEY, 
-                                notificationMessageDTO);
-                    }
-                } finally {
-                    // 确保锁被释放
-                    lock.unlock();
-                }
-            } else {
-                throw new RuntimeException("操作频繁，请稍后再试！");
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("获取锁期间被中断", e);
+            fishTransactionMapper.insert(transaction);
+        } catch (Exception e) {
+            throw new RuntimeException("您已经给这个视频喂过鱼了！");
+        }
+
+        // 更新用户鱼币余额和视频获得的鱼币数量，余额相对扣减，不会覆盖并发的每日领取
+        userMapper.batchDecrementFishBalance(Map.of(userId, 1));
+        videoMapper.incrementFishCount(videoId);
+        // 提交后拿不到账本锁，直接移除账本余额，下次使用时按数据库重新加载
+        TransactionUtils.afterCommit(() -> fishLedgerService.remove(userId));
+        videoDetailCache.invalidateAfterCommit(videoId);
+        resourceVersionStore.bumpVideoAfterCommit(videoId);
+        resourceVersionStore.bumpProfileAfterCommit(user.getUsername());
+        fishFedCache.markFedAfterCommit(userId, videoId);
+        TransactionUtils.afterCommit(() -> videoRankingService.incrementFish(videoId, 1));
+        TransactionUtils.afterCommit(() -> videoSearchIndex.publishFish(videoId, 1));
+
+        // 发送通知给视频作者
+        Video video = videoMapper.findById(videoId);
+        if (video != null) {
+            TransactionUtils.afterCommit(() -> fishLeaderboardService.recordFeed(videoId, video.getUserId(), 1));
+            sendFishNotification(userId, user.getNickname(), videoId, video.getUserId(), video.getTitle());
+        }
+    }
+
+    /**
+     * 查找通知中显示的用户昵称，优先使用内存中的昵称索引
+     */
+    private String findNickname(Long userId, String username) {
+        String nickname = userNicknameIndex.findNicknameById(userId);
+        if (nickname == null) {
+            User user = userMapper.findById(userId);
+            nickname = user == null ? username : user.getNickname();
         }
+        return nickname;
+    }
+
+    /**
+     * 发送投喂通知给视频作者
+     */
+    private void sendFishNotification(Long userId, String nickname, Long videoId, Long authorId, String videoTitle) {
+        NotificationMessageDTO notificationMessageDTO = new NotificationMessageDTO(
+                "NEW_FISH",
+                userId,
+                authorId,
+                videoId,
+                nickname,
+                videoTitle);
+
+        rabbitTemplate.convertAndSend(
+                RabbitMQConfig.NOTIFICATION_EXCHANGE_NAME,
+                RabbitMQConfig.NOTIFICATION_ROUTING_KEY,
+                notificationMessageDTO);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,213 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.DTO.NotificationMessageDTO;
+import com.example.videoapp.common.TransactionUtils;
+import com.example.videoapp.entity.Notification;
+import com.example.videoapp.mapper.NotificationMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 通知合并，把同一接收者、同一类型、同一视频在合并窗口内的事件合并为一条通知
+ * 一批事件先在内存中按(接收者, 类型, 视频)分组，再锁定数据库中窗口内仍未读的聚合通知原地更新，
+ * 找不到可合并的通知时才插入新行；已读的通知不再合并，之后的事件会生成一条新的未读通知
+ */
+@Component
+public class NotificationAggregator {
+
+    @Autowired
+    private NotificationMapper notificationMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private NotificationUnreadCounter notificationUnreadCounter;
+
+    @Autowired
+    private NotificationStreamService notificationStreamService;
+
+    /**
+     * 合并窗口（分钟），聚合通知创建超过这个时间后不再合并新事件
+     */
+    @Value("${notification.aggregate.window-minutes:60}")
+    private long windowMinutes;
+
+    /**
+     * 每条聚合通知保留的触发者昵称数
+     */
+    @Value("${notification.aggregate.max-names:3}")
+    private int maxNames;
+
+    /**
+     * 合并后写入一批通知事件
+     *
+     * @param events 通知事件，按到达顺序
+     */
+    public void write(List<NotificationMessageDTO> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        Map<String, Aggregate> aggregates = new LinkedHashMap<>();
+        for (NotificationMessageDTO event : events) {
+            aggregates.computeIfAbsent(key(event), k -> new Aggregate()).add(event, maxNames);
+        }
+        transactionTemplate.executeWithoutResult(status -> merge(aggregates));
+    }
+
+    /**
+     * 通知事件的合并键
+     *
+     * @param event 通知事件
+     * @return 由接收者、类型和视频组成的合并键
+     */
+    public static String key(NotificationMessageDTO event) {
+        return event.getRecipientId() + ":" + event.getType() + ":" + event.getVideoId();
+    }
+
+    private void merge(Map<String, Aggregate> aggregates) {
+        // 截断到秒，与数据库DATETIME列保存的值一致，推送的事件ID才能用于断线续传
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        List<Notification> keys = new ArrayList<>(aggregates.size());
+        for (Aggregate aggregate : aggregates.values()) {
+            Notification key = new Notification();
+            key.setRecipientId(aggregate.latest.getRecipientId());
+            key.setType(aggregate.latest.getType());
+            key.setRelatedEntityId(aggregate.latest.getVideoId());
+            keys.add(key);
+        }
+
+        // 同一个键出现多条可合并的通知时（并发消费者各自插入），合并进最新的一条
+        Map<String, Notification> open = new LinkedHashMap<>();
+        for (Notification existing : notificationMapper.lockOpenAggregates(keys, now.minusMinutes(windowMinutes))) {
+            open.put(existing.getRecipientId() + ":" + existing.getType() + ":" + existing.getRelatedEntityId(), existing);
+        }
+
+        List<Notification> inserts = new ArrayList<>();
+        List<Notification> changed = new ArrayList<>(aggregates.size());
+        for (Map.Entry<String, Aggregate> entry : aggregates.entrySet()) {
+            Aggregate aggregate = entry.getValue();
+            Notification existing = open.get(entry.getKey());
+            if (existing != null) {
+                aggregate.mergeInto(existing, maxNames);
+                existing.setUpdatedAt(now);
+                notificationMapper.updateAggregate(existing);
+                changed.add(existing);
+            } else {
+                inserts.add(aggregate.toNotification(now));
+            }
+        }
+        if (!inserts.isEmpty()) {
+            notificationMapper.batchInsert(inserts);
+            changed.addAll(inserts);
+            // 合并进未读通知不改变未读数，只有新插入的通知计入
+            Map<Long, Long> unread = inserts.stream()
+                    .collect(Collectors.groupingBy(Notification::getRecipientId, Collectors.counting()));
+            TransactionUtils.afterCommit(() -> unread.forEach(notificationUnreadCounter::increment));
+        }
+        TransactionUtils.afterCommit(() -> notificationStreamService.publish(changed));
+    }
+
+    /**
+     * 根据类型、触发者和事件数生成通知内容
+     * 同一用户可以多次评论，评论通知按条数描述；每个用户只能投喂一次，投喂通知按人数描述
+     *
+     * @param type 通知类型
+     * @param names 最近的触发者昵称，最新的在前
+     * @param count 事件数
+     * @param videoTitle 视频标题
+     * @return 通知内容
+     */
+    static String render(String type, List<String> names, int count, String videoTitle) {
+        String actors = "用户" + String.join("、", names);
+        if ("NEW_COMMENT".equals(type)) {
+            if (count == 1) {
+                return actors + "评论了您的视频:" + videoTitle;
+            }
+            return actors + "等在您的视频:" + videoTitle + "下发表了" + count + "条评论";
+        }
+        if (count > names.size()) {
+            actors += "等" + count + "人";
+        }
+        return "您的视频:" + videoTitle + "收到了" + actors + "的小鱼！";
+    }
+
+    /**
+     * 一批事件中同一个合并键下的事件
+     */
+    private static class Aggregate {
+
+        /**
+         * 最近的触发者昵称，最新的在前，不重复
+         */
+        private final List<String> names = new ArrayList<>();
+
+        /**
+         * 事件数
+         */
+        private int count;
+
+        /**
+         * 最新的一条事件
+         */
+        private NotificationMessageDTO latest;
+
+        private void add(NotificationMessageDTO event, int maxNames) {
+            count++;
+            latest = event;
+            prepend(names, event.getSenderName(), maxNames);
+        }
+
+        private void mergeInto(Notification existing, int maxNames) {
+            List<String> merged = new ArrayList<>(names);
+            if (existing.getActorNames() != null) {
+                for (String name : existing.getActorNames()) {
+                    if (merged.size() >= maxNames) {
+                        break;
+                    }
+                    if (!merged.contains(name)) {
+                        merged.add(name);
+                    }
+                }
+            }
+            int total = (existing.getActorCount() == null ? 1 : existing.getActorCount()) + count;
+            existing.setSenderId(latest.getSenderId());
+            existing.setActorCount(total);
+            existing.setActorNames(merged);
+            existing.setContent(render(latest.getType(), merged, total, latest.getVideoTitle()));
+        }
+
+        private Notification toNotification(LocalDateTime now) {
+            Notification notification = new Notification();
+            notification.setSenderId(latest.getSenderId());
+            notification.setRecipientId(latest.getRecipientId());
+            notification.setType(latest.getType());
+            notification.setRelatedEntityId(latest.getVideoId());
+            notification.setContent(render(latest.getType(), names, count, latest.getVideoTitle()));
+            notification.setActorCount(count);
+            notification.setActorNames(new ArrayList<>(names));
+            notification.setRead(false);
+            notification.setCreatedAt(now);
+            notification.setUpdatedAt(now);
+            return notification;
+        }
+
+        private static void prepend(List<String> names, String name, int maxNames) {
+            names.remove(name);
+            names.add(0, name);
+            if (names.size() > maxNames) {
+                names.remove(names.size() - 1);
+            }
+        }
+    }
+}
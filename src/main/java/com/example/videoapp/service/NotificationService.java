@@ -1,111 +1,257 @@
 package com.example.videoapp.service;
 
 import com.example.videoapp.DTO.NotificationMessageDTO;
+import com.example.videoapp.common.TransactionUtils;
 import com.example.videoapp.config.RabbitMQConfig;
 import com.example.videoapp.entity.Notification;
-import com.example.videoapp.entity.User;
 import com.example.videoapp.mapper.NotificationMapper;
-import com.example.videoapp.mapper.UserMapper;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.NonTransientDataAccessException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
-import java.util.Collections;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * 通知服务，处理用户通知的创建、获取和状态管理
  */
 @Service
 public class NotificationService {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationService.class);
+
+    /**
+     * 转入死信队列的消息上记录原因的消息头
+     */
+    private static final String DEAD_LETTER_REASON_HEADER = "x-dead-letter-reason";
     
     @Autowired
     private NotificationMapper notificationMapper;
-    
+
+    @Autowired
+    private NotificationAggregator notificationAggregator;
+
     @Autowired
-    private UserMapper userMapper;
+    private NotificationUnreadCounter notificationUnreadCounter;
+
+    @Autowired
+    private MessageConverter messageConverter;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 数据库暂时不可用时，整批退回队列前等待的时间（毫秒），避免空转重试
+     */
+    @Value("${notification.consumer.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    /**
+     * 单批处理的消息数
+     */
+    private DistributionSummary batchSizeSummary;
+
+    /**
+     * 转入死信队列的消息数
+     */
+    private Counter deadLetterCounter;
+
+    @PostConstruct
+    public void initMetrics() {
+        batchSizeSummary = DistributionSummary.builder("notification.batch.size")
+                .description("单批处理的通知消息数")
+                .register(meterRegistry);
+        deadLetterCounter = Counter.builder("notification.dead.lettered")
+                .description("转入死信队列的通知消息数")
+                .register(meterRegistry);
+    }
     
     /**
-     * 监听RabbitMQ队列，处理通知消息
+     * 批量监听RabbitMQ队列，处理通知消息
+     * 一批消息解析后交给通知合并写入数据库，写入完成后按批确认；
+     * 无法解析或无法写入的消息转入死信队列，不会阻塞同批的其他消息
      * 
-     * @param notificationMessageDTO 通知消息DTO
+     * @param messages 一批原始消息
+     * @param channel 消费者所在的信道，用于手动确认
      */
-    @RabbitListener(queues = RabbitMQConfig.NOTIFICATION_QUEUE_NAME)
-    public void handleNotification(NotificationMessageDTO notificationMessageDTO) {
-        Notification notification = new Notification();
-        notification.setSenderId(notificationMessageDTO.getSenderId());
-        notification.setRecipientId(notificationMessageDTO.getRecipientId());
-        notification.setType(notificationMessageDTO.getType());
-        
-        String senderName = notificationMessageDTO.getSenderName();
-        String videoTitle = notificationMessageDTO.getVideoTitle();
-        
-        // 根据通知类型生成不同的通知内容
-        if (notification.getType().equals("NEW_COMMENT")) {
-            notification.setContent("用户" + senderName + "评论了您的视频:" + videoTitle);
-        } else if (notification.getType().equals("NEW_FISH")) {
-            notification.setContent("您的视频:" + videoTitle + "收到了用户" + senderName + "的小鱼！");
+    @RabbitListener(queues = RabbitMQConfig.NOTIFICATION_QUEUE_NAME,
+            containerFactory = RabbitMQConfig.NOTIFICATION_BATCH_CONTAINER_FACTORY)
+    public void handleNotifications(List<Message> messages, Channel channel) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        long lastDeliveryTag = messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag();
+        batchSizeSummary.record(messages.size());
+
+        try {
+            List<Message> accepted = new ArrayList<>(messages.size());
+            List<NotificationMessageDTO> events = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                try {
+                    events.add(parse(message));
+                    accepted.add(message);
+                } catch (RuntimeException e) {
+                    deadLetter(message, "无法解析的通知消息: " + e.getMessage());
+                }
+            }
+            write(accepted, events);
+        } catch (RuntimeException e) {
+            // 数据库或死信队列暂时不可用，整批退回队列稍后重试
+            log.error("处理{}条通知消息失败，退回队列重试", messages.size(), e);
+            sleepBeforeRetry();
+            channel.basicNack(lastDeliveryTag, true, true);
+            return;
+        }
+        channel.basicAck(lastDeliveryTag, true);
+    }
+
+    /**
+     * 合并写入一批通知事件，整批写入因数据本身的问题失败时按合并键分组逐组写入，
+     * 把写不进去的那一组消息转入死信队列
+     * 
+     * @param messages 与事件一一对应的原始消息
+     * @param events 通知事件
+     */
+    private void write(List<Message> messages, List<NotificationMessageDTO> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        try {
+            notificationAggregator.write(events);
+            return;
+        } catch (NonTransientDataAccessException e) {
+            log.warn("批量写入{}条通知失败，改为按组写入", events.size(), e);
+        }
+
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            groups.computeIfAbsent(NotificationAggregator.key(events.get(i)), k -> new ArrayList<>()).add(i);
+        }
+        for (List<Integer> group : groups.values()) {
+            try {
+                notificationAggregator.write(group.stream().map(events::get).collect(Collectors.toList()));
+            } catch (NonTransientDataAccessException e) {
+                for (Integer i : group) {
+                    deadLetter(messages.get(i), "无法写入的通知: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析并校验通知消息
+     * 
+     * @param message 原始消息
+     * @return 通知事件
+     */
+    private NotificationMessageDTO parse(Message message) {
+        Object payload = messageConverter.fromMessage(message);
+        if (!(payload instanceof NotificationMessageDTO notificationMessageDTO)) {
+            throw new IllegalArgumentException("消息类型不是NotificationMessageDTO");
+        }
+        if (notificationMessageDTO.getRecipientId() == null) {
+            throw new IllegalArgumentException("缺少接收者");
+        }
+        if (!"NEW_COMMENT".equals(notificationMessageDTO.getType()) && !"NEW_FISH".equals(notificationMessageDTO.getType())) {
+            throw new IllegalArgumentException("未知的通知类型: " + notificationMessageDTO.getType());
+        }
+        return notificationMessageDTO;
+    }
+
+    /**
+     * 把消息原样转发到死信队列，并在消息头中记录原因
+     * 
+     * @param message 原始消息
+     * @param reason 原因
+     */
+    private void deadLetter(Message message, String reason) {
+        log.warn("通知消息转入死信队列: {}", reason);
+        message.getMessageProperties().setHeader(DEAD_LETTER_REASON_HEADER, reason);
+        rabbitTemplate.send(RabbitMQConfig.NOTIFICATION_DEAD_LETTER_EXCHANGE_NAME,
+                RabbitMQConfig.NOTIFICATION_DEAD_LETTER_ROUTING_KEY, message);
+        deadLetterCounter.increment();
+    }
+
+    private void sleepBeforeRetry() {
+        try {
+            Thread.sleep(retryBackoffMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        
-        notification.setRelatedEntityId(notificationMessageDTO.getVideoId());
-        notification.setRead(false);
-        notification.setCreatedAt(LocalDateTime.now());
-        
-        notificationMapper.insert(notification);
     }
 
     /**
      * 获取指定用户的通知列表
      * 
-     * @param username 用户名
+     * @param userId 用户ID
      * @return 通知列表
      */
-    public List<Notification> getNotificationsForUser(String username) {
-        User user = userMapper.findByUsername(username);
-        if (user == null) {
-            return Collections.emptyList();
-        }
-        return notificationMapper.findByRecipientId(user.getId());
+    public List<Notification> getNotificationsForUser(Long userId) {
+        return notificationMapper.findByRecipientId(userId);
     }
 
     /**
      * 将指定通知标记为已读
      * 
      * @param notificationId 通知ID
-     * @param username 操作用户名
+     * @param userId 操作用户ID
      */
     @Transactional
-    public void markNotificationAsRead(Long notificationId, String username) {
-        User user = userMapper.findByUsername(username);
-        if (user == null) {
-            throw new RuntimeException("用户不存在");
-        }
-        
+    public void markNotificationAsRead(Long notificationId, Long userId) {
         Notification notification = notificationMapper.findById(notificationId);
         if (notification == null) {
             throw new RuntimeException("找不到ID为 " + notificationId + " 的通知");
         }
         
-        if (!notification.getRecipientId().equals(user.getId())) {
+        if (!notification.getRecipientId().equals(userId)) {
             throw new RuntimeException("当前用户和信息接收者不一致");
         }
         
-        notification.setRead(true);
-        notificationMapper.update(notification);
+        // 只有真正从未读变为已读时才扣减未读数，重复标记不会把计数扣成负数
+        if (notificationMapper.markAsRead(notificationId) > 0) {
+            TransactionUtils.afterCommit(() -> notificationUnreadCounter.increment(userId, -1));
+        }
     }
     
     /**
      * 将用户的所有通知标记为已读
      * 
-     * @param username 用户名
+     * @param userId 用户ID
      */
     @Transactional
-    public void markAllAsReadForUser(String username) {
-        User user = userMapper.findByUsername(username);
-        if (user != null) {
-            notificationMapper.markAllAsReadByRecipientId(user.getId());
-        }
+    public void markAllAsReadForUser(Long userId) {
+        // 按实际标记的行数扣减，不直接清零，避免覆盖并发到达的新通知
+        int marked = notificationMapper.markAllAsReadByRecipientId(userId);
+        TransactionUtils.afterCommit(() -> notificationUnreadCounter.increment(userId, -marked));
+    }
+
+    /**
+     * 获取用户的未读通知数，读取Redis中的计数器
+     * 
+     * @param userId 用户ID
+     * @return 未读通知数
+     */
+    public long getUnreadCount(Long userId) {
+        return notificationUnreadCounter.get(userId);
     }
 }
@@ -0,0 +1,289 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.common.PageCursor;
+import com.example.videoapp.entity.Notification;
+import com.example.videoapp.exception.TooManyRequestsException;
+import com.example.videoapp.mapper.NotificationMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.codec.JsonJacksonCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 通知推送通道，用SSE把新的和合并更新过的通知推送给在线用户
+ * 连接是Servlet异步请求，空闲时不占用Tomcat线程；通知写入后经Redis发布订阅广播到所有节点，
+ * 每个节点只推送给连在本节点上的接收者。事件ID由通知的更新时间和ID组成，
+ * 客户端重连时携带Last-Event-ID即可补发断线期间新建或更新过的通知
+ * 补发是尽力而为的：更新时间在事务提交前取值，并发事务可能以与更新时间不同的顺序提交，
+ * 时间戳较早但提交较晚的通知可能落在客户端已收到的事件ID之前而不被补发；
+ * 通知列表接口和未读计数才是准确的数据来源，客户端重连后应以它们为准
+ */
+@Service
+public class NotificationStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationStreamService.class);
+
+    /**
+     * 通知广播频道
+     */
+    private static final String TOPIC = "notification:stream";
+
+    /**
+     * 推送事件的名称
+     */
+    private static final String EVENT_NAME = "notification";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private JsonJacksonCodec jsonJacksonCodec;
+
+    @Autowired
+    private NotificationMapper notificationMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 单个节点最多保持的连接数
+     */
+    @Value("${notification.stream.max-connections:5000}")
+    private int maxConnections;
+
+    /**
+     * 单个用户最多同时保持的连接数（多个标签页或设备）
+     */
+    @Value("${notification.stream.max-connections-per-user:5}")
+    private int maxConnectionsPerUser;
+
+    /**
+     * 连接超时时间（毫秒），超时后由客户端自动重连
+     */
+    @Value("${notification.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    /**
+     * 重连时最多补发的通知数
+     */
+    @Value("${notification.stream.replay-limit:100}")
+    private int replayLimit;
+
+    /**
+     * 推送线程数
+     */
+    @Value("${notification.stream.send-threads:2}")
+    private int sendThreads;
+
+    /**
+     * 等待推送的任务队列长度，超出后丢弃本次推送，客户端可通过重连补发
+     */
+    @Value("${notification.stream.send-queue-capacity:10000}")
+    private int sendQueueCapacity;
+
+    /**
+     * 本节点上每个用户的连接
+     */
+    private final Map<Long, Set<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点上的连接总数
+     */
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /**
+     * 通知广播频道
+     */
+    private RTopic topic;
+
+    /**
+     * 推送线程池，避免慢客户端阻塞Redis订阅线程
+     */
+    private ThreadPoolExecutor sender;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        sender = new ThreadPoolExecutor(sendThreads, sendThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(sendQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "notification-stream-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        topic = redissonClient.getTopic(TOPIC, jsonJacksonCodec);
+        topic.addListener(Notification[].class, (channel, notifications) -> deliver(notifications));
+
+        Gauge.builder("notification.stream.connections", connections, AtomicInteger::get)
+                .description("本节点保持的通知推送连接数")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdown();
+        emitters.values().forEach(set -> set.forEach(SseEmitter::complete));
+    }
+
+    /**
+     * 建立推送连接，携带Last-Event-ID时先补发断线期间的通知
+     * 先注册连接再补发，补发与实时推送之间可能重复，客户端按通知ID覆盖即可
+     *
+     * @param userId 用户ID
+     * @param lastEventId 客户端最后收到的事件ID，可为null
+     * @return SSE连接
+     */
+    public SseEmitter connect(Long userId, String lastEventId) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            throw new TooManyRequestsException("连接数过多，请稍后再试！");
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        // 在compute中注册，与清理空集合的操作互斥，不会注册到已被移除的集合上
+        boolean[] added = new boolean[1];
+        emitters.compute(userId, (id, set) -> {
+            Set<SseEmitter> current = set != null ? set : new CopyOnWriteArraySet<>();
+            if (current.size() < maxConnectionsPerUser) {
+                added[0] = current.add(emitter);
+            }
+            return current.isEmpty() ? null : current;
+        });
+        if (!added[0]) {
+            connections.decrementAndGet();
+            throw new TooManyRequestsException("连接数过多，请稍后再试！");
+        }
+
+        Runnable cleanup = () -> remove(userId, emitter);
+        emitter.onCompletion(cleanup);
+        emitter.onTimeout(cleanup);
+        emitter.onError(e -> cleanup.run());
+
+        PageCursor cursor = parseLastEventId(lastEventId);
+        if (cursor != null) {
+            List<Notification> missed = notificationMapper.findUpdatedAfter(userId, cursor, replayLimit);
+            submit(() -> missed.forEach(notification -> send(userId, emitter, notification)));
+        }
+        return emitter;
+    }
+
+    /**
+     * 广播已写入数据库的通知，事务提交后调用
+     *
+     * @param notifications 新建或合并更新过的通知
+     */
+    public void publish(List<Notification> notifications) {
+        if (notifications.isEmpty()) {
+            return;
+        }
+        try {
+            topic.publish(notifications.toArray(new Notification[0]));
+        } catch (RuntimeException e) {
+            // 推送只是加速通知送达，广播失败时客户端仍可通过重连补发或列表接口拿到
+            log.warn("广播{}条通知失败", notifications.size(), e);
+        }
+    }
+
+    /**
+     * 定时给所有连接发送心跳注释，保持代理和负载均衡上的连接不被回收，并及时清理已断开的连接
+     */
+    @Scheduled(fixedDelayString = "${notification.stream.heartbeat-interval-ms:25000}")
+    public void heartbeat() {
+        emitters.forEach((userId, set) -> set.forEach(emitter -> submit(() -> {
+            try {
+                emitter.send(SseEmitter.event().comment("ping"));
+            } catch (IOException | IllegalStateException e) {
+                remove(userId, emitter);
+            }
+        })));
+    }
+
+    /**
+     * 把广播收到的通知推送给连在本节点上的接收者
+     */
+    private void deliver(Notification[] notifications) {
+        for (Notification notification : notifications) {
+            Long userId = notification.getRecipientId();
+            Set<SseEmitter> set = emitters.get(userId);
+            if (set == null || set.isEmpty()) {
+                continue;
+            }
+            for (SseEmitter emitter : new ArrayList<>(set)) {
+                submit(() -> send(userId, emitter, notification));
+            }
+        }
+    }
+
+    private void send(Long userId, SseEmitter emitter, Notification notification) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(eventId(notification))
+                    .name(EVENT_NAME)
+                    .data(notification));
+        } catch (IOException | IllegalStateException e) {
+            remove(userId, emitter);
+        }
+    }
+
+    private void submit(Runnable task) {
+        try {
+            sender.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("推送队列已满，丢弃一次推送");
+        }
+    }
+
+    private void remove(Long userId, SseEmitter emitter) {
+        boolean[] removed = new boolean[1];
+        emitters.computeIfPresent(userId, (id, set) -> {
+            removed[0] = set.remove(emitter);
+            return set.isEmpty() ? null : set;
+        });
+        if (removed[0]) {
+            connections.decrementAndGet();
+        }
+    }
+
+    /**
+     * 事件ID，由通知的更新时间和ID组成，与补发查询的排序一致
+     * 这个顺序不是提交顺序，只用于尽力补发，见类注释
+     */
+    private static String eventId(Notification notification) {
+        return new PageCursor("latest", notification.getUpdatedAt().toString(), notification.getId()).encode();
+    }
+
+    /**
+     * 解析客户端携带的Last-Event-ID，无法识别时不补发
+     */
+    private static PageCursor parseLastEventId(String lastEventId) {
+        try {
+            return PageCursor.decode(lastEventId, "latest");
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.DTO.UnreadCountDTO;
+import com.example.videoapp.cache.SingleFlightLoader;
+import com.example.videoapp.lock.LockProvider;
+import com.example.videoapp.mapper.NotificationMapper;
+import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 用户未读通知计数器，每个用户在Redis中维护一个计数器，查询未读数只需一次GET
+ * 新通知、标记已读和全部已读都按实际变化的行数在事务提交后增减计数器，计数器未加载时不做处理；
+ * 定时对账用数据库中的未读数纠正偏差，对账期间计数器有变化时放弃本次纠正，交给下一轮
+ */
+@Component
+public class NotificationUnreadCounter {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationUnreadCounter.class);
+
+    /**
+     * 未读数在Redis中的Key前缀
+     */
+    private static final String KEY_PREFIX = "notification:unread:";
+
+    /**
+     * 对账锁，多个节点同时对账只是重复劳动，加锁只为避免浪费
+     */
+    private static final String RECONCILE_LOCK = "lock:notification:unread:reconcile";
+
+    /**
+     * 计数器存在时才增减，结果不小于0，并顺带续期
+     */
+    private static final String INCREMENT_IF_EXISTS_SCRIPT =
+            "local current = redis.call('get', KEYS[1]); "
+                    + "if not current then "
+                    + "return nil; "
+                    + "end; "
+                    + "local value = math.max(0, tonumber(current) + tonumber(ARGV[1])); "
+                    + "redis.call('set', KEYS[1], value, 'px', ARGV[2]); "
+                    + "return value;";
+
+    /**
+     * 计数器仍是对账开始时读到的值时才写入数据库中的未读数
+     */
+    private static final String COMPARE_AND_SET_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then "
+                    + "redis.call('set', KEYS[1], ARGV[2], 'px', ARGV[3]); "
+                    + "return 1; "
+                    + "end; "
+                    + "return 0;";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private NotificationMapper notificationMapper;
+
+    @Autowired
+    private SingleFlightLoader singleFlightLoader;
+
+    @Autowired
+    private LockProvider lockProvider;
+
+    /**
+     * 计数器的有效期（小时），长时间不活跃的用户过期后下次查询时重新统计
+     */
+    @Value("${notification.unread.ttl-hours:168}")
+    private long ttlHours;
+
+    /**
+     * 对账时每批扫描的计数器数量
+     */
+    @Value("${notification.unread.reconcile-chunk-size:500}")
+    private int reconcileChunkSize;
+
+    /**
+     * 获取用户的未读通知数，计数器不存在时从数据库统计
+     *
+     * @param userId 用户ID
+     * @return 未读通知数
+     */
+    public long get(Long userId) {
+        Long count = bucket(userId).get();
+        if (count != null) {
+            return count;
+        }
+        return singleFlightLoader.load(KEY_PREFIX + userId, () -> bucket(userId).get(), () -> {
+            Long loaded = notificationMapper.countUnreadByRecipientId(userId);
+            // 加载期间其他节点可能已经写入并增减了计数器，此时以已有的值为准
+            bucket(userId).setIfAbsent(loaded, ttl());
+            return loaded;
+        });
+    }
+
+    /**
+     * 增减用户的未读通知数，计数器未加载时不做处理
+     *
+     * @param userId 用户ID
+     * @param delta 增量，标记已读时为负数
+     */
+    public void increment(Long userId, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE,
+                INCREMENT_IF_EXISTS_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Collections.singletonList(KEY_PREFIX + userId),
+                String.valueOf(delta),
+                String.valueOf(ttl().toMillis()));
+    }
+
+    /**
+     * 定期用数据库中的未读数纠正已加载的计数器
+     */
+    @Scheduled(cron = "${notification.unread.reconcile-cron:0 */15 * * * *}")
+    public void reconcile() {
+        LockProvider.HeldLock lock;
+        try {
+            lock = lockProvider.tryAcquire(RECONCILE_LOCK, 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (lock == null) {
+            return;
+        }
+        try {
+            List<String> chunk = new ArrayList<>(reconcileChunkSize);
+            int corrected = 0;
+            for (String key : redissonClient.getKeys().getKeysByPattern(KEY_PREFIX + "*", reconcileChunkSize)) {
+                chunk.add(key);
+                if (chunk.size() >= reconcileChunkSize) {
+                    corrected += reconcile(chunk);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                corrected += reconcile(chunk);
+            }
+            if (corrected > 0) {
+                log.info("未读通知数对账完成，纠正了{}个用户的计数器", corrected);
+            }
+        } catch (RuntimeException e) {
+            log.warn("未读通知数对账失败", e);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * 对一批计数器对账
+     *
+     * @param keys 计数器Key
+     * @return 纠正的计数器数量
+     */
+    private int reconcile(List<String> keys) {
+        Map<String, Long> cached = redissonClient.getBuckets(LongCodec.INSTANCE).get(keys.toArray(new String[0]));
+        List<Long> userIds = cached.keySet().stream()
+                .map(key -> Long.valueOf(key.substring(KEY_PREFIX.length())))
+                .collect(Collectors.toList());
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+        Map<Long, Long> actual = notificationMapper.countUnreadByRecipientIds(userIds).stream()
+                .collect(Collectors.toMap(UnreadCountDTO::getRecipientId, UnreadCountDTO::getUnreadCount));
+
+        int corrected = 0;
+        for (Long userId : userIds) {
+            long expected = cached.get(KEY_PREFIX + userId);
+            long count = actual.getOrDefault(userId, 0L);
+            if (expected == count) {
+                continue;
+            }
+            Long result = redissonClient.getScript(StringCodec.INSTANCE).eval(
+                    RScript.Mode.READ_WRITE,
+                    COMPARE_AND_SET_SCRIPT,
+                    RScript.ReturnType.INTEGER,
+                    Collections.singletonList(KEY_PREFIX + userId),
+                    String.valueOf(expected),
+                    String.valueOf(count),
+                    String.valueOf(ttl().toMillis()));
+            if (result != null && result == 1) {
+                corrected++;
+            }
+        }
+        return corrected;
+    }
+
+    private RBucket<Long> bucket(Long userId) {
+        return redissonClient.getBucket(KEY_PREFIX + userId, LongCodec.INSTANCE);
+    }
+
+    private Duration ttl() {
+        return Duration.ofHours(ttlHours);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 密码哈希服务，BCrypt计算放在独立的有界线程池中执行，不占用Tomcat请求线程
+ * 线程数与CPU核数相同，队列满时立即拒绝并返回429，登录高峰不会拖慢其他接口
+ */
+@Service
+public class PasswordHashingService {
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 哈希线程数，0表示与CPU核数相同
+     */
+    @Value("${security.password.hash-threads:0}")
+    private int hashThreads;
+
+    /**
+     * 等待哈希的任务队列长度，超出后直接拒绝
+     */
+    @Value("${security.password.hash-queue-capacity:64}")
+    private int hashQueueCapacity;
+
+    /**
+     * 执行BCrypt计算的线程池
+     */
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(hashQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("password.hash.queue.size", executor, e -> e.getQueue().size())
+                .description("等待执行的密码哈希任务数")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 异步计算密码哈希
+     *
+     * @param rawPassword 明文密码
+     * @return 哈希结果
+     */
+    public CompletableFuture<String> encode(String rawPassword) {
+        return submit(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * 异步校验密码
+     *
+     * @param rawPassword 明文密码
+     * @param encodedPassword 数据库中的哈希
+     * @return 是否匹配
+     */
+    public CompletableFuture<Boolean> matches(String rawPassword, String encodedPassword) {
+        return submit(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * 判断已有的哈希是否低于当前配置的强度，需要在下次登录时重新哈希
+     *
+     * @param encodedPassword 数据库中的哈希
+     * @return 需要重新哈希时返回true
+     */
+    public boolean needsRehash(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            throw new TooManyRequestsException("服务繁忙，请稍后再试");
+        }
+    }
+}
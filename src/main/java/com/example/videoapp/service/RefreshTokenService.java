@@ -0,0 +1,152 @@
+package com.example.videoapp.service;
+
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucket;
+import org.redisson.api.RSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 刷新令牌服务
+ * 刷新令牌是随机字符串，Redis中只保存它的SHA-256摘要；每次刷新都会作废旧令牌并签发新令牌
+ */
+@Service
+public class RefreshTokenService {
+
+    /**
+     * 刷新令牌的Key前缀，值为"用户ID|用户名"
+     */
+    private static final String TOKEN_KEY_PREFIX = "auth:refresh:";
+
+    /**
+     * 用户持有的刷新令牌摘要集合的Key前缀，用于修改密码时全部作废
+     */
+    private static final String USER_TOKENS_KEY_PREFIX = "auth:refresh:user:";
+
+    /**
+     * 刷新令牌的随机字节数
+     */
+    private static final int TOKEN_BYTES = 32;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    /**
+     * 刷新令牌的有效期（天）
+     */
+    @Value("${jwt.refresh-expiration-days:14}")
+    private long refreshExpirationDays;
+
+    /**
+     * 为用户签发新的刷新令牌
+     *
+     * @param userId 用户ID
+     * @param username 用户名
+     * @return 刷新令牌
+     */
+    public String issue(Long userId, String username) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        String tokenHash = sha256(token);
+        Duration ttl = Duration.ofDays(refreshExpirationDays);
+
+        RBatch batch = redissonClient.createBatch();
+        batch.<String>getBucket(TOKEN_KEY_PREFIX + tokenHash, StringCodec.INSTANCE).setAsync(userId + "|" + username, refreshExpirationDays, TimeUnit.DAYS);
+        batch.<String>getSet(USER_TOKENS_KEY_PREFIX + userId, StringCodec.INSTANCE).addAsync(tokenHash);
+        batch.getSet(USER_TOKENS_KEY_PREFIX + userId, StringCodec.INSTANCE).expireAsync(ttl);
+        batch.execute();
+        return token;
+    }
+
+    /**
+     * 使用刷新令牌，令牌被原子地取出并删除，同一个令牌只能使用一次
+     *
+     * @param token 刷新令牌
+     * @return 令牌所属的用户
+     */
+    public RefreshSession consume(String token) {
+        if (token == null || token.isBlank()) {
+            throw new RuntimeException("刷新令牌无效或已过期");
+        }
+        String tokenHash = sha256(token);
+        String value = tokenBucket(tokenHash).getAndDelete();
+        if (value == null) {
+            throw new RuntimeException("刷新令牌无效或已过期");
+        }
+        int separator = value.indexOf('|');
+        Long userId = Long.valueOf(value.substring(0, separator));
+        userTokens(userId).remove(tokenHash);
+        return new RefreshSession(userId, value.substring(separator + 1));
+    }
+
+    /**
+     * 作废单个刷新令牌，用于退出登录
+     *
+     * @param token 刷新令牌
+     */
+    public void revoke(String token) {
+        if (token == null || token.isBlank()) {
+            return;
+        }
+        String tokenHash = sha256(token);
+        String value = tokenBucket(tokenHash).getAndDelete();
+        if (value != null) {
+            userTokens(Long.valueOf(value.substring(0, value.indexOf('|')))).remove(tokenHash);
+        }
+    }
+
+    /**
+     * 作废用户的全部刷新令牌，用于修改密码
+     *
+     * @param userId 用户ID
+     */
+    public void revokeAll(Long userId) {
+        RSet<String> userTokens = userTokens(userId);
+        String[] keys = userTokens.readAll().stream().map(hash -> TOKEN_KEY_PREFIX + hash).toArray(String[]::new);
+        if (keys.length > 0) {
+            redissonClient.getKeys().delete(keys);
+        }
+        userTokens.delete();
+    }
+
+    private RBucket<String> tokenBucket(String tokenHash) {
+        return redissonClient.getBucket(TOKEN_KEY_PREFIX + tokenHash, StringCodec.INSTANCE);
+    }
+
+    private RSet<String> userTokens(Long userId) {
+        return redissonClient.getSet(USER_TOKENS_KEY_PREFIX + userId, StringCodec.INSTANCE);
+    }
+
+    private static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("当前JVM不支持SHA-256", e);
+        }
+    }
+
+    /**
+     * 刷新令牌所属的用户
+     *
+     * @param userId 用户ID
+     * @param username 用户名
+     */
+    public record RefreshSession(Long userId, String username) {
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.JwtUtil;
+import com.example.videoapp.common.BloomFilter;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RMap;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.client.protocol.ScoredEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 访问令牌吊销服务
+ * 被吊销的jti以过期时间为分数保存在Redis有序集合中，每个节点在本地维护一份布隆过滤器副本，
+ * 未被吊销的令牌（绝大多数请求）只需一次本地布隆过滤器判断，不产生任何网络调用；
+ * 布隆过滤器命中时再查询Redis确认，排除误判
+ * 修改密码等需要吊销用户全部令牌的场景，记录该用户的吊销时间点（毫秒），早于该时间签发的令牌全部失效
+ */
+@Service
+public class TokenRevocationService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    /**
+     * 被吊销的jti集合，分数为令牌过期时间
+     */
+    private static final String REVOKED_TOKENS_KEY = "auth:revoked:tokens";
+
+    /**
+     * 用户ID到吊销时间点的映射
+     */
+    private static final String REVOKED_BEFORE_KEY = "auth:revoked:before";
+
+    /**
+     * 吊销事件广播频道，消息格式：T:jti或U:用户ID:吊销时间点
+     */
+    private static final String REVOCATION_TOPIC = "auth:revocation";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    /**
+     * 布隆过滤器预期容纳的吊销令牌数
+     */
+    @Value("${jwt.revocation.expected-insertions:100000}")
+    private long expectedInsertions;
+
+    /**
+     * 布隆过滤器可接受的误判率
+     */
+    @Value("${jwt.revocation.false-positive-rate:0.001}")
+    private double falsePositiveRate;
+
+    /**
+     * 本地布隆过滤器副本，定时整体重建以清除已过期的令牌
+     */
+    private volatile BloomFilter revokedTokens;
+
+    /**
+     * 正在重建的布隆过滤器，重建期间收到的吊销事件同时写入它，避免替换时丢失
+     */
+    private volatile BloomFilter rebuildingTokens;
+
+    /**
+     * 本地的用户吊销时间点副本
+     */
+    private final Map<Long, Long> revokedBefore = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅吊销事件并从Redis加载当前的吊销数据
+     */
+    @PostConstruct
+    public void init() {
+        revokedTokens = new BloomFilter(expectedInsertions, falsePositiveRate);
+        RTopic topic = redissonClient.getTopic(REVOCATION_TOPIC, StringCodec.INSTANCE);
+        topic.addListener(String.class, (channel, message) -> {
+            try {
+                applyEvent(message);
+            } catch (Exception e) {
+                log.warn("处理令牌吊销事件失败: {}", message, e);
+            }
+        });
+        reload();
+    }
+
+    /**
+     * 判断令牌是否已被吊销
+     *
+     * @param identity 令牌中的用户身份
+     * @param userId 用户ID
+     * @return 已被吊销时返回true
+     */
+    public boolean isRevoked(JwtUtil.TokenIdentity identity, Long userId) {
+        if (userId != null) {
+            Long before = revokedBefore.get(userId);
+            if (before != null && identity.issuedAt() < before) {
+                return true;
+            }
+        }
+        String tokenId = identity.tokenId();
+        if (tokenId == null || !revokedTokens.mightContain(tokenId)) {
+            return false;
+        }
+        // 布隆过滤器可能误判，命中时到Redis确认
+        return revokedTokensSet().getScore(tokenId) != null;
+    }
+
+    /**
+     * 吊销单个访问令牌，用于退出登录
+     *
+     * @param identity 令牌中的用户身份
+     */
+    public void revoke(JwtUtil.TokenIdentity identity) {
+        if (identity.tokenId() == null) {
+            return;
+        }
+        revokedTokensSet().add(identity.expiresAt(), identity.tokenId());
+        revokedTokens.put(identity.tokenId());
+        publish("T:" + identity.tokenId());
+    }
+
+    /**
+     * 吊销用户在此之前签发的全部访问令牌，用于修改密码
+     *
+     * @param userId 用户ID
+     */
+    public void revokeAll(Long userId) {
+        // 令牌带有毫秒精度的签发时间，吊销之后立即签发的新令牌（如修改密码后重新登录）不受影响；
+        // 没有该声明的旧令牌签发时间按秒取整，同一秒内签发的会被一并吊销
+        long before = System.currentTimeMillis();
+        revokedBeforeMap().put(String.valueOf(userId), String.valueOf(before));
+        revokedBefore.merge(userId, before, Math::max);
+        publish("U:" + userId + ":" + before);
+    }
+
+    /**
+     * 定时清理已过期的吊销记录并重建本地布隆过滤器，间隔与访问令牌有效期相同
+     */
+    @Scheduled(fixedDelayString = "${jwt.expiration}", initialDelayString = "${jwt.expiration}")
+    public void cleanup() {
+        long expiredBefore = System.currentTimeMillis() - jwtUtil.getExpiration();
+        revokedTokensSet().removeRangeByScore(0, true, System.currentTimeMillis(), true);
+        RMap<String, String> map = revokedBeforeMap();
+        map.readAllMap().forEach((userId, before) -> {
+            if (Long.parseLong(before) < expiredBefore) {
+                map.remove(userId, before);
+            }
+        });
+        reload();
+    }
+
+    /**
+     * 从Redis重新加载吊销数据
+     */
+    private void reload() {
+        long now = System.currentTimeMillis();
+        BloomFilter filter = new BloomFilter(expectedInsertions, falsePositiveRate);
+        rebuildingTokens = filter;
+        for (ScoredEntry<String> entry : revokedTokensSet().entryRange(now, true, Double.MAX_VALUE, true)) {
+            filter.put(entry.getValue());
+        }
+        revokedTokens = filter;
+        rebuildingTokens = null;
+
+        long expiredBefore = now - jwtUtil.getExpiration();
+        revokedBeforeMap().readAllMap().forEach((userId, before) ->
+                revokedBefore.merge(Long.valueOf(userId), Long.valueOf(before), Math::max));
+        revokedBefore.values().removeIf(before -> before < expiredBefore);
+    }
+
+    private void applyEvent(String message) {
+        if (message.startsWith("T:")) {
+            String tokenId = message.substring(2);
+            revokedTokens.put(tokenId);
+            BloomFilter rebuilding = rebuildingTokens;
+            if (rebuilding != null) {
+                rebuilding.put(tokenId);
+            }
+        } else if (message.startsWith("U:")) {
+            String[] parts = message.split(":");
+            revokedBefore.merge(Long.valueOf(parts[1]), Long.valueOf(parts[2]), Math::max);
+        }
+    }
+
+    private void publish(String message) {
+        redissonClient.getTopic(REVOCATION_TOPIC, StringCodec.INSTANCE).publish(message);
+    }
+
+    private RScoredSortedSet<String> revokedTokensSet() {
+        return redissonClient.getScoredSortedSet(REVOKED_TOKENS_KEY, StringCodec.INSTANCE);
+    }
+
+    private RMap<String, String> revokedBeforeMap() {
+        return redissonClient.getMap(REVOKED_BEFORE_KEY, StringCodec.INSTANCE);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.common.AuthUser;
+import com.example.videoapp.entity.User;
+import com.example.videoapp.mapper.UserMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+/**
+ * 解析当前请求的用户ID
+ * 新令牌中带有用户ID，直接从认证主体中读取；旧令牌只有用户名，按用户名查询一次后缓存，
+ * 用户名和用户ID的对应关系不会改变，所以缓存不需要失效
+ */
+@Service
+public class UserIdResolver {
+
+    @Autowired
+    private UserMapper userMapper;
+
+    /**
+     * 用户名到用户ID缓存最多保存的用户数量
+     */
+    @Value("${user.id-cache-max-size:100000}")
+    private long idCacheMaxSize;
+
+    /**
+     * 用户名到用户ID的缓存
+     */
+    private Cache<String, Long> userIds;
+
+    @PostConstruct
+    public void init() {
+        userIds = Caffeine.newBuilder()
+                .maximumSize(idCacheMaxSize)
+                .build();
+    }
+
+    /**
+     * 获取当前用户ID，用于可以匿名访问的接口
+     *
+     * @param authentication 认证对象
+     * @return 用户ID，未登录或用户不存在时返回null
+     */
+    public Long findUserId(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        if (authentication.getPrincipal() instanceof AuthUser authUser && authUser.getId() != null) {
+            return authUser.getId();
+        }
+        return findUserId(authentication.getName());
+    }
+
+    /**
+     * 获取当前用户ID，用于必须登录的接口
+     *
+     * @param authentication 认证对象
+     * @return 用户ID
+     */
+    public Long requireUserId(Authentication authentication) {
+        Long userId = findUserId(authentication);
+        if (userId == null) {
+            throw new RuntimeException("用户不存在");
+        }
+        return userId;
+    }
+
+    /**
+     * 按用户名解析用户ID
+     *
+     * @param username 用户名
+     * @return 用户ID，用户不存在时返回null
+     */
+    public Long findUserId(String username) {
+        Long userId = userIds.getIfPresent(username);
+        if (userId != null) {
+            return userId;
+        }
+        User user = userMapper.findByUsername(username);
+        if (user == null) {
+            return null;
+        }
+        userIds.put(username, user.getId());
+        return user.getId();
+    }
+}
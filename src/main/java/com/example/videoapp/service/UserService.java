@@ -1,30 +1,58 @@
 package com.example.videoapp.service;
 
+import com.example.videoapp.DTO.LoginResponse;
 import com.example.videoapp.DTO.RegisterRequest;
+import com.example.videoapp.DTO.UploaderDTO;
 import com.example.videoapp.DTO.UpdateUserProfileRequest;
 import com.example.videoapp.DTO.UserProfileResponse;
 import com.example.videoapp.JwtUtil;
+import com.example.videoapp.cache.ResourceVersionStore;
+import com.example.videoapp.cache.SingleFlightLoader;
 import com.example.videoapp.entity.User;
 import com.example.videoapp.mapper.UserMapper;
+import com.example.videoapp.search.UserNicknameIndex;
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Service
 public class UserService {
 
+    private static final Logger log = LoggerFactory.getLogger(UserService.class);
+
+    /**
+     * 昵称联想允许返回的最大数量
+     */
+    private static final int MAX_SUGGEST_SIZE = 20;
+
     @Autowired
     private UserMapper userMapper;
     
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private FishLedgerService fishLedgerService;
+
+    @Autowired
+    private DailyClaimTracker dailyClaimTracker;
     
     @Autowired
     private JwtUtil jwtUtil;
@@ -34,14 +62,30 @@ public class UserService {
     
     @Autowired
     private VerificationService verificationService;
+
+    @Autowired
+    private UserNicknameIndex userNicknameIndex;
+
+    @Autowired
+    private SingleFlightLoader singleFlightLoader;
+
+    @Autowired
+    private ResourceVersionStore resourceVersionStore;
+
+    /**
+     * 执行哈希完成后的数据库和Redis操作，不占用CPU密集的哈希线程
+     */
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private Executor ioExecutor;
     
     /**
-     * 注册新用户
+     * 注册新用户，密码哈希在独立线程池中异步执行
      * 
      * @param registerRequest 包含用户注册信息的请求对象
      * @return 注册成功的用户对象
      */
-    public User register(RegisterRequest registerRequest) {
+    public CompletableFuture<User> register(RegisterRequest registerRequest) {
         // 校验验证码
         boolean isCodeValid = verificationService.verifyCode(registerRequest.getEmail(), registerRequest.getVerificationCode());
         if (!isCodeValid) {
@@ -60,43 +104,132 @@ public class UserService {
             throw new RuntimeException("该邮箱已被注册");
         }
 
-        // 创建新用户
-        User user = new User();
-        user.setUsername(registerRequest.getUsername());
-        user.setNickname(registerRequest.getUsername()); // 默认昵称等于用户名
-        user.setEmail(registerRequest.getEmail());
-        user.setPassword(passwordEncoder.encode(registerRequest.getPassword()));
-        user.setCreatedAt(LocalDateTime.now());
-        user.setUpdatedAt(LocalDateTime.now());
-        user.setFishBalance(0);
-        user.setLastDailyClaim(null);
+        // 哈希线程池只做BCrypt计算，之后的数据库和Redis操作切换到I/O线程池
+        return passwordHashingService.encode(registerRequest.getPassword()).thenApplyAsync(hashedPassword -> {
+            // 创建新用户
+            User user = new User();
+            user.setUsername(registerRequest.getUsername());
+            user.setNickname(registerRequest.getUsername()); // 默认昵称等于用户名
+            user.setEmail(registerRequest.getEmail());
+            user.setPassword(hashedPassword);
+            user.setCreatedAt(LocalDateTime.now());
+            user.setUpdatedAt(LocalDateTime.now());
+            user.setFishBalance(0);
+            user.setLastDailyClaim(null);
 
-        userMapper.insert(user);
-        return user;
+            userMapper.insert(user);
+            userNicknameIndex.publishUpdate(user.getId());
+            return user;
+        }, ioExecutor);
     }
 
     /**
-     * 用户登录
+     * 用户登录，密码校验在独立线程池中异步执行
+     * 密码哈希低于当前配置的BCrypt强度时，登录成功后用明文密码重新哈希并保存
      * 
      * @param username 用户名
      * @param rawPassword 原始密码（未加密）
-     * @return JWT令牌
+     * @return 访问令牌和刷新令牌
      */
-    public String login(String username, String rawPassword) {
+    public CompletableFuture<LoginResponse> login(String username, String rawPassword) {
         User userInDb = userMapper.findByUsername(username);
-        if (userInDb != null && passwordEncoder.matches(rawPassword, userInDb.getPassword())) {
-            return jwtUtil.generateToken(userInDb.getUsername());
+        if (userInDb == null) {
+            throw new RuntimeException("用户名或密码错误");
         }
-        throw new RuntimeException("用户名或密码错误");
+        return passwordHashingService.matches(rawPassword, userInDb.getPassword()).thenApplyAsync(matched -> {
+            if (!matched) {
+                throw new RuntimeException("用户名或密码错误");
+            }
+            if (passwordHashingService.needsRehash(userInDb.getPassword())) {
+                rehash(userInDb.getId(), rawPassword, userInDb.getPassword());
+            }
+            return issueTokens(userInDb.getId(), userInDb.getUsername());
+        }, ioExecutor);
+    }
+
+    /**
+     * 用刷新令牌换取新的访问令牌和刷新令牌，旧的刷新令牌随即作废
+     * 
+     * @param refreshToken 刷新令牌
+     * @return 新的访问令牌和刷新令牌
+     */
+    public LoginResponse refresh(String refreshToken) {
+        RefreshTokenService.RefreshSession session = refreshTokenService.consume(refreshToken);
+        return issueTokens(session.userId(), session.username());
     }
 
     /**
-     * 根据用户名获取用户资料
+     * 退出登录，吊销当前访问令牌并作废刷新令牌
+     * 
+     * @param accessToken 当前访问令牌，可以为null
+     * @param refreshToken 刷新令牌，可以为null
+     */
+    public void logout(String accessToken, String refreshToken) {
+        if (accessToken != null) {
+            try {
+                tokenRevocationService.revoke(jwtUtil.parseToken(accessToken));
+            } catch (RuntimeException e) {
+                // 令牌已过期或无效，无需吊销
+                log.debug("退出登录时访问令牌无效，跳过吊销");
+            }
+        }
+        refreshTokenService.revoke(refreshToken);
+    }
+
+    /**
+     * 签发访问令牌和刷新令牌
+     * 
+     * @param userId 用户ID
+     * @param username 用户名
+     * @return 登录响应
+     */
+    private LoginResponse issueTokens(Long userId, String username) {
+        LoginResponse loginResponse = new LoginResponse();
+        loginResponse.setToken(jwtUtil.generateToken(username, userId));
+        loginResponse.setRefreshToken(refreshTokenService.issue(userId, username));
+        loginResponse.setExpiresIn(jwtUtil.getExpiration() / 1000);
+        return loginResponse;
+    }
+
+    /**
+     * 按当前强度重新哈希密码并保存，失败时只记录日志，不影响本次登录
+     * 只在密码仍是本次登录校验过的哈希时写入，不会覆盖期间修改的新密码
+     * 
+     * @param userId 用户ID
+     * @param rawPassword 明文密码
+     * @param verifiedPassword 本次登录校验通过的密码哈希
+     */
+    private void rehash(Long userId, String rawPassword, String verifiedPassword) {
+        try {
+            passwordHashingService.encode(rawPassword).thenAcceptAsync(hashedPassword ->
+                    userMapper.updatePasswordIfUnchanged(userId, hashedPassword, verifiedPassword), ioExecutor
+            ).exceptionally(e -> {
+                log.warn("用户{}的密码重新哈希失败", userId, e);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // 哈希线程池已满，等下次登录再升级
+            log.debug("哈希线程池繁忙，跳过用户{}的密码重新哈希", userId);
+        }
+    }
+
+    /**
+     * 根据用户名获取用户资料，同一用户的并发请求合并为一次查询
      * 
      * @param username 用户名
      * @return 用户资料响应对象
      */
     public UserProfileResponse getUserInfoByUsername(String username) {
+        return singleFlightLoader.load("user:profile:" + username, () -> loadUserProfile(username));
+    }
+
+    /**
+     * 从数据库加载用户资料
+     * 
+     * @param username 用户名
+     * @return 用户资料响应对象
+     */
+    private UserProfileResponse loadUserProfile(String username) {
         User userInDb = userMapper.findByUsername(username);
         if (userInDb == null) {
             throw new RuntimeException("用户 '" + username + "' 不存在");
@@ -109,10 +242,12 @@ public class UserService {
         userProfileResponse.setEmail(userInDb.getEmail());
         userProfileResponse.setCreatedAt(userInDb.getCreatedAt());
         userProfileResponse.setAvatarUrl(userInDb.getAvatarUrl());
-        userProfileResponse.setFishBalance(userInDb.getFishBalance());
+        // 鱼币账本中的余额包含尚未写入数据库的投喂
+        Integer ledgerBalance = fishLedgerService.getBalance(userInDb.getId());
+        userProfileResponse.setFishBalance(ledgerBalance != null ? ledgerBalance : userInDb.getFishBalance());
 
         LocalDate today = LocalDate.now();
-        userProfileResponse.setCanClaimDaily(userInDb.getLastDailyClaim() == null || !userInDb.getLastDailyClaim().isEqual(today));
+        userProfileResponse.setCanClaimDaily(!dailyClaimTracker.hasClaimed(userInDb.getId(), today));
 
         return userProfileResponse;
     }
@@ -124,10 +259,26 @@ public class UserService {
      * @return 用户资料响应对象
      */
     public UserProfileResponse getUserInfoByNickname(String nickname) {
+        // 昵称索引可用时先从内存中查到用户名，不再按昵称查询数据库
+        if (userNicknameIndex.isAvailable()) {
+            String username = userNicknameIndex.findUsernameByNickname(nickname);
+            if (username != null) {
+                UserProfileResponse userProfileResponse = getUserInfoByUsername(username);
+                // 索引可能错过了改名事件，资料中的昵称与查询一致时才采用
+                if (nickname.trim().equalsIgnoreCase(userProfileResponse.getNickname())) {
+                    return userProfileResponse;
+                }
+            }
+        }
+
+        // 索引不可用、未命中或已过期时以数据库为准，并通知各节点修正索引
         User userInDb = userMapper.findByNickname(nickname);
         if (userInDb == null) {
             throw new RuntimeException("昵称为 '" + nickname + "' 的用户不存在");
         }
+        if (userNicknameIndex.isAvailable()) {
+            userNicknameIndex.publishUpdate(userInDb.getId());
+        }
         return getUserInfoByUsername(userInDb.getUsername());
     }
 
@@ -154,8 +305,11 @@ public class UserService {
         
         userInDb.setUpdatedAt(LocalDateTime.now());
         userMapper.updateProfile(userInDb);
+        userNicknameIndex.publishUpdate(userInDb.getId());
+        resourceVersionStore.bumpProfileAfterCommit(username);
         
-        return getUserInfoByUsername(username);
+        // 不走合并加载，否则可能拿到更新前发起的查询结果
+        return loadUserProfile(username);
     }
 
     /**
@@ -176,6 +330,8 @@ public class UserService {
 
         user.setAvatarUrl(newAvatarUrl);
         userMapper.updateProfile(user);
+        userNicknameIndex.publishUpdate(user.getId());
+        resourceVersionStore.bumpProfileAfterCommit(username);
 
         // 在数据库更新成功后，删除旧的文件
         if (oldAvatarUrl != null && !oldAvatarUrl.isEmpty()) {
@@ -191,20 +347,30 @@ public class UserService {
      * @param username 用户名
      * @param oldPassword 旧密码
      * @param newPassword 新密码
+     * @return 修改完成时结束的Future
      */
-    public void changePassword(String username, String oldPassword, String newPassword) {
+    public CompletableFuture<Void> changePassword(String username, String oldPassword, String newPassword) {
         User user = userMapper.findByUsername(username);
         if (user == null) {
             throw new RuntimeException("用户不存在");
         }
         
-        if (!passwordEncoder.matches(oldPassword, user.getPassword())) {
-            throw new RuntimeException("旧密码错误！");
-        }
-        
-        String newHashedPassword = passwordEncoder.encode(newPassword);
-        user.setPassword(newHashedPassword);
-        userMapper.updateProfile(user);
+        return passwordHashingService.matches(oldPassword, user.getPassword())
+                .thenCompose(matched -> {
+                    if (!matched) {
+                        throw new RuntimeException("旧密码错误！");
+                    }
+                    return passwordHashingService.encode(newPassword);
+                })
+                .thenAcceptAsync(newHashedPassword -> {
+                    // 只更新密码列，并且只在密码仍是刚才校验过的哈希时生效，并发的修改只有一个成功
+                    if (userMapper.updatePasswordIfUnchanged(user.getId(), newHashedPassword, user.getPassword()) == 0) {
+                        throw new RuntimeException("密码已被修改，请重新操作");
+                    }
+                    // 密码修改后，之前签发的访问令牌和刷新令牌全部失效
+                    tokenRevocationService.revokeAll(user.getId());
+                    refreshTokenService.revokeAll(user.getId());
+                }, ioExecutor);
     }
 
     /**
@@ -221,26 +387,49 @@ public class UserService {
         return new PageInfo<>(users);
     }
 
+    /**
+     * 按昵称前缀联想用户
+     * 
+     * @param prefix 昵称前缀
+     * @param limit 最多返回的数量
+     * @return 昵称以该前缀开头的用户，索引未就绪时返回空列表
+     */
+    public List<UploaderDTO> suggestUsers(String prefix, int limit) {
+        if (!userNicknameIndex.isAvailable()) {
+            return List.of();
+        }
+        return userNicknameIndex.suggest(prefix, Math.min(Math.max(limit, 1), MAX_SUGGEST_SIZE));
+    }
+
     /**
      * 领取每日鱼币奖励
+     * 先在当天的Redis位图中原子置位，并发的重复领取在这里就被拒绝，不会读取用户行；
+     * 余额在数据库中相对增加，last_daily_claim条件作为位图丢失时的兜底
      * 
+     * @param userId 用户ID
      * @param username 用户名
      */
-    public void claimDailyFish(String username) {
-        User user = userMapper.findByUsername(username);
-        if (user == null) {
-            throw new RuntimeException("用户不存在");
-        }
-        
+    public void claimDailyFish(Long userId, String username) {
         LocalDate today = LocalDate.now();
-        if (user.getLastDailyClaim() != null && user.getLastDailyClaim().isEqual(today)) {
+        if (!dailyClaimTracker.tryMark(userId, today)) {
             throw new RuntimeException("今天已经领取过了，请明天再来！");
         }
-        
-        // 每日奖励10鱼币
+
+        // 每日奖励10鱼币，余额相对增加，不会覆盖鱼币账本异步写入的扣减
         int dailyRewardAmount = 10;
-        int newBalance = user.getFishBalance() + dailyRewardAmount;
-        userMapper.updateUserFish(user.getId(), newBalance, today);
+        int updated;
+        try {
+            // 数据库加余额和账本同步在同一把账本锁内，期间加载余额不会把这10鱼币算两次
+            updated = fishLedgerService.creditWithDatabase(userId, dailyRewardAmount,
+                    () -> userMapper.claimDailyFish(userId, dailyRewardAmount, today));
+        } catch (RuntimeException e) {
+            dailyClaimTracker.unmark(userId, today);
+            throw e;
+        }
+        if (updated == 0) {
+            throw new RuntimeException("今天已经领取过了，请明天再来！");
+        }
+        resourceVersionStore.bumpProfileAfterCommit(username);
     }
     
     /**
@@ -0,0 +1,374 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.entity.Video;
+import com.example.videoapp.mapper.VideoMapper;
+import org.redisson.api.RBatch;
+import org.redisson.api.RLock;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RScoredSortedSetAsync;
+import org.redisson.api.RScript;
+import org.redisson.api.RScriptAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 视频排行榜服务，使用Redis有序集合维护按播放量和鱼币数排序的视频榜单，
+ * 播放和投喂发生时增量更新，分页读取时不再对videos表做全表排序；
+ * 重建期间发生在已扫描视频上的增量同时记入增量榜单，替换正式榜单前合并进重建结果，不会被重建覆盖
+ */
+@Service
+public class VideoRankingService {
+
+    private static final Logger log = LoggerFactory.getLogger(VideoRankingService.class);
+
+    /**
+     * 按播放量排序的榜单Key
+     */
+    private static final String VIEWS_KEY = "video:rank:views";
+
+    /**
+     * 按鱼币数排序的榜单Key
+     */
+    private static final String POPULARITY_KEY = "video:rank:popularity";
+
+    /**
+     * 重建榜单时使用的临时Key后缀
+     */
+    private static final String REBUILD_SUFFIX = ":rebuild";
+
+    /**
+     * 重建榜单的分布式锁，避免多个节点同时重建
+     */
+    private static final String REBUILD_LOCK_KEY = "lock:video:rank:rebuild";
+
+    /**
+     * 重建期间记录增量的榜单Key后缀
+     */
+    private static final String DELTA_SUFFIX = ":delta";
+
+    /**
+     * 重建期间被删除的视频ID集合
+     */
+    private static final String REMOVED_KEY = "video:rank:rebuild:removed";
+
+    /**
+     * 重建进度，值为已扫描到的最大视频ID，不存在表示当前没有在重建
+     */
+    private static final String PROGRESS_KEY = "video:rank:rebuild:progress";
+
+    /**
+     * 重建进度的有效期，每扫描一批续期一次，重建节点宕机后自动失效
+     */
+    private static final Duration PROGRESS_TTL = Duration.ofMinutes(10);
+
+    /**
+     * 累加正式榜单分数，正在重建且该视频已被扫描过时同时记入增量榜单
+     * KEYS[1]为正式榜单，KEYS[2]为增量榜单，KEYS[3]为重建进度；ARGV[1]为视频ID，ARGV[2]为增量
+     */
+    private static final String INCREMENT_SCRIPT =
+            "redis.call('zincrby', KEYS[1], ARGV[2], ARGV[1]); "
+                    + "local progress = redis.call('get', KEYS[3]); "
+                    + "if progress and tonumber(ARGV[1]) <= tonumber(progress) then "
+                    + "redis.call('zincrby', KEYS[2], ARGV[2], ARGV[1]); "
+                    + "end; "
+                    + "return 1;";
+
+    /**
+     * 从正式榜单移除视频，正在重建时记下该视频，替换前从重建结果中移除
+     * KEYS[1]、KEYS[2]为两个正式榜单，KEYS[3]、KEYS[4]为对应的增量榜单，KEYS[5]为已删除集合，KEYS[6]为重建进度
+     */
+    private static final String REMOVE_SCRIPT =
+            "redis.call('zrem', KEYS[1], ARGV[1]); "
+                    + "redis.call('zrem', KEYS[2], ARGV[1]); "
+                    + "if redis.call('exists', KEYS[6]) == 1 then "
+                    + "redis.call('zrem', KEYS[3], ARGV[1]); "
+                    + "redis.call('zrem', KEYS[4], ARGV[1]); "
+                    + "redis.call('sadd', KEYS[5], ARGV[1]); "
+                    + "end; "
+                    + "return 1;";
+
+    /**
+     * 把增量合并进重建结果、移除重建期间删除的视频后替换正式榜单，重建结果为空时删除正式榜单
+     * KEYS依次为播放量的临时、增量、正式榜单，鱼币数的临时、增量、正式榜单，已删除集合，重建进度
+     */
+    private static final String SWAP_SCRIPT =
+            "local removed = redis.call('smembers', KEYS[7]); "
+                    + "for i = 1, 4, 3 do "
+                    + "redis.call('zunionstore', KEYS[i], 2, KEYS[i], KEYS[i + 1]); "
+                    + "for _, id in ipairs(removed) do "
+                    + "redis.call('zrem', KEYS[i], id); "
+                    + "end; "
+                    + "if redis.call('exists', KEYS[i]) == 1 then "
+                    + "redis.call('rename', KEYS[i], KEYS[i + 2]); "
+                    + "else "
+                    + "redis.call('del', KEYS[i + 2]); "
+                    + "end; "
+                    + "redis.call('del', KEYS[i + 1]); "
+                    + "end; "
+                    + "redis.call('del', KEYS[7], KEYS[8]); "
+                    + "return 1;";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private VideoMapper videoMapper;
+
+    /**
+     * 重建榜单时每批从数据库读取的视频数量
+     */
+    @Value("${video.ranking.rebuild-chunk-size:1000}")
+    private int rebuildChunkSize;
+
+    /**
+     * 判断指定的排序方式是否由排行榜支持
+     *
+     * @param sortBy 排序方式
+     * @return views或popularity时返回true
+     */
+    public boolean supports(String sortBy) {
+        return "views".equals(sortBy) || "popularity".equals(sortBy);
+    }
+
+    /**
+     * 分页读取榜单，返回当前页的视频ID和榜单总数
+     *
+     * @param sortBy 排序方式（views或popularity）
+     * @param page 页码，从1开始
+     * @param size 每页大小
+     * @return 当前页的视频ID，榜单为空（未建立或已被淘汰）时返回null，调用方应回退到数据库查询
+     */
+    public RankPage findPage(String sortBy, int page, int size) {
+        int start = Math.max(page - 1, 0) * size;
+        RBatch batch = redissonClient.createBatch();
+        RScoredSortedSetAsync<Long> set = batch.getScoredSortedSet(keyOf(sortBy), LongCodec.INSTANCE);
+        set.sizeAsync();
+        set.valueRangeReversedAsync(start, start + size - 1);
+        List<?> responses = batch.execute().getResponses();
+
+        int total = ((Number) responses.get(0)).intValue();
+        if (total == 0) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Collection<Long> ids = (Collection<Long>) responses.get(1);
+        return new RankPage(new ArrayList<>(ids), total);
+    }
+
+    /**
+     * 按ID一次性查询视频并按榜单顺序排列，已被删除的视频会被跳过
+     *
+     * @param ids 榜单中的视频ID
+     * @return 与ID顺序一致的视频列表
+     */
+    public List<Video> hydrate(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Video> videoById = videoMapper.findByIds(ids).stream()
+                .collect(Collectors.toMap(Video::getId, Function.identity()));
+        List<Video> videos = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Video video = videoById.get(id);
+            if (video != null) {
+                videos.add(video);
+            }
+        }
+        return videos;
+    }
+
+    /**
+     * 批量累加播放量榜单分数，在播放量写回数据库后调用
+     *
+     * @param deltas 视频ID到播放增量的映射
+     */
+    public void incrementViews(Map<Long, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        RScriptAsync script = batch.getScript(StringCodec.INSTANCE);
+        deltas.forEach((videoId, delta) -> incrementAsync(script, VIEWS_KEY, videoId, delta));
+        batch.execute();
+    }
+
+    /**
+     * 累加鱼币榜单分数
+     *
+     * @param videoId 视频ID
+     * @param delta 增加的鱼币数
+     */
+    public void incrementFish(Long videoId, long delta) {
+        RBatch batch = redissonClient.createBatch();
+        incrementAsync(batch.getScript(StringCodec.INSTANCE), POPULARITY_KEY, videoId, delta);
+        batch.execute();
+    }
+
+    /**
+     * 新视频加入榜单
+     *
+     * @param videoId 视频ID
+     */
+    public void add(Long videoId) {
+        RBatch batch = redissonClient.createBatch();
+        RScriptAsync script = batch.getScript(StringCodec.INSTANCE);
+        incrementAsync(script, VIEWS_KEY, videoId, 0);
+        incrementAsync(script, POPULARITY_KEY, videoId, 0);
+        batch.execute();
+    }
+
+    /**
+     * 从榜单中移除视频
+     *
+     * @param videoId 视频ID
+     */
+    public void remove(Long videoId) {
+        redissonClient.getScript(StringCodec.INSTANCE).eval(
+                RScript.Mode.READ_WRITE,
+                REMOVE_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Arrays.asList(VIEWS_KEY, POPULARITY_KEY, VIEWS_KEY + DELTA_SUFFIX, POPULARITY_KEY + DELTA_SUFFIX,
+                        REMOVED_KEY, PROGRESS_KEY),
+                String.valueOf(videoId));
+    }
+
+    /**
+     * 应用启动完成后，如果榜单不存在则从数据库重建
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (!viewsSet().isExists() || !popularitySet().isExists()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 定时从数据库重建榜单，纠正增量更新过程中可能产生的偏差
+     */
+    @Scheduled(cron = "${video.ranking.rebuild-cron:0 30 4 * * *}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * 分批读取数据库写入临时榜单，全部写完后合并重建期间的增量并原子替换正式榜单
+     */
+    public void rebuild() {
+        RLock lock = redissonClient.getLock(REBUILD_LOCK_KEY);
+        if (!lock.tryLock()) {
+            log.info("其他节点正在重建视频排行榜，跳过本次重建");
+            return;
+        }
+        String viewsTemp = VIEWS_KEY + REBUILD_SUFFIX;
+        String popularityTemp = POPULARITY_KEY + REBUILD_SUFFIX;
+        try {
+            redissonClient.getKeys().delete(viewsTemp, popularityTemp,
+                    VIEWS_KEY + DELTA_SUFFIX, POPULARITY_KEY + DELTA_SUFFIX, REMOVED_KEY);
+            updateProgress(0);
+
+            long lastId = 0;
+            int total = 0;
+            while (true) {
+                List<Video> chunk = videoMapper.findRankScoresAfterId(lastId, rebuildChunkSize);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                Map<Long, Double> viewScores = new HashMap<>();
+                Map<Long, Double> popularityScores = new HashMap<>();
+                for (Video video : chunk) {
+                    viewScores.put(video.getId(), video.getViewCount() == null ? 0d : video.getViewCount());
+                    popularityScores.put(video.getId(), video.getFishCount() == null ? 0d : video.getFishCount());
+                }
+                redissonClient.<Long>getScoredSortedSet(viewsTemp, LongCodec.INSTANCE).addAll(viewScores);
+                redissonClient.<Long>getScoredSortedSet(popularityTemp, LongCodec.INSTANCE).addAll(popularityScores);
+
+                total += chunk.size();
+                lastId = chunk.get(chunk.size() - 1).getId();
+                // 之后这批视频上的增量不会再体现在数据库读取结果中，改为记入增量榜单
+                updateProgress(lastId);
+                if (chunk.size() < rebuildChunkSize) {
+                    break;
+                }
+            }
+            // 扫描结束后新上传的视频也不在重建结果中，同样记入增量榜单
+            updateProgress(Long.MAX_VALUE);
+
+            redissonClient.getScript(StringCodec.INSTANCE).eval(
+                    RScript.Mode.READ_WRITE,
+                    SWAP_SCRIPT,
+                    RScript.ReturnType.INTEGER,
+                    Arrays.asList(viewsTemp, VIEWS_KEY + DELTA_SUFFIX, VIEWS_KEY,
+                            popularityTemp, POPULARITY_KEY + DELTA_SUFFIX, POPULARITY_KEY,
+                            REMOVED_KEY, PROGRESS_KEY));
+            log.info("视频排行榜重建完成，共{}个视频", total);
+        } finally {
+            redissonClient.getKeys().delete(PROGRESS_KEY, viewsTemp, popularityTemp,
+                    VIEWS_KEY + DELTA_SUFFIX, POPULARITY_KEY + DELTA_SUFFIX, REMOVED_KEY);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 更新重建进度并续期
+     *
+     * @param lastId 已扫描到的最大视频ID
+     */
+    private void updateProgress(long lastId) {
+        redissonClient.getBucket(PROGRESS_KEY, StringCodec.INSTANCE).set(String.valueOf(lastId), PROGRESS_TTL);
+    }
+
+    /**
+     * 在批处理中追加一次榜单累加
+     */
+    private static void incrementAsync(RScriptAsync script, String key, Long videoId, long delta) {
+        script.evalAsync(
+                RScript.Mode.READ_WRITE,
+                INCREMENT_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                Arrays.asList(key, key + DELTA_SUFFIX, PROGRESS_KEY),
+                String.valueOf(videoId),
+                String.valueOf(delta));
+    }
+
+    private RScoredSortedSet<Long> viewsSet() {
+        return redissonClient.getScoredSortedSet(VIEWS_KEY, LongCodec.INSTANCE);
+    }
+
+    private RScoredSortedSet<Long> popularitySet() {
+        return redissonClient.getScoredSortedSet(POPULARITY_KEY, LongCodec.INSTANCE);
+    }
+
+    private String keyOf(String sortBy) {
+        return "views".equals(sortBy) ? VIEWS_KEY : POPULARITY_KEY;
+    }
+
+    /**
+     * 榜单分页结果
+     *
+     * @param videoIds 当前页的视频ID，按榜单顺序
+     * @param total 榜单中的视频总数
+     */
+    public record RankPage(List<Long> videoIds, int total) {
+    }
+}
@@ -1,36 +1,71 @@
 package com.example.videoapp.service;
 
+import com.example.videoapp.DTO.CursorPage;
+import com.example.videoapp.DTO.VideoBatchDTO;
 import com.example.videoapp.DTO.VideoDetailDTO;
-import com.example.videoapp.entity.User;
+import com.example.videoapp.cache.CommentCountCache;
+import com.example.videoapp.cache.FishFedCache;
+import com.example.videoapp.cache.RecentCommentsCache;
+import com.example.videoapp.cache.ResourceVersionStore;
+import com.example.videoapp.cache.VideoDetailCache;
+import com.example.videoapp.common.PageCursor;
+import com.example.videoapp.common.TransactionUtils;
 import com.example.videoapp.entity.Video;
 import com.example.videoapp.mapper.CommentMapper;
 import com.example.videoapp.mapper.FishTransactionMapper;
-import com.example.videoapp.mapper.UserMapper;
 import com.example.videoapp.mapper.VideoMapper;
+import com.example.videoapp.search.VideoSearchIndex;
+import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.CachePut;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import com.example.videoapp.config.RabbitMQConfig;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 public class VideoService {
 
+    private static final Logger log = LoggerFactory.getLogger(VideoService.class);
+
+    /**
+     * 列表总数缓存的Key前缀
+     */
+    private static final String COUNT_KEY_PREFIX = "video:count:";
+
+    /**
+     * 列表总数缓存的有效期（秒）
+     */
+    private static final long COUNT_CACHE_SECONDS = 60;
+
+    /**
+     * 游标分页允许的最大每页大小
+     */
+    private static final int MAX_PAGE_SIZE = 100;
+
     @Autowired
     private VideoMapper videoMapper;
     
-    @Autowired
-    private UserMapper userMapper;
-    
     @Autowired
     private TencentCosService tencentCosService;
     
@@ -39,33 +74,123 @@ public class VideoService {
     
     @Autowired
     private CommentMapper commentMapper;
+
+    @Autowired
+    private CommentCountCache commentCountCache;
+
+    @Autowired
+    private RecentCommentsCache recentCommentsCache;
     
     @Autowired
     private FishTransactionMapper fishTransactionMapper;
 
+    @Autowired
+    private ViewCountService viewCountService;
+
+    @Autowired
+    private VideoDetailCache videoDetailCache;
+
+    @Autowired
+    private FishFedCache fishFedCache;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private VideoRankingService videoRankingService;
+
+    @Autowired
+    private VideoSearchIndex videoSearchIndex;
+
+    @Autowired
+    private ResourceVersionStore resourceVersionStore;
+
     /**
      * 获取视频详情并更新播放量
      * 
      * @param videoId 视频ID
-     * @param currentUsername 当前用户名
+     * @param currentUserId 当前用户ID，未登录时为null
      * @return 视频详情DTO
      */
-    @CachePut(value = "video:detail", key = "#videoId", unless = "#result == null")
-    public VideoDetailDTO findVideoDetailById(Long videoId, String currentUsername) {
-        // 更新数据库的播放量
-        videoMapper.incrementViewCount(videoId);
-
-        // 获取当前用户ID
-        Long currentUserId = null;
-        if (currentUsername != null) {
-            User currentUser = userMapper.findByUsername(currentUsername);
-            if (currentUser != null) {
-                currentUserId = currentUser.getId();
+    public VideoDetailDTO findVideoDetailById(Long videoId, Long currentUserId) {
+        // 共享的视频详情走两级缓存，不包含任何与当前用户相关的数据
+        VideoDetailDTO cached = videoDetailCache.get(videoId, videoMapper::findByIdWithUploader);
+        if (cached == null) {
+            return null;
+        }
+
+        // 播放量先在内存中累加，由ViewCountService定时批量写回数据库
+        viewCountService.recordView(videoId);
+
+        // 缓存中的对象被所有请求共享，复制一份再填充当前请求的数据
+        VideoDetailDTO videoDetail = new VideoDetailDTO();
+        BeanUtils.copyProperties(cached, videoDetail);
+        videoDetail.setViewCount(viewCountService.withPendingViews(videoId, cached.getViewCount()));
+
+        // 当前用户是否已投喂过该视频，由独立的投喂关系缓存回答
+        if (currentUserId != null) {
+            videoDetail.setFishFed(fishFedCache.isFed(currentUserId, videoId));
+        }
+        return videoDetail;
+    }
+
+    /**
+     * 只记录一次播放，用于客户端缓存仍然有效、不需要返回详情的请求
+     *
+     * @param videoId 视频ID
+     */
+    public void recordView(Long videoId) {
+        viewCountService.recordView(videoId);
+    }
+
+    /**
+     * 批量获取视频详情，用于列表页一次性渲染多个视频卡片
+     * 缓存只做一次批量读取，未命中的视频用一次联表查询加载；不增加播放量
+     *
+     * @param videoIds 视频ID列表
+     * @param currentUserId 当前用户ID，未登录时为null
+     * @return 按请求顺序排列的视频详情和不存在的视频ID
+     */
+    public VideoBatchDTO findVideoDetailsByIds(List<Long> videoIds, Long currentUserId) {
+        Map<Long, VideoDetailDTO> cached = videoDetailCache.getAll(videoIds, ids ->
+                videoMapper.findDetailsByIds(ids).stream()
+                        .collect(Collectors.toMap(VideoDetailDTO::getId, Function.identity())));
+        Set<Long> fedVideoIds = findFedVideoIds(new ArrayList<>(cached.keySet()), currentUserId);
+
+        List<VideoDetailDTO> videos = new ArrayList<>(videoIds.size());
+        List<Long> missingIds = new ArrayList<>();
+        for (Long videoId : videoIds) {
+            VideoDetailDTO shared = cached.get(videoId);
+            if (shared == null) {
+                missingIds.add(videoId);
+                continue;
             }
+            // 缓存中的对象被所有请求共享，复制一份再填充当前请求的数据
+            VideoDetailDTO videoDetail = new VideoDetailDTO();
+            BeanUtils.copyProperties(shared, videoDetail);
+            videoDetail.setViewCount(viewCountService.withPendingViews(videoId, shared.getViewCount()));
+            videoDetail.setFishFed(fedVideoIds.contains(videoId));
+            videos.add(videoDetail);
         }
 
-        // 返回最新数据，@CachePut会自动用这份新数据覆盖Redis中的旧数据
-        return videoMapper.findByIdWithUploader(videoId, currentUserId);
+        VideoBatchDTO batch = new VideoBatchDTO();
+        batch.setVideos(videos);
+        batch.setMissingIds(missingIds);
+        return batch;
+    }
+
+    /**
+     * 批量查询当前用户投喂过哪些视频
+     *
+     * @param videoIds 候选视频ID
+     * @param currentUserId 当前用户ID，未登录时为null
+     * @return 当前用户投喂过的视频ID集合
+     */
+    public Set<Long> findFedVideoIds(List<Long> videoIds, Long currentUserId) {
+        if (currentUserId == null || videoIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return fishFedCache.findFedVideoIds(currentUserId, videoIds);
     }
 
     /**
@@ -75,18 +200,14 @@ public class VideoService {
      * @param coverFile 封面文件
      * @param title 视频标题
      * @param description 视频描述
-     * @param username 上传用户名
+     * @param userId 上传用户ID
      * @return 创建的视频对象
      */
-    public Video uploadVideo(MultipartFile file, MultipartFile coverFile, String title, String description, String username) {
+    public Video uploadVideo(MultipartFile file, MultipartFile coverFile, String title, String description, Long userId) {
         String videoUrl = tencentCosService.uploadFile(file, "videos/");
-        User user = userMapper.findByUsername(username);
-        if (user == null) { 
-            throw new RuntimeException("找不到当前用户"); 
-        }
         
         Video video = new Video();
-        video.setUserId(user.getId());
+        video.setUserId(userId);
         video.setTitle(title);
         video.setDescription(description);
         video.setVideoUrl(videoUrl);
@@ -105,6 +226,9 @@ public class VideoService {
         // 发送消息到RabbitMQ进行异步处理
         Long newVideoId = video.getId();
         if (newVideoId != null) {
+            videoRankingService.add(newVideoId);
+            videoSearchIndex.publishUpsert(newVideoId);
+
             rabbitTemplate.convertAndSend(
                     RabbitMQConfig.VIDEO_EXCHANGE_NAME,
                     RabbitMQConfig.VIDEO_ROUTING_KEY,
@@ -119,18 +243,16 @@ public class VideoService {
      * 删除视频
      * 
      * @param videoId 视频ID
-     * @param username 操作用户名
+     * @param userId 操作用户ID
      */
-    @CacheEvict(value = "video:detail", key = "#videoId")
     @Transactional
-    public void deleteVideo(Long videoId, String username) {
+    public void deleteVideo(Long videoId, Long userId) {
         Video video = videoMapper.findById(videoId);
         if (video == null) { 
             throw new RuntimeException("视频不存在，无法删除！"); 
         }
         
-        User user = userMapper.findByUsername(username);
-        if (user == null || !Objects.equals(video.getUserId(), user.getId())) { 
+        if (!Objects.equals(video.getUserId(), userId)) { 
             throw new RuntimeException("你无权删除该视频"); 
         }
 
@@ -141,6 +263,15 @@ public class VideoService {
         commentMapper.deleteByVideoId(videoId);
         fishTransactionMapper.deleteByVideoId(videoId);
         videoMapper.deleteById(videoId);
+        TransactionUtils.afterCommit(() -> viewCountService.discard(videoId));
+        videoDetailCache.invalidateAfterCommit(videoId);
+        resourceVersionStore.bumpVideoAfterCommit(videoId);
+        TransactionUtils.afterCommit(() -> resourceVersionStore.bumpComments(videoId));
+        TransactionUtils.afterCommit(() -> commentCountCache.evict(videoId));
+        TransactionUtils.afterCommit(() -> recentCommentsCache.evict(videoId));
+        TransactionUtils.afterCommit(() -> fishFedCache.evict(videoId));
+        TransactionUtils.afterCommit(() -> videoRankingService.remove(videoId));
+        TransactionUtils.afterCommit(() -> videoSearchIndex.publishDelete(videoId));
 
         // 删除存储的文件
         if (videoUrl != null && !videoUrl.isEmpty()) {
@@ -159,23 +290,17 @@ public class VideoService {
      * @param title 标题
      * @param description 描述
      * @param coverFile 新的封面文件
-     * @param username 操作用户名
+     * @param userId 操作用户ID
      * @return 更新后的视频对象
      */
-    @CacheEvict(value = "video:detail", key = "#videoId")
     @Transactional
-    public Video updateVideo(Long videoId, String title, String description, MultipartFile coverFile, String username) {
-        User currentUser = userMapper.findByUsername(username);
-        if (currentUser == null) { 
-            throw new RuntimeException("用户不存在"); 
-        }
-        
+    public Video updateVideo(Long videoId, String title, String description, MultipartFile coverFile, Long userId) {
         Video videoToUpdate = videoMapper.findById(videoId);
         if (videoToUpdate == null) { 
             throw new RuntimeException("视频不存在"); 
         }
         
-        if (!Objects.equals(videoToUpdate.getUserId(), currentUser.getId())) {
+        if (!Objects.equals(videoToUpdate.getUserId(), userId)) {
             throw new RuntimeException("无权修改该视频");
         }
         
@@ -206,6 +331,9 @@ public class VideoService {
         if (hasChanges) {
             videoToUpdate.setUpdatedAt(LocalDateTime.now());
             videoMapper.update(videoToUpdate);
+            videoDetailCache.invalidateAfterCommit(videoId);
+            resourceVersionStore.bumpVideoAfterCommit(videoId);
+            TransactionUtils.afterCommit(() -> videoSearchIndex.publishUpsert(videoId));
         }
         
         return videoToUpdate;
@@ -220,11 +348,42 @@ public class VideoService {
      * @return 分页视频列表
      */
     public PageInfo<Video> findAllVideosPaginated(int page, int size, String sortBy) {
+        // 按播放量和鱼币数排序时优先读取Redis排行榜，榜单不可用时回退到数据库排序
+        if (videoRankingService.supports(sortBy)) {
+            VideoRankingService.RankPage rankPage = videoRankingService.findPage(sortBy, page, size);
+            if (rankPage != null) {
+                List<Video> videos = videoRankingService.hydrate(rankPage.videoIds());
+                viewCountService.applyPendingViews(videos);
+                Page<Video> result = new Page<>(page, size);
+                result.setTotal(rankPage.total());
+                result.addAll(videos);
+                return new PageInfo<>(result);
+            }
+        }
+
         PageHelper.startPage(page, size);
         List<Video> videos = videoMapper.findAll(sortBy);
+        viewCountService.applyPendingViews(videos);
         return new PageInfo<>(videos);
     }
 
+    /**
+     * 按游标分页获取视频列表
+     * 
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @param size 每页大小
+     * @param sortBy 排序方式
+     * @param withTotal 是否返回总数（总数走缓存，不会每页都执行COUNT）
+     * @return 游标分页结果
+     */
+    public CursorPage<Video> findAllVideosByCursor(String cursor, int size, String sortBy, boolean withTotal) {
+        String normalizedSortBy = PageCursor.normalizeSortBy(sortBy);
+        int pageSize = normalizePageSize(size);
+        List<Video> rows = videoMapper.findAllByCursor(normalizedSortBy, PageCursor.decode(cursor, normalizedSortBy), pageSize + 1);
+        Long total = withTotal ? cachedCount(COUNT_KEY_PREFIX + "all", videoMapper::countAll) : null;
+        return toCursorPage(rows, pageSize, normalizedSortBy, total);
+    }
+
     /**
      * 根据关键词搜索视频
      * 
@@ -235,11 +394,46 @@ public class VideoService {
      * @return 分页视频列表
      */
     public PageInfo<Video> searchVideos(String keyword, int page, int size, String sortBy) {
+        // 索引可用时走进程内倒排索引，索引未构建完成或查询出错时回退到数据库LIKE查询
+        if (videoSearchIndex.isAvailable()) {
+            try {
+                VideoSearchIndex.SearchResult searchResult = videoSearchIndex.search(keyword, sortBy, page, size);
+                List<Video> videos = videoRankingService.hydrate(searchResult.videoIds());
+                viewCountService.applyPendingViews(videos);
+                Page<Video> result = new Page<>(page, size);
+                result.setTotal(searchResult.total());
+                result.addAll(videos);
+                return new PageInfo<>(result);
+            } catch (Exception e) {
+                log.warn("搜索索引查询失败，回退到数据库查询: {}", keyword, e);
+            }
+        }
+
         PageHelper.startPage(page, size);
         List<Video> videos = videoMapper.searchByTitle(keyword, sortBy);
+        viewCountService.applyPendingViews(videos);
         return new PageInfo<>(videos);
     }
 
+    /**
+     * 按游标分页搜索视频
+     * 
+     * @param keyword 搜索关键词
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @param size 每页大小
+     * @param sortBy 排序方式
+     * @param withTotal 是否返回总数
+     * @return 游标分页结果
+     */
+    public CursorPage<Video> searchVideosByCursor(String keyword, String cursor, int size, String sortBy, boolean withTotal) {
+        String normalizedSortBy = PageCursor.normalizeSortBy(sortBy);
+        int pageSize = normalizePageSize(size);
+        List<Video> rows = videoMapper.searchByTitleByCursor(keyword, normalizedSortBy,
+                PageCursor.decode(cursor, normalizedSortBy), pageSize + 1);
+        Long total = withTotal ? cachedCount(COUNT_KEY_PREFIX + "search:" + keyword, () -> videoMapper.countByTitle(keyword)) : null;
+        return toCursorPage(rows, pageSize, normalizedSortBy, total);
+    }
+
     /**
      * 获取指定用户的视频列表
      * 
@@ -251,6 +445,81 @@ public class VideoService {
     public PageInfo<Video> findVideosByUserIdPaginated(Long userId, int page, int size) {
         PageHelper.startPage(page, size);
         List<Video> videos = videoMapper.findByUserId(userId);
+        viewCountService.applyPendingViews(videos);
         return new PageInfo<>(videos);
     }
-}
\ No newline at end of file
+
+    /**
+     * 按游标分页获取指定用户的视频列表，按上传时间倒序
+     * 
+     * @param userId 用户ID
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @param size 每页大小
+     * @param withTotal 是否返回总数
+     * @return 游标分页结果
+     */
+    public CursorPage<Video> findVideosByUserIdByCursor(Long userId, String cursor, int size, boolean withTotal) {
+        int pageSize = normalizePageSize(size);
+        List<Video> rows = videoMapper.findByUserIdByCursor(userId, PageCursor.decode(cursor, "latest"), pageSize + 1);
+        Long total = withTotal ? cachedCount(COUNT_KEY_PREFIX + "user:" + userId, () -> videoMapper.countByUserId(userId)) : null;
+        return toCursorPage(rows, pageSize, "latest", total);
+    }
+
+    /**
+     * 把多查询一条的结果转换为游标分页结果
+     * 
+     * @param rows 查询结果，最多比页大小多一条，用来判断是否还有下一页
+     * @param pageSize 每页大小
+     * @param sortBy 排序方式
+     * @param total 总数，可为null
+     * @return 游标分页结果
+     */
+    private CursorPage<Video> toCursorPage(List<Video> rows, int pageSize, String sortBy, Long total) {
+        boolean hasMore = rows.size() > pageSize;
+        List<Video> videos = hasMore ? new ArrayList<>(rows.subList(0, pageSize)) : rows;
+
+        CursorPage<Video> page = new CursorPage<>();
+        if (hasMore) {
+            // 游标必须基于数据库中的排序键生成，因此要在叠加待写回播放量之前计算
+            Video last = videos.get(videos.size() - 1);
+            String sortValue = switch (sortBy) {
+                case "views" -> String.valueOf(last.getViewCount());
+                case "popularity" -> String.valueOf(last.getFishCount());
+                default -> last.getCreatedAt().toString();
+            };
+            page.setNextCursor(new PageCursor(sortBy, sortValue, last.getId()).encode());
+        }
+        viewCountService.applyPendingViews(videos);
+        page.setList(videos);
+        page.setHasMore(hasMore);
+        page.setTotal(total);
+        return page;
+    }
+
+    /**
+     * 读取缓存的计数，缓存未命中时执行COUNT并缓存一段时间
+     * 
+     * @param key 缓存Key
+     * @param counter 计数查询
+     * @return 计数结果
+     */
+    private Long cachedCount(String key, Supplier<Long> counter) {
+        RBucket<Long> bucket = redissonClient.getBucket(key, LongCodec.INSTANCE);
+        Long count = bucket.get();
+        if (count == null) {
+            count = counter.get();
+            bucket.set(count, COUNT_CACHE_SECONDS, TimeUnit.SECONDS);
+        }
+        return count;
+    }
+
+    /**
+     * 限制游标分页的每页大小
+     * 
+     * @param size 请求的每页大小
+     * @return 规范化后的每页大小
+     */
+    private int normalizePageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.cache.ResourceVersionStore;
+import com.example.videoapp.cache.VideoDetailCache;
+import com.example.videoapp.entity.Video;
+import com.example.videoapp.mapper.VideoMapper;
+import com.example.videoapp.search.VideoSearchIndex;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 播放量聚合服务，在内存中累加播放次数并定时批量写回数据库（write-behind）
+ * 避免热门视频的每次播放都对同一行执行UPDATE造成行锁竞争
+ */
+@Service
+public class ViewCountService {
+
+    private static final Logger log = LoggerFactory.getLogger(ViewCountService.class);
+
+    @Autowired
+    private VideoMapper videoMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private VideoDetailCache videoDetailCache;
+
+    @Autowired
+    private VideoRankingService videoRankingService;
+
+    @Autowired
+    private VideoSearchIndex videoSearchIndex;
+
+    @Autowired
+    private ResourceVersionStore resourceVersionStore;
+
+    /**
+     * 每个视频待写回的播放增量，LongAdder内部分段计数，高并发下没有单点竞争
+     */
+    private final ConcurrentHashMap<Long, LongAdder> pendingDeltas = new ConcurrentHashMap<>();
+
+    /**
+     * 最早一次尚未写回的播放记录时间（毫秒），0表示当前没有待写回的增量
+     */
+    private final AtomicLong oldestPendingAt = new AtomicLong(0);
+
+    /**
+     * 单次写回涉及的视频数量
+     */
+    private DistributionSummary flushSizeSummary;
+
+    /**
+     * 单次写回耗时
+     */
+    private Timer flushTimer;
+
+    /**
+     * 播放记录从产生到写回数据库的最大延迟
+     */
+    private Timer flushLagTimer;
+
+    /**
+     * 注册写回相关的监控指标
+     */
+    @PostConstruct
+    public void initMetrics() {
+        this.flushSizeSummary = DistributionSummary.builder("video.view_count.flush.size")
+                .description("单次批量写回的视频数量")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("video.view_count.flush.duration")
+                .description("批量写回播放量的耗时")
+                .register(meterRegistry);
+        this.flushLagTimer = Timer.builder("video.view_count.flush.lag")
+                .description("最早一条未写回播放记录的等待时间")
+                .register(meterRegistry);
+        meterRegistry.gauge("video.view_count.pending.videos", pendingDeltas, Map::size);
+    }
+
+    /**
+     * 记录一次播放，只在内存中累加
+     *
+     * @param videoId 视频ID
+     */
+    public void recordView(Long videoId) {
+        if (videoId == null) {
+            return;
+        }
+        addPending(videoId, 1);
+        oldestPendingAt.compareAndSet(0, System.currentTimeMillis());
+    }
+
+    /**
+     * 获取指定视频尚未写回数据库的播放增量
+     *
+     * @param videoId 视频ID
+     * @return 待写回的播放次数
+     */
+    public long getPendingViews(Long videoId) {
+        LongAdder adder = pendingDeltas.get(videoId);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * 在数据库中的播放量基础上叠加尚未写回的增量
+     *
+     * @param videoId 视频ID
+     * @param persistedViewCount 数据库中的播放量
+     * @return 对外展示的播放量
+     */
+    public Long withPendingViews(Long videoId, Long persistedViewCount) {
+        long base = persistedViewCount == null ? 0 : persistedViewCount;
+        return base + getPendingViews(videoId);
+    }
+
+    /**
+     * 为视频列表中的每个视频叠加尚未写回的播放增量
+     *
+     * @param videos 视频列表
+     */
+    public void applyPendingViews(List<Video> videos) {
+        if (pendingDeltas.isEmpty()) {
+            return;
+        }
+        for (Video video : videos) {
+            video.setViewCount(withPendingViews(video.getId(), video.getViewCount()));
+        }
+    }
+
+    /**
+     * 丢弃指定视频的待写回增量（视频被删除时调用）
+     *
+     * @param videoId 视频ID
+     */
+    public void discard(Long videoId) {
+        pendingDeltas.remove(videoId);
+    }
+
+    /**
+     * 定时把累积的播放增量合并成一条多行UPDATE写回数据库
+     */
+    @Scheduled(fixedDelayString = "${video.view-count.flush-interval-ms:5000}")
+    public void flush() {
+        long oldest = oldestPendingAt.getAndSet(0);
+        if (oldest == 0) {
+            return;
+        }
+
+        // 取出每个视频的增量并清零，清零之后到达的播放会计入下一轮
+        Map<Long, Long> deltas = new HashMap<>();
+        pendingDeltas.forEach((videoId, adder) -> {
+            long delta = adder.sumThenReset();
+            if (delta > 0) {
+                deltas.put(videoId, delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            videoMapper.batchIncrementViewCount(deltas);
+            flushSizeSummary.record(deltas.size());
+            flushLagTimer.record(Duration.ofMillis(System.currentTimeMillis() - oldest));
+        } catch (Exception e) {
+            // 写回失败时把增量加回去，等待下一轮重试
+            log.error("批量写回播放量失败，{}个视频的增量将在下一轮重试", deltas.size(), e);
+            deltas.forEach(this::addPending);
+            oldestPendingAt.compareAndSet(0, oldest);
+            return;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        removeIdleAdders();
+
+        // 已写回的增量不再计入待写回部分，在缓存的播放量上原地累加，并同步到排行榜和搜索索引
+        try {
+            videoDetailCache.addViews(deltas);
+            resourceVersionStore.bumpVideos(deltas.keySet());
+            videoRankingService.incrementViews(deltas);
+            videoSearchIndex.publishViews(deltas);
+        } catch (Exception e) {
+            log.warn("播放量写回后更新缓存、排行榜和搜索索引失败", e);
+        }
+    }
+
+    /**
+     * 移除已经清零的计数器，避免Map随着被播放过的视频数无限增长
+     * 移除后再检查一次，把移除前并发累加到旧计数器上的播放转移到新的计数器；
+     * 在这次检查之后才累加到旧计数器上的播放由addPending自己转移
+     */
+    private void removeIdleAdders() {
+        pendingDeltas.forEach((videoId, adder) -> {
+            if (adder.sum() == 0 && pendingDeltas.remove(videoId, adder)) {
+                long late = adder.sumThenReset();
+                if (late > 0) {
+                    addPending(videoId, late);
+                    oldestPendingAt.compareAndSet(0, System.currentTimeMillis());
+                }
+            }
+        });
+    }
+
+    /**
+     * 累加待写回的播放增量
+     * 取到计数器之后、累加之前，计数器可能已被removeIdleAdders移除并完成复查，
+     * 累加后确认计数器仍在Map中，不在时把它上面的增量取出转移到新的计数器，不会丢失
+     */
+    private void addPending(Long videoId, long delta) {
+        LongAdder adder = pendingDeltas.computeIfAbsent(videoId, id -> new LongAdder());
+        adder.add(delta);
+        while (pendingDeltas.get(videoId) != adder) {
+            long detached = adder.sumThenReset();
+            if (detached == 0) {
+                return;
+            }
+            adder = pendingDeltas.computeIfAbsent(videoId, id -> new LongAdder());
+            adder.add(detached);
+        }
+    }
+
+    /**
+     * 应用关闭前把内存中剩余的播放增量全部写回数据库
+     */
+    @PreDestroy
+    public void drain() {
+        flush();
+        pendingDeltas.values().removeIf(adder -> adder.sum() == 0);
+        if (!pendingDeltas.isEmpty()) {
+            log.warn("应用关闭时仍有{}个视频的播放增量未能写回", pendingDeltas.size());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.videoapp.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BigramTokenizerTest {
+
+    @Test
+    void documentProducesUnigramsAndBigrams() {
+        assertEquals(List.of("小", "小鱼", "鱼", "鱼干", "干"),
+                List.copyOf(BigramTokenizer.tokenizeDocument("小鱼干")));
+    }
+
+    @Test
+    void queryProducesOnlyBigramsForLongRuns() {
+        assertEquals(List.of("小鱼", "鱼干"), List.copyOf(BigramTokenizer.tokenizeQuery("小鱼干")));
+    }
+
+    @Test
+    void querySingleCharacterRunProducesUnigram() {
+        assertEquals(List.of("猫"), List.copyOf(BigramTokenizer.tokenizeQuery("猫")));
+    }
+
+    @Test
+    void splitsOnNonWordCharactersAndLowercases() {
+        assertEquals(List.of("ab", "猫猫"), List.copyOf(BigramTokenizer.tokenizeQuery("AB，猫猫!")));
+    }
+
+    @Test
+    void removesDuplicateTokens() {
+        assertEquals(List.of("哈哈"), List.copyOf(BigramTokenizer.tokenizeQuery("哈哈哈")));
+    }
+
+    @Test
+    void emptyAndNullTextProduceNoTokens() {
+        assertTrue(BigramTokenizer.tokenizeDocument(null).isEmpty());
+        assertTrue(BigramTokenizer.tokenizeQuery("  ").isEmpty());
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.videoapp.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntPostingListTest {
+
+    @Test
+    void addKeepsIdsSortedAndUnique() {
+        IntPostingList list = new IntPostingList();
+        for (int id : new int[]{5, 1, 9, 3, 5, 7, 1, 2}) {
+            list.add(id);
+        }
+
+        assertArrayEquals(new int[]{1, 2, 3, 5, 7, 9}, toArray(list));
+    }
+
+    @Test
+    void removeIgnoresMissingIds() {
+        IntPostingList list = new IntPostingList();
+        list.add(1);
+        list.add(2);
+        list.add(3);
+
+        list.remove(2);
+        list.remove(4);
+
+        assertArrayEquals(new int[]{1, 3}, toArray(list));
+        list.remove(1);
+        list.remove(3);
+        assertTrue(list.isEmpty());
+    }
+
+    @Test
+    void growsBeyondInitialCapacity() {
+        IntPostingList list = new IntPostingList();
+        for (int id = 100; id > 0; id--) {
+            list.add(id);
+        }
+
+        assertEquals(100, list.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i + 1, list.get(i));
+        }
+    }
+
+    private static int[] toArray(IntPostingList list) {
+        int[] ids = new int[list.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = list.get(i);
+        }
+        return ids;
+    }
+}
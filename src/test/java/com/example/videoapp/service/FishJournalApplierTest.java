@@ -0,0 +1,163 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.cache.ResourceVersionStore;
+import com.example.videoapp.cache.VideoDetailCache;
+import com.example.videoapp.entity.FishTransaction;
+import com.example.videoapp.entity.Video;
+import com.example.videoapp.mapper.FishTransactionMapper;
+import com.example.videoapp.mapper.UserMapper;
+import com.example.videoapp.mapper.VideoMapper;
+import com.example.videoapp.search.VideoSearchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FishJournalApplierTest {
+
+    private FishLedgerService fishLedgerService;
+
+    private FishTransactionMapper fishTransactionMapper;
+
+    private UserMapper userMapper;
+
+    private VideoMapper videoMapper;
+
+    private FishJournalApplier applier;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        fishLedgerService = mock(FishLedgerService.class);
+        fishTransactionMapper = mock(FishTransactionMapper.class);
+        userMapper = mock(UserMapper.class);
+        videoMapper = mock(VideoMapper.class);
+
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        RLock lock = mock(RLock.class);
+        when(lock.tryLock(anyLong(), any(TimeUnit.class))).thenReturn(true);
+        when(lock.isHeldByCurrentThread()).thenReturn(true);
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.getLock(FishJournalApplier.LOCK_KEY)).thenReturn(lock);
+
+        applier = new FishJournalApplier();
+        ReflectionTestUtils.setField(applier, "fishLedgerService", fishLedgerService);
+        ReflectionTestUtils.setField(applier, "fishTransactionMapper", fishTransactionMapper);
+        ReflectionTestUtils.setField(applier, "userMapper", userMapper);
+        ReflectionTestUtils.setField(applier, "videoMapper", videoMapper);
+        ReflectionTestUtils.setField(applier, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(applier, "redissonClient", redissonClient);
+        ReflectionTestUtils.setField(applier, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(applier, "videoDetailCache", mock(VideoDetailCache.class));
+        ReflectionTestUtils.setField(applier, "resourceVersionStore", mock(ResourceVersionStore.class));
+        ReflectionTestUtils.setField(applier, "videoRankingService", mock(VideoRankingService.class));
+        ReflectionTestUtils.setField(applier, "videoSearchIndex", mock(VideoSearchIndex.class));
+        ReflectionTestUtils.setField(applier, "batchSize", 500);
+        ReflectionTestUtils.setField(applier, "maxAttempts", 5);
+        applier.initMetrics();
+
+        when(fishTransactionMapper.findExisting(anyCollection())).thenReturn(List.of());
+    }
+
+    @Test
+    void duplicateFeedsInOneBatchAreWrittenOnceAndRefunded() {
+        List<String> entries = List.of("1:10:1000", "1:10:2000", "2:10:3000");
+        journal(entries);
+        liveVideos(10L);
+
+        applier.apply();
+
+        assertEquals(2, insertedTransactions().size());
+        verify(userMapper).batchDecrementFishBalance(Map.of(1L, 1, 2L, 1));
+        verify(videoMapper).batchIncrementFishCount(Map.of(10L, 2));
+        verify(fishLedgerService).credit(1L, 1);
+        verify(fishLedgerService).ackJournal(entries);
+    }
+
+    @Test
+    void feedsOnDeletedVideosAreSkippedButAcknowledged() {
+        List<String> entries = List.of("1:10:1000", "1:11:2000");
+        journal(entries);
+        liveVideos(10L);
+
+        applier.apply();
+
+        List<FishTransaction> inserted = insertedTransactions();
+        assertEquals(1, inserted.size());
+        assertEquals(10L, inserted.get(0).getVideoId());
+        verify(userMapper).batchDecrementFishBalance(Map.of(1L, 1));
+        verify(videoMapper).batchIncrementFishCount(Map.of(10L, 1));
+        verify(fishLedgerService, never()).credit(anyLong(), anyInt());
+        verify(fishLedgerService).ackJournal(entries);
+    }
+
+    @Test
+    void feedsAlreadyInDatabaseAreNotWrittenAgain() {
+        List<String> entries = List.of("1:10:1000");
+        journal(entries);
+        liveVideos(10L);
+        FishTransaction existing = new FishTransaction();
+        existing.setUserId(1L);
+        existing.setVideoId(10L);
+        when(fishTransactionMapper.findExisting(anyCollection())).thenReturn(List.of(existing));
+
+        applier.apply();
+
+        verify(fishTransactionMapper, never()).batchInsert(any());
+        verify(fishLedgerService).ackJournal(entries);
+    }
+
+    @Test
+    void malformedEntryIsDeadLetteredAndTheRestApplied() {
+        journal(List.of("bad", "1:10:1000"));
+        liveVideos(10L);
+
+        applier.apply();
+
+        verify(fishLedgerService).deadLetterJournal("bad");
+        verify(fishLedgerService).ackJournal(List.of("1:10:1000"));
+        verify(videoMapper).batchIncrementFishCount(Map.of(10L, 1));
+    }
+
+    private void journal(List<String> entries) {
+        when(fishLedgerService.peekJournal(500)).thenReturn(entries, List.of());
+    }
+
+    private void liveVideos(Long... videoIds) {
+        List<Video> videos = new ArrayList<>();
+        for (Long videoId : videoIds) {
+            Video video = new Video();
+            video.setId(videoId);
+            videos.add(video);
+        }
+        when(videoMapper.findByIds(anyCollection())).thenReturn(videos);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<FishTransaction> insertedTransactions() {
+        ArgumentCaptor<List<FishTransaction>> captor = ArgumentCaptor.forClass(List.class);
+        verify(fishTransactionMapper).batchInsert(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.DTO.NotificationMessageDTO;
+import com.example.videoapp.entity.Notification;
+import com.example.videoapp.mapper.NotificationMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NotificationAggregatorTest {
+
+    private NotificationMapper notificationMapper;
+
+    private NotificationUnreadCounter notificationUnreadCounter;
+
+    private NotificationStreamService notificationStreamService;
+
+    private NotificationAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        notificationMapper = mock(NotificationMapper.class);
+        notificationUnreadCounter = mock(NotificationUnreadCounter.class);
+        notificationStreamService = mock(NotificationStreamService.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        aggregator = new NotificationAggregator();
+        ReflectionTestUtils.setField(aggregator, "notificationMapper", notificationMapper);
+        ReflectionTestUtils.setField(aggregator, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(aggregator, "notificationUnreadCounter", notificationUnreadCounter);
+        ReflectionTestUtils.setField(aggregator, "notificationStreamService", notificationStreamService);
+        ReflectionTestUtils.setField(aggregator, "windowMinutes", 60L);
+        ReflectionTestUtils.setField(aggregator, "maxNames", 3);
+    }
+
+    @Test
+    void eventsWithoutOpenAggregateAreInsertedAsOneNotification() {
+        when(notificationMapper.lockOpenAggregates(anyList(), any())).thenReturn(List.of());
+
+        aggregator.write(List.of(
+                comment(11L, "A", 1L, 10L),
+                comment(12L, "B", 1L, 10L)));
+
+        List<Notification> inserted = inserted();
+        assertEquals(1, inserted.size());
+        Notification notification = inserted.get(0);
+        assertEquals(1L, notification.getRecipientId());
+        assertEquals(2, notification.getActorCount());
+        assertEquals(List.of("B", "A"), notification.getActorNames());
+        assertEquals(12L, notification.getSenderId());
+        assertFalse(notification.isRead());
+        verify(notificationUnreadCounter).increment(1L, 1L);
+        verify(notificationMapper, never()).updateAggregate(any());
+    }
+
+    @Test
+    void eventsMatchingOpenAggregateAreMergedWithoutChangingUnreadCount() {
+        Notification open = new Notification();
+        open.setId(100L);
+        open.setRecipientId(1L);
+        open.setType("NEW_COMMENT");
+        open.setRelatedEntityId(10L);
+        open.setActorCount(1);
+        open.setActorNames(new ArrayList<>(List.of("C")));
+        when(notificationMapper.lockOpenAggregates(anyList(), any())).thenReturn(List.of(open));
+
+        aggregator.write(List.of(
+                comment(11L, "A", 1L, 10L),
+                comment(12L, "B", 1L, 10L),
+                fish(13L, "D", 2L, 20L)));
+
+        verify(notificationMapper).updateAggregate(open);
+        assertEquals(3, open.getActorCount());
+        assertEquals(List.of("B", "A", "C"), open.getActorNames());
+        assertEquals(12L, open.getSenderId());
+
+        List<Notification> inserted = inserted();
+        assertEquals(1, inserted.size());
+        assertEquals(2L, inserted.get(0).getRecipientId());
+        verify(notificationUnreadCounter).increment(2L, 1L);
+        verify(notificationUnreadCounter, never()).increment(eq(1L), anyLong());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Notification>> published = ArgumentCaptor.forClass(List.class);
+        verify(notificationStreamService).publish(published.capture());
+        assertEquals(2, published.getValue().size());
+    }
+
+    @Test
+    void renderDescribesCommentsByCountAndFishByPeople() {
+        assertEquals("用户A评论了您的视频:猫", NotificationAggregator.render("NEW_COMMENT", List.of("A"), 1, "猫"));
+        assertEquals("用户B、A等在您的视频:猫下发表了3条评论",
+                NotificationAggregator.render("NEW_COMMENT", List.of("B", "A"), 3, "猫"));
+        assertEquals("您的视频:猫收到了用户A、B等5人的小鱼！",
+                NotificationAggregator.render("NEW_FISH", List.of("A", "B"), 5, "猫"));
+    }
+
+    private List<Notification> inserted() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Notification>> captor = ArgumentCaptor.forClass(List.class);
+        verify(notificationMapper).batchInsert(captor.capture());
+        return captor.getValue();
+    }
+
+    private static NotificationMessageDTO comment(Long senderId, String senderName, Long recipientId, Long videoId) {
+        return new NotificationMessageDTO("NEW_COMMENT", senderId, recipientId, videoId, senderName, "猫");
+    }
+
+    private static NotificationMessageDTO fish(Long senderId, String senderName, Long recipientId, Long videoId) {
+        return new NotificationMessageDTO("NEW_FISH", senderId, recipientId, videoId, senderName, "猫");
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.DTO.UnreadCountDTO;
+import com.example.videoapp.cache.SingleFlightLoader;
+import com.example.videoapp.lock.LockProvider;
+import com.example.videoapp.mapper.NotificationMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RBuckets;
+import org.redisson.api.RKeys;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NotificationUnreadCounterTest {
+
+    private RedissonClient redissonClient;
+
+    private RBuckets buckets;
+
+    private RScript script;
+
+    private NotificationMapper notificationMapper;
+
+    private LockProvider.HeldLock lock;
+
+    private NotificationUnreadCounter counter;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        redissonClient = mock(RedissonClient.class);
+        buckets = mock(RBuckets.class);
+        script = mock(RScript.class);
+        notificationMapper = mock(NotificationMapper.class);
+        lock = mock(LockProvider.HeldLock.class);
+        LockProvider lockProvider = mock(LockProvider.class);
+        when(lockProvider.tryAcquire(anyString(), eq(0L))).thenReturn(lock);
+        when(redissonClient.getBuckets(LongCodec.INSTANCE)).thenReturn(buckets);
+        when(redissonClient.getScript(StringCodec.INSTANCE)).thenReturn(script);
+
+        counter = new NotificationUnreadCounter();
+        ReflectionTestUtils.setField(counter, "redissonClient", redissonClient);
+        ReflectionTestUtils.setField(counter, "notificationMapper", notificationMapper);
+        ReflectionTestUtils.setField(counter, "singleFlightLoader", mock(SingleFlightLoader.class));
+        ReflectionTestUtils.setField(counter, "lockProvider", lockProvider);
+        ReflectionTestUtils.setField(counter, "ttlHours", 168L);
+        ReflectionTestUtils.setField(counter, "reconcileChunkSize", 500);
+    }
+
+    @Test
+    void reconcileCorrectsOnlyDriftedCounters() {
+        counters(Map.of("notification:unread:1", 2L, "notification:unread:2", 5L, "notification:unread:3", 4L));
+        when(notificationMapper.countUnreadByRecipientIds(anyList()))
+                .thenReturn(List.of(unread(1L, 2L), unread(2L, 3L)));
+
+        counter.reconcile();
+
+        // 用户2的计数器偏大，用户3在数据库中已没有未读通知
+        verify(script).eval(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.INTEGER),
+                eq(List.of("notification:unread:2")), eq("5"), eq("3"), anyString());
+        verify(script).eval(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.INTEGER),
+                eq(List.of("notification:unread:3")), eq("4"), eq("0"), anyString());
+        verify(script, never()).eval(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.INTEGER),
+                eq(List.of("notification:unread:1")), any(), any(), any());
+        verify(lock).release();
+    }
+
+    @Test
+    void reconcileSkipsWhenAnotherNodeHoldsTheLock() throws InterruptedException {
+        LockProvider lockProvider = mock(LockProvider.class);
+        when(lockProvider.tryAcquire(anyString(), eq(0L))).thenReturn(null);
+        ReflectionTestUtils.setField(counter, "lockProvider", lockProvider);
+
+        counter.reconcile();
+
+        verify(redissonClient, never()).getKeys();
+    }
+
+    @Test
+    void incrementIsSkippedForZeroDelta() {
+        counter.increment(1L, 0);
+
+        verify(redissonClient, never()).getScript(any(Codec.class));
+    }
+
+    private void counters(Map<String, Long> values) {
+        RKeys keys = mock(RKeys.class);
+        when(redissonClient.getKeys()).thenReturn(keys);
+        when(keys.getKeysByPattern(anyString(), anyInt())).thenReturn(List.copyOf(values.keySet()));
+        when(buckets.<Long>get(any(String[].class))).thenReturn(values);
+    }
+
+    private static UnreadCountDTO unread(Long recipientId, Long count) {
+        UnreadCountDTO dto = new UnreadCountDTO();
+        dto.setRecipientId(recipientId);
+        dto.setUnreadCount(count);
+        return dto;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.JwtUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.redisson.api.RMap;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TokenRevocationServiceTest {
+
+    private static final Long USER_ID = 7L;
+
+    private RMap<String, String> revokedBefore;
+
+    private JwtUtil jwtUtil;
+
+    private TokenRevocationService tokenRevocationService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        revokedBefore = mock(RMap.class);
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.<String, String>getMap(anyString(), any(Codec.class))).thenReturn(revokedBefore);
+        when(redissonClient.getTopic(anyString(), any(Codec.class))).thenReturn(mock(RTopic.class));
+
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secretKey", "0123456789abcdef0123456789abcdef");
+        ReflectionTestUtils.setField(jwtUtil, "expiration", 900_000L);
+        ReflectionTestUtils.setField(jwtUtil, "verifiedCacheMaxSize", 100L);
+        jwtUtil.init();
+
+        tokenRevocationService = new TokenRevocationService();
+        ReflectionTestUtils.setField(tokenRevocationService, "redissonClient", redissonClient);
+        ReflectionTestUtils.setField(tokenRevocationService, "jwtUtil", jwtUtil);
+    }
+
+    @Test
+    void revokeAllRevokesTokensIssuedBefore() throws InterruptedException {
+        JwtUtil.TokenIdentity old = jwtUtil.parseToken(jwtUtil.generateToken("alice", USER_ID));
+        Thread.sleep(2);
+
+        tokenRevocationService.revokeAll(USER_ID);
+
+        assertTrue(tokenRevocationService.isRevoked(old, USER_ID));
+    }
+
+    @Test
+    void tokenIssuedLaterInTheSameSecondIsNotRevoked() {
+        tokenRevocationService.revokeAll(USER_ID);
+        long before = recordedRevocationPoint();
+
+        // 紧接着在同一秒内重新登录签发的令牌
+        JwtUtil.TokenIdentity sameSecond = identity(before + 1);
+        JwtUtil.TokenIdentity justBefore = identity(before - 1);
+
+        assertFalse(tokenRevocationService.isRevoked(sameSecond, USER_ID));
+        assertTrue(tokenRevocationService.isRevoked(justBefore, USER_ID));
+    }
+
+    @Test
+    void newTokenAfterRevokeAllIsAccepted() throws InterruptedException {
+        tokenRevocationService.revokeAll(USER_ID);
+        Thread.sleep(1);
+
+        JwtUtil.TokenIdentity fresh = jwtUtil.parseToken(jwtUtil.generateToken("alice", USER_ID));
+
+        assertFalse(tokenRevocationService.isRevoked(fresh, USER_ID));
+    }
+
+    @Test
+    void issuedAtKeepsMillisecondPrecision() {
+        long start = System.currentTimeMillis();
+
+        JwtUtil.TokenIdentity identity = jwtUtil.parseToken(jwtUtil.generateToken("alice", USER_ID));
+
+        assertTrue(identity.issuedAt() >= start);
+        assertTrue(identity.issuedAt() <= System.currentTimeMillis());
+    }
+
+    @Test
+    void otherUsersAreNotAffected() {
+        tokenRevocationService.revokeAll(USER_ID);
+
+        assertFalse(tokenRevocationService.isRevoked(identity(0), 8L));
+    }
+
+    private long recordedRevocationPoint() {
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(revokedBefore).put(eq(String.valueOf(USER_ID)), captor.capture());
+        return Long.parseLong(captor.getValue());
+    }
+
+    private static JwtUtil.TokenIdentity identity(long issuedAt) {
+        return new JwtUtil.TokenIdentity("alice", USER_ID, null, issuedAt, issuedAt + 900_000L);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.videoapp.service;
+
+import com.example.videoapp.cache.ResourceVersionStore;
+import com.example.videoapp.cache.VideoDetailCache;
+import com.example.videoapp.mapper.VideoMapper;
+import com.example.videoapp.search.VideoSearchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ViewCountServiceTest {
+
+    private VideoMapper videoMapper;
+
+    private VideoDetailCache videoDetailCache;
+
+    private ViewCountService viewCountService;
+
+    @BeforeEach
+    void setUp() {
+        videoMapper = mock(VideoMapper.class);
+        videoDetailCache = mock(VideoDetailCache.class);
+        viewCountService = new ViewCountService();
+        ReflectionTestUtils.setField(viewCountService, "videoMapper", videoMapper);
+        ReflectionTestUtils.setField(viewCountService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(viewCountService, "videoDetailCache", videoDetailCache);
+        ReflectionTestUtils.setField(viewCountService, "videoRankingService", mock(VideoRankingService.class));
+        ReflectionTestUtils.setField(viewCountService, "videoSearchIndex", mock(VideoSearchIndex.class));
+        ReflectionTestUtils.setField(viewCountService, "resourceVersionStore", mock(ResourceVersionStore.class));
+        viewCountService.initMetrics();
+    }
+
+    @Test
+    void flushWritesMergedDeltasAndPatchesCache() {
+        viewCountService.recordView(1L);
+        viewCountService.recordView(1L);
+        viewCountService.recordView(1L);
+        viewCountService.recordView(2L);
+        assertEquals(3, viewCountService.getPendingViews(1L));
+        assertEquals(8L, viewCountService.withPendingViews(1L, 5L));
+
+        viewCountService.flush();
+
+        verify(videoMapper).batchIncrementViewCount(Map.of(1L, 3L, 2L, 1L));
+        verify(videoDetailCache).addViews(Map.of(1L, 3L, 2L, 1L));
+        assertEquals(0, viewCountService.getPendingViews(1L));
+        assertEquals(0, viewCountService.getPendingViews(2L));
+    }
+
+    @Test
+    void flushRemovesIdleAddersAndKeepsLaterViews() {
+        viewCountService.recordView(1L);
+        viewCountService.flush();
+        assertTrue(pendingDeltas().isEmpty());
+
+        viewCountService.recordView(1L);
+        viewCountService.flush();
+
+        verify(videoMapper, times(2)).batchIncrementViewCount(Map.of(1L, 1L));
+        assertTrue(pendingDeltas().isEmpty());
+    }
+
+    @Test
+    void flushWithoutViewsSkipsDatabase() {
+        viewCountService.flush();
+
+        verify(videoMapper, never()).batchIncrementViewCount(anyMap());
+    }
+
+    @Test
+    void failedFlushKeepsDeltasForNextRound() {
+        viewCountService.recordView(1L);
+        viewCountService.recordView(1L);
+        when(videoMapper.batchIncrementViewCount(anyMap())).thenThrow(new RuntimeException("db down"));
+
+        viewCountService.flush();
+
+        assertEquals(2, viewCountService.getPendingViews(1L));
+        verify(videoDetailCache, never()).addViews(anyMap());
+    }
+
+    @Test
+    void discardDropsPendingViews() {
+        viewCountService.recordView(1L);
+
+        viewCountService.discard(1L);
+
+        assertEquals(0, viewCountService.getPendingViews(1L));
+    }
+
+    private Map<?, ?> pendingDeltas() {
+        return (Map<?, ?>) ReflectionTestUtils.getField(viewCountService, "pendingDeltas");
+    }
+}